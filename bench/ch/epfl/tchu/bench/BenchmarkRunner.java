@@ -0,0 +1,95 @@
+package ch.epfl.tchu.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Exécuteur de micro-benchmarks : chaque benchmark est préchauffé puis mesuré sur plusieurs itérations de durée fixe,
+ * et le débit (opérations par seconde) ainsi que le nombre d'octets alloués par opération sont rapportés
+ *
+ * les durées se règlent avec les propriétés système bench.warmup (itérations de préchauffage, 3 par défaut),
+ * bench.iterations (itérations mesurées, 5 par défaut) et bench.time (durée d'une itération en millisecondes, 1000 par défaut)
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+final class BenchmarkRunner {
+
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("bench.warmup", 3);
+    private static final int MEASUREMENT_ITERATIONS = Integer.getInteger("bench.iterations", 5);
+    private static final long ITERATION_NANOS = Long.getLong("bench.time", 1000) * 1_000_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final List<Pattern> filters = new ArrayList<>();
+
+    // Puits dans lequel sont versés les résultats des opérations, pour que le compilateur ne puisse pas les éliminer.
+    private static volatile int sink;
+
+    /**
+     * construit un exécuteur ne lançant que les benchmarks dont le nom contient l'une des expressions régulières données,
+     * ou tous les benchmarks si aucune n'est donnée
+     * @param filters expressions régulières de sélection des benchmarks
+     */
+    BenchmarkRunner(String... filters) {
+        for(String filter : filters) {
+            this.filters.add(Pattern.compile(filter));
+        }
+        System.out.printf("%-48s %14s %10s %14s%n", "Benchmark", "ops/s", "± %", "B/op");
+    }
+
+    /**
+     * mesure et affiche le débit et les allocations de l'opération donnée, si son nom est sélectionné
+     * @param name nom du benchmark
+     * @param operation opération mesurée, dont le résultat est consommé
+     */
+    void run(String name, Supplier<?> operation) {
+        if(!filters.isEmpty() && filters.stream().noneMatch(filter -> filter.matcher(name).find())) {
+            return;
+        }
+        for(int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            iteration(operation);
+        }
+
+        double[] throughputs = new double[MEASUREMENT_ITERATIONS];
+        long totalOperations = 0;
+        long totalBytes = 0;
+        for(int i = 0; i < MEASUREMENT_ITERATIONS; ++i) {
+            long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            long operations = iteration(operation);
+            long elapsed = System.nanoTime() - start;
+            totalBytes += THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+            totalOperations += operations;
+            throughputs[i] = operations * 1e9 / elapsed;
+        }
+
+        double mean = 0;
+        for(double throughput : throughputs) {
+            mean += throughput / throughputs.length;
+        }
+        double variance = 0;
+        for(double throughput : throughputs) {
+            variance += (throughput - mean) * (throughput - mean) / throughputs.length;
+        }
+        System.out.printf("%-48s %14.1f %10.1f %14.1f%n", name, mean, 100 * Math.sqrt(variance) / mean, (double) totalBytes / totalOperations);
+    }
+
+    private static long iteration(Supplier<?> operation) {
+        long operations = 0;
+        long deadline = System.nanoTime() + ITERATION_NANOS;
+        int hash = 0;
+        do {
+            // Les opérations sont exécutées par lots pour que la lecture de l'horloge reste négligeable.
+            for(int i = 0; i < 16; ++i) {
+                hash += System.identityHashCode(operation.get());
+            }
+            operations += 16;
+        } while(System.nanoTime() < deadline);
+        sink += hash;
+        return operations;
+    }
+}
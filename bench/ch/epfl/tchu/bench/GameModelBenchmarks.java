@@ -0,0 +1,158 @@
+package ch.epfl.tchu.bench;
+
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.bot.RandomPlayer;
+import ch.epfl.tchu.game.*;
+import ch.epfl.tchu.net.Serdes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmarks des chemins critiques du modèle de jeu : plus long chemin, points des billets, opérations sur les multiensembles,
+ * cartes de prise de route, cartes additionnelles des tunnels, (dé)sérialisation de l'état public et partie complète
+ *
+ * les données sont tirées des états finaux de parties jouées au hasard avec une graine fixe, afin que deux exécutions
+ * mesurent exactement les mêmes opérations
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class GameModelBenchmarks {
+    private GameModelBenchmarks() {
+
+    }
+
+    private static final long SEED = 2021;
+    private static final int FIXTURE_GAMES_COUNT = 32;
+    private static final int ADVERSARIAL_ROUTES_COUNT = 40;
+
+    private static final SortedBag<Ticket> TICKETS = SortedBag.of(ChMap.tickets());
+    private static final Map<PlayerId, String> PLAYER_NAMES = Map.of(PlayerId.PLAYER_1, "Ada", PlayerId.PLAYER_2, "Charles");
+
+    /**
+     * Lance les benchmarks et affiche leurs résultats
+     * @param args expressions régulières de sélection des benchmarks à lancer (tous par défaut)
+     */
+    public static void main(String[] args) {
+        Random rng = new Random(SEED);
+
+        List<GameState> finalStates = new ArrayList<>();
+        for(int i = 0; i < FIXTURE_GAMES_COUNT; ++i) {
+            finalStates.add(playGame(rng).finalState());
+        }
+        List<PlayerState> playerStates = new ArrayList<>();
+        for(GameState finalState : finalStates) {
+            for(PlayerId id : PlayerId.ALL) {
+                playerStates.add(finalState.playerState(id));
+            }
+        }
+        List<List<Route>> realisticRoutes = new ArrayList<>();
+        for(PlayerState playerState : playerStates) {
+            realisticRoutes.add(playerState.routes());
+        }
+        // Des routes tirées au hasard sur toute la carte, sans tenir compte du nombre de wagons, forment des réseaux
+        // bien plus maillés que ceux des vraies parties : c'est le pire cas de la recherche du plus long chemin.
+        List<List<Route>> adversarialRoutes = new ArrayList<>();
+        for(int i = 0; i < 8; ++i) {
+            List<Route> routes = new ArrayList<>(ChMap.routes());
+            Collections.shuffle(routes, rng);
+            adversarialRoutes.add(List.copyOf(routes.subList(0, ADVERSARIAL_ROUTES_COUNT)));
+        }
+
+        List<SortedBag<Card>> hands = new ArrayList<>();
+        for(int i = 0; i < 64; ++i) {
+            SortedBag.Builder<Card> hand = new SortedBag.Builder<>();
+            for(int j = 0; j < 8 + rng.nextInt(16); ++j) {
+                hand.add(Card.ALL.get(rng.nextInt(Card.COUNT)));
+            }
+            hands.add(hand.build());
+        }
+
+        List<PlayerState> handStates = new ArrayList<>();
+        List<PlayerState> tunnelStates = new ArrayList<>();
+        List<SortedBag<Card>> tunnelInitialCards = new ArrayList<>();
+        for(SortedBag<Card> hand : hands) {
+            PlayerState playerState = new PlayerState(SortedBag.of(), hand, List.of());
+            handStates.add(playerState);
+            for(Route route : ChMap.routes()) {
+                if(route.level() == Route.Level.UNDERGROUND && playerState.canClaimRoute(route)) {
+                    tunnelStates.add(playerState);
+                    tunnelInitialCards.add(playerState.possibleClaimCards(route).get(0));
+                }
+            }
+        }
+
+        List<String> serializedStates = new ArrayList<>();
+        for(GameState finalState : finalStates) {
+            serializedStates.add(Serdes.publicGameStateSerde.serialize(finalState));
+        }
+        List<String> serializedPlayerStates = new ArrayList<>();
+        for(PlayerState playerState : playerStates) {
+            serializedPlayerStates.add(Serdes.playerStateSerde.serialize(playerState));
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner(args);
+        Cycle cycle = new Cycle();
+
+        runner.run("Trail.longest/realistic", () -> Trail.longest(cycle.next(realisticRoutes)));
+        runner.run("Trail.longest/adversarial", () -> Trail.longest(cycle.next(adversarialRoutes)));
+
+        runner.run("PlayerState.ticketPoints", () -> cycle.next(playerStates).ticketPoints());
+        runner.run("PlayerState.ticketPoints/fromRoutes", () -> {
+            PlayerState playerState = cycle.next(playerStates);
+            return new PlayerState(playerState.tickets(), playerState.cards(), playerState.routes()).ticketPoints();
+        });
+
+        runner.run("SortedBag.union", () -> cycle.next(hands).union(cycle.next(hands)));
+        runner.run("SortedBag.difference", () -> {
+            SortedBag<Card> hand = cycle.next(hands);
+            return hand.difference(SortedBag.of(hand.toList().subList(0, hand.size() / 2)));
+        });
+        runner.run("SortedBag.subsetsOfSize/3", () -> cycle.next(hands).subsetsOfSize(3));
+
+        runner.run("Route.possibleClaimCards", () -> cycle.next(ChMap.routes()).possibleClaimCards());
+        runner.run("PlayerState.possibleClaimCards", () -> cycle.next(handStates).possibleClaimCards(cycle.next(ChMap.routes())));
+        runner.run("PlayerState.possibleAdditionalCards", () -> {
+            int i = cycle.nextIndex(tunnelStates.size());
+            return tunnelStates.get(i).possibleAdditionalCards(1 + i % Constants.ADDITIONAL_TUNNEL_CARDS, tunnelInitialCards.get(i));
+        });
+
+        runner.run("Serdes.publicGameStateSerde/serialize", () -> Serdes.publicGameStateSerde.serialize(cycle.next(finalStates)));
+        runner.run("Serdes.publicGameStateSerde/deserialize", () -> Serdes.publicGameStateSerde.deserialize(cycle.next(serializedStates)));
+        runner.run("Serdes.publicGameStateSerde/roundTrip", () ->
+                Serdes.publicGameStateSerde.deserialize(Serdes.publicGameStateSerde.serialize(cycle.next(finalStates))));
+        runner.run("Serdes.playerStateSerde/serialize", () -> Serdes.playerStateSerde.serialize(cycle.next(playerStates)));
+        runner.run("Serdes.playerStateSerde/deserialize", () -> Serdes.playerStateSerde.deserialize(cycle.next(serializedPlayerStates)));
+
+        runner.run("GameEngine.play/randomPlayers", () -> playGame(rng));
+    }
+
+    private static GameResult playGame(Random rng) {
+        Map<PlayerId, Player> players = new EnumMap<>(PlayerId.class);
+        for(PlayerId id : PlayerId.ALL) {
+            players.put(id, new RandomPlayer(new Random(rng.nextLong())));
+        }
+        return GameEngine.play(players, PLAYER_NAMES, TICKETS, new Random(rng.nextLong()));
+    }
+
+    /**
+     * Parcours circulaire des données d'un benchmark, pour que chaque opération porte sur une donnée différente
+     */
+    private static final class Cycle {
+        private int index;
+
+        private int nextIndex(int size) {
+            index = index + 1 < size ? index + 1 : 0;
+            return index;
+        }
+
+        private <E> E next(List<E> elements) {
+            return elements.get(nextIndex(elements.size()));
+        }
+    }
+}
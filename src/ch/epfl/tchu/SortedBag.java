@@ -2,6 +2,7 @@ package ch.epfl.tchu;
 
 import java.util.*;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Multiensemble trié et immuable.
@@ -172,24 +173,103 @@ public final class SortedBag<E extends Comparable<E>> implements Iterable<E> {
 
     /**
      * Retourne tous les sous-ensembles du multiensemble ayant une taille donnée.
+     * L'ensemble retourné les énumère dans l'ordre de <code>subsetsOfSizeStream</code>.
      * @param size la taille des sous-ensembles à retourner
      * @return l'ensemble des sous-ensembles de <code>this</code> de taille <code>size</code>
      * @throws IllegalArgumentException si <code>size</code> n'est pas comprise entre 0 et
      * la taille du multiensemble
      */
     public Set<SortedBag<E>> subsetsOfSize(int size) {
+        var result = new LinkedHashSet<SortedBag<E>>();
+        subsetsOfSizeIterator(size).forEachRemaining(result::add);
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Retourne un flot (paresseux) de tous les sous-ensembles du multiensemble ayant une taille donnée.
+     * @param size la taille des sous-ensembles à retourner
+     * @return un flot des sous-ensembles de <code>this</code> de taille <code>size</code>
+     * @throws IllegalArgumentException si <code>size</code> n'est pas comprise entre 0 et
+     * la taille du multiensemble
+     * @see #subsetsOfSizeIterator(int)
+     */
+    public Stream<SortedBag<E>> subsetsOfSizeStream(int size) {
+        var iterator = subsetsOfSizeIterator(size);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.DISTINCT | Spliterator.NONNULL),
+                false);
+    }
+
+    /**
+     * Retourne un itérateur (paresseux) sur tous les sous-ensembles du multiensemble ayant une taille donnée.
+     * Chaque sous-ensemble est produit une seule fois, par ordre croissant de la multiplicité du plus grand élément,
+     * puis de celle du suivant, etc. Ainsi, pour des cartes, les sous-ensembles sont triés par nombre croissant de locomotives.
+     * @param size la taille des sous-ensembles à retourner
+     * @return un itérateur sur les sous-ensembles de <code>this</code> de taille <code>size</code>
+     * @throws IllegalArgumentException si <code>size</code> n'est pas comprise entre 0 et
+     * la taille du multiensemble
+     */
+    public Iterator<SortedBag<E>> subsetsOfSizeIterator(int size) {
         Preconditions.checkArgument(0 <= size && size <= size());
-        if (size == 0)
-            return Set.of(SortedBag.of());
-
-        var result = new HashSet<SortedBag<E>>();
-        for (var e1 : elements.keySet()) {
-            var s1 = SortedBag.of(e1);
-            this.difference(s1)
-                    .subsetsOfSize(size - 1)
-                    .forEach(e -> result.add(s1.union(e)));
+        return new SubsetsIterator<>(elements, size);
+    }
+
+    // Énumère les vecteurs de multiplicités de somme donnée, bornés par les multiplicités
+    // du multiensemble, dans l'ordre colexicographique (le dernier élément varie le moins vite).
+    private static final class SubsetsIterator<E extends Comparable<E>> implements Iterator<SortedBag<E>> {
+        private final List<E> keys;
+        private final int[] maxCounts;
+        private final int[] counts;
+        private boolean hasNext;
+
+        SubsetsIterator(SortedMap<E, Integer> elements, int size) {
+            keys = new ArrayList<>(elements.keySet());
+            maxCounts = new int[keys.size()];
+            counts = new int[keys.size()];
+            var i = 0;
+            for (var n : elements.values())
+                maxCounts[i++] = n;
+            fill(size, keys.size());
+            hasNext = true;
+        }
+
+        // Répartit n éléments sur les premières positions (avant limit), en remplissant les plus petites d'abord.
+        private void fill(int n, int limit) {
+            for (var i = 0; i < limit; i++) {
+                counts[i] = Math.min(n, maxCounts[i]);
+                n -= counts[i];
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public SortedBag<E> next() {
+            if (!hasNext)
+                throw new NoSuchElementException();
+            var subset = new TreeMap<E, Integer>();
+            for (var i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) subset.put(keys.get(i), counts[i]);
+            }
+            advance();
+            return new SortedBag<>(subset);
+        }
+
+        private void advance() {
+            var lowerSum = 0;
+            for (var j = 0; j < counts.length; j++) {
+                if (lowerSum > 0 && counts[j] < maxCounts[j]) {
+                    counts[j]++;
+                    fill(lowerSum - 1, j);
+                    return;
+                }
+                lowerSum += counts[j];
+            }
+            hasNext = false;
         }
-        return result;
     }
 
     /**
@@ -0,0 +1,739 @@
+package ch.epfl.tchu.bot;
+
+import ch.epfl.tchu.Preconditions;
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Joueur artificiel choisissant ses actions par recherche arborescente Monte-Carlo, destiné aux parties simulées
+ * par <code>GameEngine</code> comme aux parties du serveur
+ *
+ * les informations cachées au joueur, à savoir les cartes et les billets de l'adversaire et l'ordre des pioches, sont tirées
+ * au hasard à chaque itération parmi celles compatibles avec les états reçus par <code>updateState</code> ; l'itération descend
+ * ensuite dans un arbre dont les arcs sont les tours des deux joueurs, et termine la partie par une simulation rapide
+ * sur un <code>GameStateBuffer</code>
+ *
+ * chaque décision est cherchée par plusieurs tâches soumises au pool donné, chacune construisant son propre arbre avec
+ * son propre générateur, puis les nombres de visites des actions sont additionnés ; la recherche s'arrête lorsque le temps
+ * alloué est écoulé ou que chaque tâche a effectué le nombre d'itérations donné : sans limite de temps, les décisions
+ * ne dépendent donc que de la graine, quel que soit l'ordonnancement des tâches
+ *
+ * une route est toujours prise avec les cartes utilisant le moins de locomotives, et les cartes additionnelles d'un tunnel
+ * sont choisies de la même manière ; les simulations ignorent le bonus du plus long chemin
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class MctsPlayer implements Player {
+
+    private static final List<Route> ROUTES = ChMap.routes();
+    private static final List<Ticket> TICKETS = ChMap.tickets();
+    private static final double EXPLORATION = 0.7;
+
+    // Tours des joueurs : tirage de cartes, tirage de billets, tour passé, puis prise de chacune des routes.
+    private static final int DRAW_CARDS = 0;
+    private static final int DRAW_TICKETS = 1;
+    private static final int PASS = 2;
+    private static final int CLAIM_ROUTE = 3;
+    private static final int TURNS_COUNT = CLAIM_ROUTE + ROUTES.size();
+
+    // Index des routes reliant les mêmes gares que chaque route, elle comprise : une seule d'entre elles peut être prise.
+    private static final int[][] TWIN_ROUTES = twinRoutes();
+    // Routes candidates de chaque billet selon RouteGraph, sous forme de masques de bits indexés par l'index des routes.
+    private static final int ROUTE_WORDS = (ROUTES.size() + Long.SIZE - 1) / Long.SIZE;
+    private static final Map<Ticket, long[]> TICKET_ROUTES = ticketRoutes();
+
+    private enum Decision {
+        INITIAL_TICKETS,
+        TURN,
+        FIRST_SLOT,
+        SECOND_SLOT,
+        TICKETS
+    }
+
+    private final SplittableRandom rng;
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final long timeBudget;
+    private final int iterations;
+
+    private PlayerId ownId;
+    private PublicGameState gameState;
+    private PlayerState ownState;
+    private SortedBag<Ticket> initialTickets;
+    private Route routeToClaim;
+    private SortedBag<Card> claimCards;
+    private int drawsLeft;
+
+    private volatile long rolloutsCount;
+    private volatile long searchNanos;
+
+    /**
+     * construit un joueur cherchant chacune de ses décisions au moyen du nombre donné de tâches, soumises au pool donné,
+     * jusqu'à ce que le temps alloué soit écoulé ou que chaque tâche ait effectué le nombre d'itérations donné
+     * @param seed graine dont sont dérivés les générateurs de toutes les recherches
+     * @param pool pool exécutant les tâches de recherche, inutilisé s'il n'y a qu'une tâche
+     * @param parallelism nombre de tâches de recherche par décision
+     * @param timeBudget temps alloué à chaque décision, en millisecondes, ou 0 pour ne pas limiter le temps
+     * @param iterations nombre d'itérations de chaque tâche, ou 0 pour ne pas le limiter
+     * @throws IllegalArgumentException si le nombre de tâches n'est pas strictement positif, si le temps ou le nombre
+     *                                  d'itérations est strictement négatif, ou s'ils sont tous deux illimités
+     */
+    public MctsPlayer(long seed, ExecutorService pool, int parallelism, long timeBudget, int iterations) {
+        Preconditions.checkArgument(parallelism > 0 && timeBudget >= 0 && iterations >= 0 && (timeBudget > 0 || iterations > 0));
+        this.rng = new SplittableRandom(seed);
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.timeBudget = timeBudget;
+        this.iterations = iterations;
+    }
+
+    /**
+     * construit un joueur cherchant chacune de ses décisions dans le fil du jeu, en effectuant le nombre d'itérations donné,
+     * utilisable comme fabrique de joueurs d'un tournoi
+     * @param rng générateur dont est tirée la graine du joueur
+     * @param iterations nombre d'itérations par décision
+     * @throws IllegalArgumentException si le nombre d'itérations n'est pas strictement positif
+     */
+    public MctsPlayer(Random rng, int iterations) {
+        this(rng.nextLong(), null, 1, 0, iterations);
+    }
+
+    private static int[][] twinRoutes() {
+        int[][] twinRoutes = new int[ROUTES.size()][];
+        for(int i = 0; i < ROUTES.size(); ++i) {
+            List<Integer> twins = new ArrayList<>();
+            for(int j = 0; j < ROUTES.size(); ++j) {
+                if(ROUTES.get(i).stations().equals(ROUTES.get(j).stations())) {
+                    twins.add(j);
+                }
+            }
+            twinRoutes[i] = twins.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return twinRoutes;
+    }
+
+    private static Map<Ticket, long[]> ticketRoutes() {
+        Map<Ticket, long[]> ticketRoutes = new HashMap<>();
+        for(Ticket ticket : TICKETS) {
+            long[] routes = new long[ROUTE_WORDS];
+            for(Route route : RouteGraph.chMap().candidateRoutes(ticket)) {
+                int r = ROUTES.indexOf(route);
+                routes[r / Long.SIZE] |= 1L << r;
+            }
+            ticketRoutes.put(ticket, routes);
+        }
+        return Map.copyOf(ticketRoutes);
+    }
+
+    /**
+     * retourne le nombre total de simulations effectuées par le joueur
+     * @return le nombre total de simulations effectuées
+     */
+    public long rolloutsCount() {
+        return rolloutsCount;
+    }
+
+    /**
+     * retourne le nombre moyen de simulations effectuées par seconde de recherche, toutes tâches confondues
+     * @return le nombre de simulations par seconde, ou 0 si le joueur n'a encore rien cherché
+     */
+    public double rolloutsPerSecond() {
+        long nanos = searchNanos;
+        return nanos == 0 ? 0 : rolloutsCount * 1e9 / nanos;
+    }
+
+    @Override
+    public void initPlayers(PlayerId ownId, Map<PlayerId, String> playerNames) {
+        this.ownId = ownId;
+    }
+
+    @Override
+    public void receiveInfo(String info) {
+    }
+
+    @Override
+    public void updateState(PublicGameState newState, PlayerState ownState) {
+        this.gameState = newState;
+        this.ownState = ownState;
+    }
+
+    @Override
+    public void setInitialTicketChoice(SortedBag<Ticket> tickets) {
+        initialTickets = tickets;
+    }
+
+    @Override
+    public SortedBag<Ticket> chooseInitialTickets() {
+        int minCount = Constants.INITIAL_TICKETS_COUNT - Constants.DISCARDABLE_TICKETS_COUNT;
+        List<Integer> moves = new ArrayList<>();
+        for(int mask = 1; mask < 1 << initialTickets.size(); ++mask) {
+            if(Integer.bitCount(mask) >= minCount) {
+                moves.add(mask);
+            }
+        }
+        return subset(initialTickets, search(Decision.INITIAL_TICKETS, moves, initialTickets));
+    }
+
+    @Override
+    public TurnKind nextTurn() {
+        List<Integer> moves = new ArrayList<>();
+        for(int i = 0; i < ROUTES.size(); ++i) {
+            Route route = ROUTES.get(i);
+            if(ownState.canClaimRoute(route) && isFree(i) && canDrawAdditionalCards(route)) {
+                moves.add(CLAIM_ROUTE + i);
+            }
+        }
+        if(gameState.canDrawCards()) {
+            moves.add(DRAW_CARDS);
+        }
+        if(gameState.ticketsCount() >= Constants.IN_GAME_TICKETS_COUNT) {
+            moves.add(DRAW_TICKETS);
+        }
+        if(moves.isEmpty()) {
+            // Aucune action n'est possible : le joueur tente de s'emparer d'une route hors de sa portée, ce qui revient à passer son tour.
+            for(Route route : ROUTES) {
+                if(!ownState.canClaimRoute(route)) {
+                    routeToClaim = route;
+                    claimCards = SortedBag.of();
+                    return TurnKind.CLAIM_ROUTE;
+                }
+            }
+            return TurnKind.DRAW_CARDS;
+        }
+
+        int move = search(Decision.TURN, moves, null);
+        switch(move) {
+            case DRAW_CARDS:
+                drawsLeft = 2;
+                return TurnKind.DRAW_CARDS;
+            case DRAW_TICKETS:
+                return TurnKind.DRAW_TICKETS;
+            default:
+                routeToClaim = ROUTES.get(move - CLAIM_ROUTE);
+                claimCards = ownState.possibleClaimCards(routeToClaim).get(0);
+                return TurnKind.CLAIM_ROUTE;
+        }
+    }
+
+    @Override
+    public SortedBag<Ticket> chooseTickets(SortedBag<Ticket> options) {
+        List<Integer> moves = new ArrayList<>();
+        for(int mask = 1; mask < 1 << options.size(); ++mask) {
+            moves.add(mask);
+        }
+        return subset(options, search(Decision.TICKETS, moves, options));
+    }
+
+    @Override
+    public int drawSlot() {
+        List<Integer> moves = new ArrayList<>();
+        moves.add(Constants.DECK_SLOT);
+        moves.addAll(Constants.FACE_UP_CARD_SLOTS);
+        return search(drawsLeft-- == 2 ? Decision.FIRST_SLOT : Decision.SECOND_SLOT, moves, null);
+    }
+
+    @Override
+    public Route claimedRoute() {
+        return routeToClaim;
+    }
+
+    @Override
+    public SortedBag<Card> initialClaimCards() {
+        return claimCards;
+    }
+
+    @Override
+    public SortedBag<Card> chooseAdditionalCards(List<SortedBag<Card>> options) {
+        SortedBag<Card> cheapest = options.get(0);
+        for(SortedBag<Card> option : options) {
+            if(option.countOf(Card.LOCOMOTIVE) < cheapest.countOf(Card.LOCOMOTIVE)) {
+                cheapest = option;
+            }
+        }
+        return cheapest;
+    }
+
+    @Override
+    public void addSpectator(Spectator spectator) {
+    }
+
+    @Override
+    public TurnKind displayEndScreen(String endMessage) {
+        return TurnKind.QUIT;
+    }
+
+    @Override
+    public void endGame() {
+    }
+
+    private boolean isFree(int routeIndex) {
+        for(Route route : gameState.claimedRoutes()) {
+            if(route.stations().equals(ROUTES.get(routeIndex).stations())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canDrawAdditionalCards(Route route) {
+        return route.level() == Route.Level.OVERGROUND
+                || gameState.cardState().deckSize() + gameState.cardState().discardsSize() >= Constants.ADDITIONAL_TUNNEL_CARDS;
+    }
+
+    private static <E extends Comparable<E>> SortedBag<E> subset(SortedBag<E> options, int mask) {
+        List<E> list = options.toList();
+        SortedBag.Builder<E> subset = new SortedBag.Builder<>();
+        for(int i = 0; i < list.size(); ++i) {
+            if((mask & (1 << i)) != 0) {
+                subset.add(list.get(i));
+            }
+        }
+        return subset.build();
+    }
+
+    // Cherche la meilleure des actions données : chaque tâche reçoit son propre générateur, tiré dans l'ordre des tâches
+    // d'un générateur propre à la décision, et les visites sont additionnées dans l'ordre des tâches.
+    private int search(Decision decision, List<Integer> moves, SortedBag<Ticket> ticketOptions) {
+        SplittableRandom decisionRng = rng.split();
+        if(moves.size() == 1) {
+            return moves.get(0);
+        }
+        Determinizer determinizer = new Determinizer(ownId, gameState, ownState, decision, ticketOptions);
+        long deadline = timeBudget == 0 ? Long.MAX_VALUE : System.nanoTime() + timeBudget * 1_000_000;
+
+        List<Search> searches = new ArrayList<>();
+        for(int i = 0; i < parallelism; ++i) {
+            searches.add(new Search(determinizer, decision, moves, ticketOptions, new Random(decisionRng.nextLong())));
+        }
+
+        long start = System.nanoTime();
+        if(parallelism == 1) {
+            searches.get(0).run(iterations, deadline);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for(Search search : searches) {
+                tasks.add(() -> {
+                    search.run(iterations, deadline);
+                    return null;
+                });
+            }
+            try {
+                for(Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        searchNanos += System.nanoTime() - start;
+
+        long[] visits = new long[moves.size()];
+        for(Search search : searches) {
+            rolloutsCount += search.rolloutsCount;
+            for(int i = 0; i < moves.size(); ++i) {
+                visits[i] += search.root.children.get(i).visits;
+            }
+        }
+        int best = 0;
+        for(int i = 1; i < moves.size(); ++i) {
+            if(visits[i] > visits[best]) {
+                best = i;
+            }
+        }
+        return moves.get(best);
+    }
+
+    // Tire au hasard les informations cachées au joueur parmi celles compatibles avec l'état public et l'état du joueur.
+    private static final class Determinizer {
+        private final PlayerId ownId;
+        private final PublicGameState gameState;
+        private final PlayerState ownState;
+        private final int[] unknownCards;
+        private final List<Ticket> unknownTickets = new ArrayList<>();
+        private final List<Ticket> topTickets;
+        private final int opponentTicketCount;
+
+        private Determinizer(PlayerId ownId, PublicGameState gameState, PlayerState ownState, Decision decision,
+                             SortedBag<Ticket> ticketOptions) {
+            this.ownId = ownId;
+            this.gameState = gameState;
+            this.ownState = ownState;
+
+            CardBag knownCards = ownState.cardBag();
+            for(Card card : gameState.cardState().faceUpCards()) {
+                knownCards = knownCards.with(card);
+            }
+            List<Card> allCards = Constants.ALL_CARDS.toList();
+            unknownCards = new int[allCards.size() - knownCards.size()];
+            int size = 0;
+            for(Card card : Card.ALL) {
+                for(int i = Constants.ALL_CARDS.countOf(card) - knownCards.countOf(card); i > 0; --i) {
+                    unknownCards[size++] = card.ordinal();
+                }
+            }
+
+            // Les billets du choix en cours sont au sommet de la pioche lors d'un tirage de billets, et hors de la pioche
+            // lors du choix initial.
+            topTickets = decision == Decision.TICKETS ? ticketOptions.toList() : List.of();
+            for(Ticket ticket : TICKETS) {
+                if(!ownState.tickets().contains(ticket) && !(ticketOptions != null && ticketOptions.contains(ticket))) {
+                    unknownTickets.add(ticket);
+                }
+            }
+            int ticketCount = gameState.playerState(ownId.next()).ticketCount();
+            opponentTicketCount = decision == Decision.INITIAL_TICKETS && ticketCount == 0
+                    ? Constants.INITIAL_TICKETS_COUNT - Constants.DISCARDABLE_TICKETS_COUNT
+                    : ticketCount;
+        }
+
+        private GameState sample(Random rng, int[] cards, List<Ticket> tickets) {
+            System.arraycopy(unknownCards, 0, cards, 0, unknownCards.length);
+            for(int i = cards.length; i > 1; --i) {
+                int j = rng.nextInt(i);
+                int card = cards[i - 1];
+                cards[i - 1] = cards[j];
+                cards[j] = card;
+            }
+            PublicCardState cardState = gameState.cardState();
+            PublicPlayerState opponent = gameState.playerState(ownId.next());
+            int next = 0;
+            SortedBag.Builder<Card> opponentCards = new SortedBag.Builder<>();
+            for(int i = 0; i < opponent.cardCount(); ++i) {
+                opponentCards.add(Card.ALL.get(cards[next++]));
+            }
+            List<Card> deck = new ArrayList<>(cardState.deckSize());
+            for(int i = 0; i < cardState.deckSize(); ++i) {
+                deck.add(Card.ALL.get(cards[next++]));
+            }
+            CardBag discards = CardBag.EMPTY;
+            while(next < cards.length) {
+                discards = discards.with(Card.ALL.get(cards[next++]));
+            }
+
+            tickets.clear();
+            tickets.addAll(unknownTickets);
+            Collections.shuffle(tickets, rng);
+            int opponentTicketCount = Math.min(this.opponentTicketCount, tickets.size());
+            SortedBag<Ticket> opponentTickets = SortedBag.of(tickets.subList(0, opponentTicketCount));
+            List<Ticket> ticketDeck = new ArrayList<>(topTickets);
+            int deckSize = Math.min(gameState.ticketsCount() - topTickets.size(), tickets.size() - opponentTicketCount);
+            ticketDeck.addAll(tickets.subList(opponentTicketCount, opponentTicketCount + deckSize));
+
+            Map<PlayerId, PlayerState> playerStates = new EnumMap<>(PlayerId.class);
+            playerStates.put(ownId, ownState);
+            playerStates.put(ownId.next(), new PlayerState(opponentTickets, opponentCards.build(), opponent.routes()));
+            return GameState.of(Deck.of(ticketDeck), CardState.of(cardState.faceUpCards(), Deck.of(deck), discards),
+                    playerStates, gameState.currentPlayerId(), gameState.lastPlayer());
+        }
+    }
+
+    // Nœud de l'arbre de recherche, atteint par le tour donné du joueur donné ; sa récompense est celle de ce joueur.
+    private static final class Node {
+        private final Node parent;
+        private final int move;
+        private final PlayerId playerId;
+        private final List<Node> children = new ArrayList<>();
+        private int visits;
+        private int availability;
+        private double reward;
+
+        private Node(Node parent, int move, PlayerId playerId) {
+            this.parent = parent;
+            this.move = move;
+            this.playerId = playerId;
+        }
+
+        private double value(double logAvailability) {
+            return reward / visits + EXPLORATION * Math.sqrt(logAvailability / visits);
+        }
+    }
+
+    // Recherche menée par une tâche : seuls ses propres arbre, état et générateur sont modifiés.
+    private static final class Search {
+        private final Determinizer determinizer;
+        private final Decision decision;
+        private final List<Integer> rootMoves;
+        private final List<SortedBag<Ticket>> initialTickets = new ArrayList<>();
+        private final Random rng;
+        private final Node root = new Node(null, -1, null);
+        private final int[] cards;
+        private final List<Ticket> tickets = new ArrayList<>();
+        private final int[] moves = new int[TURNS_COUNT];
+        private final int[] legal = new int[TURNS_COUNT];
+        private final int[] expanded = new int[TURNS_COUNT];
+        private final int[] wantedMoves = new int[TURNS_COUNT];
+        private final long[] wantedRoutes = new long[ROUTE_WORDS];
+        private int stamp;
+        private GameStateBuffer buffer;
+        private long rolloutsCount;
+
+        private Search(Determinizer determinizer, Decision decision, List<Integer> rootMoves, SortedBag<Ticket> ticketOptions,
+                       Random rng) {
+            this.determinizer = determinizer;
+            this.decision = decision;
+            this.rootMoves = rootMoves;
+            this.rng = rng;
+            this.cards = new int[determinizer.unknownCards.length];
+            for(int move : rootMoves) {
+                root.children.add(new Node(root, move, determinizer.ownId));
+                if(decision == Decision.INITIAL_TICKETS) {
+                    initialTickets.add(subset(ticketOptions, move));
+                }
+            }
+        }
+
+        private void run(int iterations, long deadline) {
+            while((iterations == 0 || rolloutsCount < iterations) && (deadline == Long.MAX_VALUE || System.nanoTime() < deadline)) {
+                iterate();
+                ++rolloutsCount;
+            }
+        }
+
+        private void iterate() {
+            GameState gameState = determinizer.sample(rng, cards, tickets);
+            if(buffer == null) {
+                buffer = new GameStateBuffer(gameState);
+            } else {
+                buffer.load(gameState);
+            }
+
+            Node node = root.children.get(0);
+            double logVisits = Math.log(root.visits);
+            for(Node child : root.children) {
+                if(child.visits == 0) {
+                    node = child;
+                    break;
+                }
+                if(child.value(logVisits) > node.value(logVisits)) {
+                    node = child;
+                }
+            }
+            playRootMove(node.move);
+
+            // Descente dans l'arbre parmi les tours permis dans l'état tiré, jusqu'au premier tour encore jamais joué.
+            while(!buffer.isGameOver()) {
+                int count = legalMoves(moves);
+                ++stamp;
+                for(int i = 0; i < count; ++i) {
+                    legal[moves[i]] = stamp;
+                }
+                for(Node child : node.children) {
+                    if(legal[child.move] == stamp) {
+                        expanded[child.move] = stamp;
+                        ++child.availability;
+                    }
+                }
+                int untried = 0;
+                for(int i = 0; i < count; ++i) {
+                    if(expanded[moves[i]] != stamp) {
+                        moves[untried++] = moves[i];
+                    }
+                }
+                if(untried > 0) {
+                    Node child = new Node(node, moves[rng.nextInt(untried)], buffer.currentPlayerId());
+                    child.availability = 1;
+                    node.children.add(child);
+                    node = child;
+                    playTurn(node.move);
+                    break;
+                }
+                Node best = null;
+                double bestValue = 0;
+                for(Node child : node.children) {
+                    if(legal[child.move] == stamp) {
+                        double value = child.value(Math.log(child.availability));
+                        if(best == null || value > bestValue) {
+                            best = child;
+                            bestValue = value;
+                        }
+                    }
+                }
+                node = best;
+                playTurn(node.move);
+            }
+
+            int turnsCount = 0;
+            while(!buffer.isGameOver() && turnsCount++ < GameEngine.MAX_TURNS) {
+                playPolicyTurn();
+            }
+
+            int ownPoints = buffer.finalPoints(determinizer.ownId);
+            int opponentPoints = buffer.finalPoints(determinizer.ownId.next());
+            double ownReward = ownPoints > opponentPoints ? 1 : ownPoints == opponentPoints ? 0.5 : 0;
+            for(; node != null; node = node.parent) {
+                ++node.visits;
+                if(node.playerId != null) {
+                    node.reward += node.playerId == determinizer.ownId ? ownReward : 1 - ownReward;
+                }
+            }
+        }
+
+        private void playRootMove(int move) {
+            switch(decision) {
+                case INITIAL_TICKETS:
+                    buffer.chooseInitialTickets(determinizer.ownId, initialTickets.get(rootMoves.indexOf(move)));
+                    break;
+                case TURN:
+                    playTurn(move);
+                    break;
+                case FIRST_SLOT:
+                    buffer.drawCard(move, rng);
+                    buffer.drawCard(policySlot(), rng);
+                    buffer.nextTurn();
+                    break;
+                case SECOND_SLOT:
+                    buffer.drawCard(move, rng);
+                    buffer.nextTurn();
+                    break;
+                case TICKETS:
+                    buffer.drawTickets(move);
+                    buffer.nextTurn();
+                    break;
+            }
+        }
+
+        // Tours permis au joueur courant ; un tunnel n'est permis que s'il reste assez de cartes pour tirer les cartes additionnelles.
+        private int legalMoves(int[] moves) {
+            int count = 0;
+            boolean canDrawAdditionalCards = buffer.deckSize() + buffer.discardsSize() >= Constants.ADDITIONAL_TUNNEL_CARDS;
+            for(int i = 0; i < ROUTES.size(); ++i) {
+                Route route = ROUTES.get(i);
+                if(buffer.canClaimRoute(route) && isFree(i) && (canDrawAdditionalCards || route.level() == Route.Level.OVERGROUND)) {
+                    moves[count++] = CLAIM_ROUTE + i;
+                }
+            }
+            if(buffer.canDrawCards()) {
+                moves[count++] = DRAW_CARDS;
+            }
+            if(buffer.ticketsCount() >= Constants.IN_GAME_TICKETS_COUNT) {
+                moves[count++] = DRAW_TICKETS;
+            }
+            if(count == 0) {
+                moves[count++] = PASS;
+            }
+            return count;
+        }
+
+        private boolean isFree(int routeIndex) {
+            for(int twin : TWIN_ROUTES[routeIndex]) {
+                if(buffer.routeOwner(ROUTES.get(twin)) != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void playTurn(int move) {
+            switch(move) {
+                case DRAW_CARDS:
+                    buffer.drawCard(policySlot(), rng);
+                    buffer.drawCard(policySlot(), rng);
+                    break;
+                case DRAW_TICKETS:
+                    buffer.drawTickets(1);
+                    break;
+                case PASS:
+                    break;
+                default:
+                    claimRoute(ROUTES.get(move - CLAIM_ROUTE));
+                    break;
+            }
+            buffer.nextTurn();
+        }
+
+        // Prend la route avec les cartes utilisant le moins de locomotives, et paie les cartes additionnelles d'un tunnel
+        // avec la couleur posée avant les locomotives.
+        private void claimRoute(Route route) {
+            CardBag cards = null;
+            for(CardBag option : route.possibleClaimCardBags()) {
+                if(buffer.hasCards(option)) {
+                    cards = option;
+                    break;
+                }
+            }
+            if(route.level() == Route.Level.UNDERGROUND) {
+                int additionalCount = buffer.drawAdditionalCards(route, cards, rng);
+                if(additionalCount > 0) {
+                    if(!buffer.canPlayAdditionalCards(additionalCount, cards)) {
+                        return;
+                    }
+                    PlayerId id = buffer.currentPlayerId();
+                    for(Card card : Card.CARS) {
+                        if(cards.contains(card)) {
+                            int count = Math.min(additionalCount, buffer.cardCount(id, card) - cards.countOf(card));
+                            cards = cards.union(CardBag.of(count, card));
+                            additionalCount -= count;
+                        }
+                    }
+                    cards = cards.union(CardBag.of(additionalCount, Card.LOCOMOTIVE));
+                }
+            }
+            buffer.claimRoute(route, cards);
+        }
+
+        // Politique des simulations : une route appartenant à l'un des plus courts chemins des billets du joueur si possible,
+        // sinon une route quelconque une fois sur deux, puis des cartes, et des billets en dernier recours.
+        private void playPolicyTurn() {
+            PlayerId id = buffer.currentPlayerId();
+            Arrays.fill(wantedRoutes, 0);
+            for(int i = 0; i < buffer.ticketCount(id); ++i) {
+                long[] ticketRoutes = TICKET_ROUTES.get(buffer.ticket(id, i));
+                for(int w = 0; w < ROUTE_WORDS; ++w) {
+                    wantedRoutes[w] |= ticketRoutes[w];
+                }
+            }
+            int count = legalMoves(moves);
+            int wantedCount = 0;
+            int claimCount = 0;
+            for(int i = 0; i < count; ++i) {
+                int move = moves[i];
+                if(move >= CLAIM_ROUTE) {
+                    int r = move - CLAIM_ROUTE;
+                    if((wantedRoutes[r / Long.SIZE] & (1L << r)) != 0) {
+                        wantedMoves[wantedCount++] = move;
+                    }
+                    moves[claimCount++] = move;
+                }
+            }
+            if(wantedCount > 0) {
+                playTurn(wantedMoves[rng.nextInt(wantedCount)]);
+            } else if(claimCount > 0 && (rng.nextBoolean() || !buffer.canDrawCards())) {
+                playTurn(moves[rng.nextInt(claimCount)]);
+            } else if(buffer.canDrawCards()) {
+                playTurn(DRAW_CARDS);
+            } else if(buffer.ticketsCount() >= Constants.IN_GAME_TICKETS_COUNT) {
+                playTurn(DRAW_TICKETS);
+            } else {
+                playTurn(PASS);
+            }
+        }
+
+        // Une locomotive face visible si possible, sinon une carte face visible une fois sur deux, sinon la pioche.
+        private int policySlot() {
+            for(int slot : Constants.FACE_UP_CARD_SLOTS) {
+                if(buffer.faceUpCard(slot) == Card.LOCOMOTIVE) {
+                    return slot;
+                }
+            }
+            return rng.nextBoolean() ? rng.nextInt(Constants.FACE_UP_CARDS_COUNT) : Constants.DECK_SLOT;
+        }
+    }
+}
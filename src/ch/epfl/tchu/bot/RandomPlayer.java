@@ -0,0 +1,148 @@
+package ch.epfl.tchu.bot;
+
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Joueur artificiel jouant au hasard parmi les actions permises, destiné aux parties simulées par <code>GameEngine</code>
+ *
+ * il s'empare d'une route dès qu'il le peut, tire des cartes sinon, et des billets en dernier recours
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class RandomPlayer implements Player {
+
+    private final Random rng;
+    private PublicGameState gameState;
+    private PlayerState ownState;
+    private SortedBag<Ticket> initialTickets;
+    private Route routeToClaim;
+    private SortedBag<Card> claimCards;
+
+    /**
+     * construit un joueur jouant au hasard au moyen du générateur donné
+     * @param rng générateur aléatoire
+     */
+    public RandomPlayer(Random rng) {
+        this.rng = rng;
+    }
+
+    @Override
+    public void initPlayers(PlayerId ownId, Map<PlayerId, String> playerNames) {
+    }
+
+    @Override
+    public void receiveInfo(String info) {
+    }
+
+    @Override
+    public void updateState(PublicGameState newState, PlayerState ownState) {
+        this.gameState = newState;
+        this.ownState = ownState;
+    }
+
+    @Override
+    public void setInitialTicketChoice(SortedBag<Ticket> tickets) {
+        initialTickets = tickets;
+    }
+
+    @Override
+    public SortedBag<Ticket> chooseInitialTickets() {
+        int minCount = Constants.INITIAL_TICKETS_COUNT - Constants.DISCARDABLE_TICKETS_COUNT;
+        return randomSubset(initialTickets, minCount);
+    }
+
+    @Override
+    public TurnKind nextTurn() {
+        List<Route> claimableRoutes = claimableRoutes();
+        if(!claimableRoutes.isEmpty()) {
+            routeToClaim = claimableRoutes.get(rng.nextInt(claimableRoutes.size()));
+            List<SortedBag<Card>> options = ownState.possibleClaimCards(routeToClaim);
+            claimCards = options.get(rng.nextInt(options.size()));
+            return TurnKind.CLAIM_ROUTE;
+        }
+        if(gameState.canDrawCards()) {
+            return TurnKind.DRAW_CARDS;
+        }
+        if(gameState.ticketsCount() >= Constants.IN_GAME_TICKETS_COUNT) {
+            return TurnKind.DRAW_TICKETS;
+        }
+        // Aucune action n'est possible : le joueur tente de s'emparer d'une route hors de sa portée, ce qui revient à passer son tour.
+        for(Route route : ChMap.routes()) {
+            if(!ownState.canClaimRoute(route)) {
+                routeToClaim = route;
+                claimCards = SortedBag.of();
+                return TurnKind.CLAIM_ROUTE;
+            }
+        }
+        return TurnKind.DRAW_CARDS;
+    }
+
+    @Override
+    public SortedBag<Ticket> chooseTickets(SortedBag<Ticket> options) {
+        return randomSubset(options, 1);
+    }
+
+    @Override
+    public int drawSlot() {
+        return rng.nextInt(Constants.FACE_UP_CARDS_COUNT + 1) - 1;
+    }
+
+    @Override
+    public Route claimedRoute() {
+        return routeToClaim;
+    }
+
+    @Override
+    public SortedBag<Card> initialClaimCards() {
+        return claimCards;
+    }
+
+    @Override
+    public SortedBag<Card> chooseAdditionalCards(List<SortedBag<Card>> options) {
+        return options.get(rng.nextInt(options.size()));
+    }
+
+    @Override
+    public void addSpectator(Spectator spectator) {
+    }
+
+    @Override
+    public TurnKind displayEndScreen(String endMessage) {
+        return TurnKind.QUIT;
+    }
+
+    @Override
+    public void endGame() {
+    }
+
+    private List<Route> claimableRoutes() {
+        int stationCount = ChMap.stations().size();
+        BitSet claimedStations = new BitSet(stationCount * stationCount);
+        for(Route route : gameState.claimedRoutes()) {
+            claimedStations.set(route.station1().id() * stationCount + route.station2().id());
+        }
+        List<Route> claimableRoutes = new ArrayList<>();
+        for(Route route : ChMap.routes()) {
+            if(ownState.canClaimRoute(route) && !claimedStations.get(route.station1().id() * stationCount + route.station2().id())) {
+                claimableRoutes.add(route);
+            }
+        }
+        return claimableRoutes;
+    }
+
+    private <E extends Comparable<E>> SortedBag<E> randomSubset(SortedBag<E> options, int minCount) {
+        List<E> shuffled = options.toList();
+        Collections.shuffle(shuffled, rng);
+        int count = minCount + rng.nextInt(options.size() - minCount + 1);
+        return SortedBag.of(shuffled.subList(0, count));
+    }
+}
@@ -0,0 +1,137 @@
+package ch.epfl.tchu.bot;
+
+import ch.epfl.tchu.Preconditions;
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Tournoi de parties simulées entre joueurs artificiels, réparties sur tous les cœurs au moyen d'un <code>ForkJoinPool</code>
+ *
+ * l'ensemble des parties est découpé récursivement, chaque moitié recevant son propre générateur obtenu par
+ * <code>SplittableRandom.split</code> : les parties jouées, et donc les statistiques, ne dépendent que de la graine
+ * et pas de l'ordonnancement des tâches
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class Tournament {
+    private Tournament() {
+
+    }
+
+    private static final int GAMES_PER_TASK = 64;
+    private static final SortedBag<Ticket> TICKETS = SortedBag.of(ChMap.tickets());
+    private static final Map<PlayerId, String> PLAYER_NAMES = playerNames();
+
+    private static Map<PlayerId, String> playerNames() {
+        Map<PlayerId, String> playerNames = new EnumMap<>(PlayerId.class);
+        for(PlayerId id : PlayerId.ALL) {
+            playerNames.put(id, id.name());
+        }
+        return Map.copyOf(playerNames);
+    }
+
+    /**
+     * Fait jouer le nombre de parties donné entre joueurs construits par la fabrique donnée, sur le pool donné
+     * @param gamesCount nombre de parties à jouer
+     * @param seed graine à partir de laquelle sont dérivés les générateurs de toutes les parties et de tous les joueurs
+     * @param playerFactory fabrique de joueurs, recevant le générateur propre au joueur construit
+     * @param pool pool sur lequel les parties sont jouées
+     * @return les statistiques agrégées des parties jouées
+     * @throws IllegalArgumentException si le nombre de parties est strictement négatif
+     */
+    public static TournamentStats run(int gamesCount, long seed, Function<Random, Player> playerFactory, ForkJoinPool pool) {
+        Preconditions.checkArgument(gamesCount >= 0);
+        return pool.invoke(new GamesTask(gamesCount, new SplittableRandom(seed), playerFactory));
+    }
+
+    /**
+     * Fait jouer le nombre de parties donné entre joueurs jouant au hasard, sur le pool commun
+     * @param gamesCount nombre de parties à jouer
+     * @param seed graine à partir de laquelle sont dérivés les générateurs de toutes les parties et de tous les joueurs
+     * @return les statistiques agrégées des parties jouées
+     * @throws IllegalArgumentException si le nombre de parties est strictement négatif
+     */
+    public static TournamentStats run(int gamesCount, long seed) {
+        return run(gamesCount, seed, RandomPlayer::new, ForkJoinPool.commonPool());
+    }
+
+    private static final class GamesTask extends RecursiveTask<TournamentStats> {
+        private static final long serialVersionUID = 1L;
+
+        private final int gamesCount;
+        private final SplittableRandom rng;
+        private final Function<Random, Player> playerFactory;
+
+        private GamesTask(int gamesCount, SplittableRandom rng, Function<Random, Player> playerFactory) {
+            this.gamesCount = gamesCount;
+            this.rng = rng;
+            this.playerFactory = playerFactory;
+        }
+
+        @Override
+        protected TournamentStats compute() {
+            if(gamesCount > GAMES_PER_TASK) {
+                int half = gamesCount / 2;
+                GamesTask first = new GamesTask(half, rng.split(), playerFactory);
+                GamesTask second = new GamesTask(gamesCount - half, rng, playerFactory);
+                first.fork();
+                TournamentStats stats = second.compute();
+                stats.merge(first.join());
+                return stats;
+            }
+
+            TournamentStats stats = new TournamentStats();
+            for(int i = 0; i < gamesCount; ++i) {
+                Map<PlayerId, Player> players = new EnumMap<>(PlayerId.class);
+                for(PlayerId id : PlayerId.ALL) {
+                    players.put(id, playerFactory.apply(new Random(rng.nextLong())));
+                }
+                stats.add(GameEngine.play(players, PLAYER_NAMES, TICKETS, new Random(rng.nextLong())));
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Lance un tournoi entre joueurs jouant au hasard et affiche ses statistiques
+     * @param args nombre de parties (10 000 par défaut), graine (0 par défaut) et nombre de fils d'exécution
+     *             (nombre de processeurs disponibles par défaut)
+     */
+    public static void main(String[] args) {
+        int gamesCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long start = System.nanoTime();
+        TournamentStats stats = run(gamesCount, seed, RandomPlayer::new, pool);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("%d parties en %.2f s sur %d fils (%.0f parties/s)%n", stats.gamesCount(), seconds, parallelism, stats.gamesCount() / seconds);
+        for(PlayerId id : PlayerId.ALL) {
+            System.out.printf("victoires %s : %d%n", id, stats.winsCount(id));
+        }
+        System.out.printf("égalités : %d%n", stats.drawsCount());
+
+        System.out.println("billets (gardés, réussite) :");
+        for(Ticket ticket : ChMap.tickets()) {
+            System.out.printf("  %-40s %8d %6.1f %%%n", ticket, stats.ticketHeldCount(ticket), 100 * stats.ticketSuccessRate(ticket));
+        }
+        System.out.println("routes (prises par partie) :");
+        for(Route route : ChMap.routes()) {
+            System.out.printf("  %-12s %.3f%n", route.id(), stats.routeClaimFrequency(route));
+        }
+        System.out.println("scores (score, nombre) :");
+        stats.scoreDistribution().forEach((score, count) -> System.out.printf("  %4d %d%n", score, count));
+    }
+}
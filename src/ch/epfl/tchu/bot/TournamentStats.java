@@ -0,0 +1,157 @@
+package ch.epfl.tchu.bot;
+
+import ch.epfl.tchu.game.*;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Statistiques agrégées sur un ensemble de parties simulées : taux de réussite des billets, fréquence de prise des routes
+ * et distribution des scores
+ *
+ * chaque tâche d'un tournoi remplit ses propres statistiques, qui sont ensuite fusionnées : aucune synchronisation
+ * n'est donc nécessaire pendant les parties
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class TournamentStats {
+
+    private static final Map<Ticket, Integer> TICKET_INDICES = indices(ChMap.tickets());
+    private static final Map<Route, Integer> ROUTE_INDICES = indices(ChMap.routes());
+
+    private long gamesCount;
+    private long drawsCount;
+    private final Map<PlayerId, Long> winsCount = new EnumMap<>(PlayerId.class);
+    private final long[] ticketHeldCounts = new long[ChMap.tickets().size()];
+    private final long[] ticketFulfilledCounts = new long[ChMap.tickets().size()];
+    private final long[] routeClaimCounts = new long[ChMap.routes().size()];
+    private final SortedMap<Integer, Long> scoreCounts = new TreeMap<>();
+
+    TournamentStats() {
+        for(PlayerId id : PlayerId.ALL) {
+            winsCount.put(id, 0L);
+        }
+    }
+
+    private static <E> Map<E, Integer> indices(List<E> elements) {
+        Map<E, Integer> indices = new HashMap<>();
+        for(int i = 0; i < elements.size(); ++i) {
+            indices.put(elements.get(i), i);
+        }
+        return Map.copyOf(indices);
+    }
+
+    /**
+     * ajoute le résultat de la partie donnée aux statistiques
+     * @param result résultat d'une partie jouée sur la carte ChMap
+     */
+    void add(GameResult result) {
+        ++gamesCount;
+        PlayerId winner = result.winner();
+        if(winner == null) {
+            ++drawsCount;
+        } else {
+            winsCount.merge(winner, 1L, Long::sum);
+        }
+
+        for(PlayerId id : PlayerId.ALL) {
+            PlayerState playerState = result.finalState().playerState(id);
+            for(Ticket ticket : playerState.tickets()) {
+                int index = TICKET_INDICES.get(ticket);
+                ++ticketHeldCounts[index];
+                if(playerState.isTicketFulfilled(ticket)) {
+                    ++ticketFulfilledCounts[index];
+                }
+            }
+            for(Route route : playerState.routes()) {
+                ++routeClaimCounts[ROUTE_INDICES.get(route)];
+            }
+            scoreCounts.merge(result.score(id), 1L, Long::sum);
+        }
+    }
+
+    /**
+     * ajoute les statistiques données à celles-ci
+     * @param that statistiques à fusionner avec celles-ci
+     */
+    void merge(TournamentStats that) {
+        gamesCount += that.gamesCount;
+        drawsCount += that.drawsCount;
+        that.winsCount.forEach((id, count) -> winsCount.merge(id, count, Long::sum));
+        for(int i = 0; i < ticketHeldCounts.length; ++i) {
+            ticketHeldCounts[i] += that.ticketHeldCounts[i];
+            ticketFulfilledCounts[i] += that.ticketFulfilledCounts[i];
+        }
+        for(int i = 0; i < routeClaimCounts.length; ++i) {
+            routeClaimCounts[i] += that.routeClaimCounts[i];
+        }
+        that.scoreCounts.forEach((score, count) -> scoreCounts.merge(score, count, Long::sum));
+    }
+
+    /**
+     * retourne le nombre de parties jouées
+     * @return le nombre de parties jouées
+     */
+    public long gamesCount() {
+        return gamesCount;
+    }
+
+    /**
+     * retourne le nombre de parties gagnées par le joueur donné
+     * @param playerId identité du joueur
+     * @return le nombre de parties gagnées par le joueur donné
+     */
+    public long winsCount(PlayerId playerId) {
+        return winsCount.get(playerId);
+    }
+
+    /**
+     * retourne le nombre de parties terminées sur une égalité
+     * @return le nombre de parties terminées sur une égalité
+     */
+    public long drawsCount() {
+        return drawsCount;
+    }
+
+    /**
+     * retourne le nombre de fois où le billet donné a été gardé par un joueur jusqu'à la fin d'une partie
+     * @param ticket billet de la carte ChMap
+     * @return le nombre de fois où le billet donné a été gardé par un joueur
+     */
+    public long ticketHeldCount(Ticket ticket) {
+        return ticketHeldCounts[TICKET_INDICES.get(ticket)];
+    }
+
+    /**
+     * retourne la proportion des fois où le billet donné, gardé par un joueur, a été réalisé
+     * @param ticket billet de la carte ChMap
+     * @return la proportion des fois où le billet donné a été réalisé, ou 0 s'il n'a jamais été gardé
+     */
+    public double ticketSuccessRate(Ticket ticket) {
+        int index = TICKET_INDICES.get(ticket);
+        return ticketHeldCounts[index] == 0 ? 0 : (double) ticketFulfilledCounts[index] / ticketHeldCounts[index];
+    }
+
+    /**
+     * retourne la proportion des parties durant lesquelles la route donnée a été prise
+     * @param route route de la carte ChMap
+     * @return la proportion des parties durant lesquelles la route donnée a été prise, ou 0 si aucune partie n'a été jouée
+     */
+    public double routeClaimFrequency(Route route) {
+        return gamesCount == 0 ? 0 : (double) routeClaimCounts[ROUTE_INDICES.get(route)] / gamesCount;
+    }
+
+    /**
+     * retourne la distribution des scores finaux, tous joueurs confondus
+     * @return la table non modifiable associant à chaque score final le nombre de fois où il a été obtenu
+     */
+    public SortedMap<Integer, Long> scoreDistribution() {
+        return Collections.unmodifiableSortedMap(scoreCounts);
+    }
+}
@@ -0,0 +1,254 @@
+package ch.epfl.tchu.game;
+
+import ch.epfl.tchu.Preconditions;
+import ch.epfl.tchu.SortedBag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Multiensemble immuable de cartes wagon/locomotive, représenté par les multiplicités de chaque carte empaquetées dans un long
+ *
+ * chaque carte occupe 7 bits à partir du bit 7 × son ordinal : 6 bits de multiplicité (au plus 63) et un bit de garde,
+ * qui permet de calculer union, différence et inclusion sur toutes les cartes à la fois
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class CardBag {
+
+    private static final int BITS_PER_CARD = 7;
+    private static final long COUNT_MASK = 0x3F;
+    private static final long GUARDS = computeGuards();
+
+    /**
+     * Multiplicité maximale d'une carte dans un multiensemble de cartes
+     */
+    public static final int MAX_COUNT = (int) COUNT_MASK;
+
+    /**
+     * Multiensemble de cartes vide
+     */
+    public static final CardBag EMPTY = new CardBag(0L);
+
+    // Sous-ensembles déjà calculés, par taille puis par multiensemble ; seules les petites tailles sont mémorisées.
+    private static final int MAX_CACHED_SUBSET_SIZE = Constants.ADDITIONAL_TUNNEL_CARDS;
+    private static final int MAX_CACHED_BAGS = 4096;
+    private static final List<Map<Long, List<CardBag>>> SUBSETS_CACHE = computeSubsetsCache();
+
+    private final long counts;
+    private final int size;
+
+    private CardBag(long counts) {
+        this.counts = counts;
+        int size = 0;
+        for(long c = counts; c != 0; c >>>= BITS_PER_CARD) {
+            size += (int) (c & COUNT_MASK);
+        }
+        this.size = size;
+    }
+
+    private static long computeGuards() {
+        long guards = 0;
+        for(Card card : Card.ALL) {
+            guards |= (COUNT_MASK + 1) << shift(card);
+        }
+        return guards;
+    }
+
+    private static List<Map<Long, List<CardBag>>> computeSubsetsCache() {
+        List<Map<Long, List<CardBag>>> cache = new ArrayList<>();
+        for(int size = 0; size <= MAX_CACHED_SUBSET_SIZE; ++size) {
+            cache.add(new ConcurrentHashMap<>());
+        }
+        return List.copyOf(cache);
+    }
+
+    private static int shift(Card card) {
+        return card.ordinal() * BITS_PER_CARD;
+    }
+
+    /**
+     * retourne le multiensemble contenant count fois la carte donnée
+     * @param count multiplicité de la carte
+     * @param card carte
+     * @return le multiensemble contenant count fois la carte donnée
+     * @throws IllegalArgumentException si count n'est pas compris entre 0 et MAX_COUNT (inclus)
+     */
+    public static CardBag of(int count, Card card) {
+        Preconditions.checkArgument(count >= 0 && count <= MAX_COUNT);
+        return new CardBag((long) count << shift(card));
+    }
+
+    /**
+     * retourne le multiensemble contenant count1 fois la carte card1 et count2 fois la carte card2
+     * @param count1 multiplicité de la première carte
+     * @param card1 première carte
+     * @param count2 multiplicité de la seconde carte
+     * @param card2 seconde carte
+     * @return le multiensemble contenant count1 fois la carte card1 et count2 fois la carte card2
+     * @throws IllegalArgumentException si une multiplicité est négative ou si le multiensemble contiendrait plus de MAX_COUNT fois une carte
+     */
+    public static CardBag of(int count1, Card card1, int count2, Card card2) {
+        return of(count1, card1).union(of(count2, card2));
+    }
+
+    /**
+     * retourne le multiensemble de cartes contenant les mêmes cartes que le multiensemble donné
+     * @param cards multiensemble de cartes
+     * @return le multiensemble de cartes contenant les mêmes cartes que le multiensemble donné
+     * @throws IllegalArgumentException si le multiensemble donné contient plus de MAX_COUNT fois une carte
+     */
+    public static CardBag of(SortedBag<Card> cards) {
+        long counts = 0;
+        for(Map.Entry<Card, Integer> entry : cards.toMap().entrySet()) {
+            Preconditions.checkArgument(entry.getValue() <= MAX_COUNT);
+            counts |= (long) entry.getValue() << shift(entry.getKey());
+        }
+        return new CardBag(counts);
+    }
+
+    /**
+     * retourne le nombre de cartes du multiensemble
+     * @return le nombre de cartes du multiensemble
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * retourne vrai ssi le multiensemble est vide
+     * @return vrai ssi le multiensemble est vide
+     */
+    public boolean isEmpty() {
+        return counts == 0;
+    }
+
+    /**
+     * retourne la multiplicité de la carte donnée
+     * @param card carte
+     * @return la multiplicité de la carte donnée, 0 si elle n'appartient pas au multiensemble
+     */
+    public int countOf(Card card) {
+        return (int) ((counts >>> shift(card)) & COUNT_MASK);
+    }
+
+    /**
+     * retourne vrai ssi la carte donnée appartient au multiensemble
+     * @param card carte
+     * @return vrai ssi la carte donnée appartient au multiensemble
+     */
+    public boolean contains(Card card) {
+        return countOf(card) != 0;
+    }
+
+    /**
+     * retourne vrai ssi le multiensemble donné est inclus dans celui-ci
+     * @param that multiensemble dont on doit déterminer s'il est inclus dans celui-ci
+     * @return vrai ssi le multiensemble donné est inclus dans celui-ci
+     */
+    public boolean contains(CardBag that) {
+        return (((counts | GUARDS) - that.counts) & GUARDS) == GUARDS;
+    }
+
+    /**
+     * retourne le nombre de cartes différentes du multiensemble
+     * @return le nombre de cartes différentes du multiensemble
+     */
+    public int distinctCount() {
+        long present = ((counts | GUARDS) - (GUARDS >>> (BITS_PER_CARD - 1))) & GUARDS;
+        return Long.bitCount(present);
+    }
+
+    /**
+     * retourne l'union de ce multiensemble et du multiensemble donné
+     * @param that multiensemble à combiner avec celui-ci
+     * @return l'union de ce multiensemble et du multiensemble donné
+     * @throws IllegalArgumentException si l'union contiendrait plus de MAX_COUNT fois une carte
+     */
+    public CardBag union(CardBag that) {
+        long sum = counts + that.counts;
+        Preconditions.checkArgument((sum & GUARDS) == 0);
+        return new CardBag(sum);
+    }
+
+    /**
+     * retourne un multiensemble identique à celui-ci, si ce n'est qu'il contient en plus la carte donnée
+     * @param card carte à ajouter
+     * @return un multiensemble identique à celui-ci, si ce n'est qu'il contient en plus la carte donnée
+     * @throws IllegalArgumentException si le multiensemble contiendrait plus de MAX_COUNT fois la carte
+     */
+    public CardBag with(Card card) {
+        return union(of(1, card));
+    }
+
+    /**
+     * retourne la différence entre ce multiensemble et le multiensemble donné, les multiplicités négatives étant ramenées à 0
+     * @param that multiensemble à retirer de celui-ci
+     * @return la différence entre ce multiensemble et le multiensemble donné
+     */
+    public CardBag difference(CardBag that) {
+        long difference = (counts | GUARDS) - that.counts;
+        long nonNegative = difference & GUARDS;
+        return new CardBag(difference & (nonNegative - (nonNegative >>> (BITS_PER_CARD - 1))));
+    }
+
+    /**
+     * retourne tous les sous-ensembles de ce multiensemble ayant la taille donnée, par nombre croissant de locomotives
+     * (dans l'ordre de SortedBag.subsetsOfSizeIterator) ; les résultats des petites tailles sont mémorisés
+     * @param size taille des sous-ensembles
+     * @return la liste immuable des sous-ensembles de ce multiensemble ayant la taille donnée
+     * @throws IllegalArgumentException si size n'est pas comprise entre 0 et la taille du multiensemble
+     */
+    public List<CardBag> subsetsOfSize(int size) {
+        Preconditions.checkArgument(size >= 0 && size <= this.size);
+        if(size > MAX_CACHED_SUBSET_SIZE) {
+            return computeSubsetsOfSize(size);
+        }
+        Map<Long, List<CardBag>> cache = SUBSETS_CACHE.get(size);
+        List<CardBag> subsets = cache.get(counts);
+        if(subsets == null) {
+            if(cache.size() >= MAX_CACHED_BAGS) {
+                cache.clear();
+            }
+            subsets = computeSubsetsOfSize(size);
+            cache.put(counts, subsets);
+        }
+        return subsets;
+    }
+
+    private List<CardBag> computeSubsetsOfSize(int size) {
+        List<CardBag> subsets = new ArrayList<>();
+        toSortedBag().subsetsOfSizeIterator(size).forEachRemaining(subset -> subsets.add(of(subset)));
+        return List.copyOf(subsets);
+    }
+
+    /**
+     * retourne le multiensemble générique contenant les mêmes cartes que celui-ci
+     * @return le multiensemble générique contenant les mêmes cartes que celui-ci
+     */
+    public SortedBag<Card> toSortedBag() {
+        SortedBag.Builder<Card> builder = new SortedBag.Builder<>();
+        for(Card card : Card.ALL) {
+            builder.add(countOf(card), card);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(counts);
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return that instanceof CardBag && ((CardBag) that).counts == counts;
+    }
+
+    @Override
+    public String toString() {
+        return toSortedBag().toString();
+    }
+}
@@ -12,8 +12,8 @@ import java.util.*;
 public final class CardState extends PublicCardState {
 
     private final Deck<Card> deck;
-    private final SortedBag<Card> discards;
-    private CardState(List<Card> faceUpCards, Deck<Card> deck, SortedBag<Card> discards){
+    private final CardBag discards;
+    private CardState(List<Card> faceUpCards, Deck<Card> deck, CardBag discards){
         super(faceUpCards, deck.size(), discards.size());
         this.deck = deck;
         this.discards = discards;
@@ -30,7 +30,20 @@ public final class CardState extends PublicCardState {
      */
     public static CardState of(Deck<Card> deck){
         Preconditions.checkArgument(deck.size() >= 5);
-        return new CardState(deck.topCards(5).toList(), deck.withoutTopCards(5), SortedBag.of());
+        return new CardState(deck.topCardsList(5), deck.withoutTopCards(5), CardBag.EMPTY);
+    }
+
+    /**
+     * Crée un nouvel état CardState privé à partir de ses cartes face visible, de sa pioche et de sa défausse ;
+     * permet de reconstituer un état sauvegardé
+     * @param faceUpCards Les 5 cartes face visible
+     * @param deck La pioche
+     * @param discards La défausse
+     * @return Nouvel état CardState
+     * @throws IllegalArgumentException Si le nombre de cartes face visible n'est pas 5
+     */
+    public static CardState of(List<Card> faceUpCards, Deck<Card> deck, CardBag discards){
+        return new CardState(faceUpCards, deck, discards);
     }
 
     /**
@@ -59,6 +72,22 @@ public final class CardState extends PublicCardState {
         return deck.topCard();
     }
 
+    /**
+     * Retourne la pioche
+     * @return La pioche
+     */
+    public Deck<Card> deck() {
+        return deck;
+    }
+
+    /**
+     * Retourne la défausse
+     * @return La défausse
+     */
+    public CardBag discards() {
+        return discards;
+    }
+
     /**
      * Crée un nouvel ensemble identique au récepteur sans la carte au sommet de la pioche
      * @return Nouvel ensemble identique sans la carte du sommet de la pioche
@@ -78,7 +107,7 @@ public final class CardState extends PublicCardState {
      */
     public CardState withDeckRecreatedFromDiscards(Random rng) {
         Preconditions.checkArgument(deck.isEmpty());
-        return new CardState(faceUpCards(), Deck.of(discards, rng), SortedBag.of());
+        return new CardState(faceUpCards(), Deck.of(discards.toSortedBag(), rng), CardBag.EMPTY);
     }
 
     /**
@@ -87,7 +116,7 @@ public final class CardState extends PublicCardState {
      * @return un nouvel ensemble de cartes identique au récepteur avec les cartes en argument ajoutées à la défausse
      */
     public CardState withMoreDiscardedCards(SortedBag<Card> additionalDiscards){
-        return new CardState(super.faceUpCards(), deck, discards.union(additionalDiscards));
+        return new CardState(super.faceUpCards(), deck, discards.union(CardBag.of(additionalDiscards)));
     }
 
 
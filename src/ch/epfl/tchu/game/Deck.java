@@ -3,7 +3,6 @@ package ch.epfl.tchu.game;
 import ch.epfl.tchu.Preconditions;
 import ch.epfl.tchu.SortedBag;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -14,9 +13,12 @@ import java.util.Random;
  */
 public final class Deck<C extends Comparable<C>> {
 
+    // Les cartes mélangées sont partagées entre tous les tas qui en dérivent : seul l'index du sommet change.
     private final List<C> cards;
-    private Deck(List<C> cards){
-        this.cards = List.copyOf(cards);
+    private final int top;
+    private Deck(List<C> cards, int top){
+        this.cards = cards;
+        this.top = top;
     }
 
     /**
@@ -28,9 +30,20 @@ public final class Deck<C extends Comparable<C>> {
      * @return Nouveau tas de carte avec les mêmes cartes que le multiensemble, mélangé
      */
     public static <C extends Comparable<C>> Deck<C> of(SortedBag<C> cards, Random rng){
-        List<C> tempCards = new ArrayList<>(cards.toList());
+        List<C> tempCards = cards.toList();
         Collections.shuffle(tempCards, rng);
-        return new Deck<>(tempCards);
+        return new Deck<>(List.copyOf(tempCards), 0);
+    }
+
+    /**
+     * Crée un nouveau tas de carte contenant les cartes données, dans l'ordre donné, la première étant au sommet ;
+     * permet de reconstituer un tas sauvegardé
+     * @param cards Les cartes du tas, dans l'ordre du tas
+     * @param <C> Le type de cartes
+     * @return Nouveau tas de carte contenant les cartes données dans l'ordre donné
+     */
+    public static <C extends Comparable<C>> Deck<C> of(List<C> cards){
+        return new Deck<>(List.copyOf(cards), 0);
     }
 
     /**
@@ -38,7 +51,7 @@ public final class Deck<C extends Comparable<C>> {
      * @return La taille du tas de carte
      */
     public int size() {
-        return cards.size();
+        return cards.size() - top;
     }
 
     /**
@@ -46,7 +59,7 @@ public final class Deck<C extends Comparable<C>> {
      * @return Vrai si le tas de cartes est vide, Faux sinon
      */
     public boolean isEmpty() {
-        return cards.isEmpty();
+        return size() == 0;
     }
 
     /**
@@ -54,8 +67,8 @@ public final class Deck<C extends Comparable<C>> {
      * @return La carte du sommet du tas
      */
     public C topCard() {
-        Preconditions.checkArgument(!cards.isEmpty());
-        return cards.get(0);
+        Preconditions.checkArgument(!isEmpty());
+        return cards.get(top);
     }
 
     /**
@@ -65,8 +78,8 @@ public final class Deck<C extends Comparable<C>> {
      * @throws IllegalArgumentException si le tas de carte est vide ou si le count n'est pas compris entre 0 (inclus) et la taille du taille (incluse)
      */
     public Deck<C> withoutTopCards(int count) {
-        Preconditions.checkArgument(!cards.isEmpty() && count >=0 && count <= cards.size());
-        return new Deck<>(cards.subList(count,cards.size()));
+        Preconditions.checkArgument(!isEmpty() && count >=0 && count <= size());
+        return new Deck<>(cards, top + count);
     }
 
     /**
@@ -78,6 +91,17 @@ public final class Deck<C extends Comparable<C>> {
         return withoutTopCards(1);
     }
 
+    /**
+     * Retourne une vue (immuable) sur les count premières cartes du tas, dans l'ordre du tas
+     * @param count Le nombre de premières cartes à sélectionner
+     * @return La liste des count premières cartes du tas
+     * @throws IllegalArgumentException Si le count n'est pas compris entre 0 (inclus) et la taille du tas de carte (incluse)
+     */
+    public List<C> topCardsList(int count){
+        Preconditions.checkArgument(count >=0 && count <= size());
+        return cards.subList(top, top + count);
+    }
+
     /**
      * Retourne un nouveau multiemsemble de cartes contentant les count premières cartes du tas de carte récepteur
      * @param count Les premières cartes à sélectionner
@@ -85,17 +109,7 @@ public final class Deck<C extends Comparable<C>> {
      * @throws IllegalArgumentException Si le count n'est pas compris entre 0 (inclus) et la taille du tas de carte (incluse)
      */
     public SortedBag<C> topCards(int count){
-        Preconditions.checkArgument(count >=0 && count <= cards.size());
-        SortedBag.Builder<C> bagBuilder = new SortedBag.Builder<>();
-        cards.subList(0, count).forEach(card -> bagBuilder.add(1, card));
-        return bagBuilder.build();
+        return SortedBag.of(topCardsList(count));
     }
 
-
-
-
-
-
-
-
 }
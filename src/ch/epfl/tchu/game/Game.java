@@ -2,15 +2,19 @@ package ch.epfl.tchu.game;
 
 import ch.epfl.tchu.Preconditions;
 import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.gui.Helper;
 import ch.epfl.tchu.gui.Info;
 import javafx.beans.property.SimpleBooleanProperty;
 
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CountDownLatch;
-
-import static javafx.application.Platform.runLater;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 //---------- CONTIENT DU BONUS ----------
 
@@ -34,62 +38,90 @@ public final class Game {
      * @param rng générateur de nombre aléatoire pour mélanger les cartes de la défausse et faire une nouvelle pioche
      */
     public static void play(Map<PlayerId, Player> players, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets, Random rng) {
+        play(players, playerNames, tickets, rng, null, gameState -> {}, () -> {});
+    }
+
+    //----------BONUS----------
+    /**
+     * Fait jouer une partie de tCHu aux joueurs donnés, éventuellement reprise à partir d'un état sauvegardé au début d'un tour,
+     * en communiquant à l'observateur donné l'état de la partie au début de chaque tour
+     * @param players joueurs et leurs identités
+     * @param playerNames table de noms des joueurs
+     * @param tickets billets disponibles pour cette partie et les suivantes
+     * @param rng générateur de nombre aléatoire pour mélanger les cartes de la défausse et faire une nouvelle pioche
+     * @param resumedState état au début d'un tour de la partie à reprendre, ou null pour commencer une nouvelle partie
+     * @param turnObserver observateur de l'état de la partie au début de chaque tour
+     * @param gameEndObserver observateur de la fin de chaque partie, appelé avant l'affichage de l'écran de fin
+     */
+    public static void play(Map<PlayerId, Player> players, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets, Random rng,
+                            GameState resumedState, Consumer<GameState> turnObserver, Runnable gameEndObserver) {
+        play(players, playerNames, tickets, rng, resumedState, turnObserver, gameEndObserver, () -> Helper.playSound(Helper.Sound.SHUFFLE));
+    }
+
+    /**
+     * Fait jouer une partie de tCHu aux joueurs donnés comme la méthode précédente, en informant l'observateur donné de chaque
+     * mélange de la défausse plutôt que de jouer un son ; utile aux serveurs sans interface, qui jouent plusieurs parties à la fois
+     * @param players joueurs et leurs identités
+     * @param playerNames table de noms des joueurs
+     * @param tickets billets disponibles pour cette partie et les suivantes
+     * @param rng générateur de nombre aléatoire pour mélanger les cartes de la défausse et faire une nouvelle pioche
+     * @param resumedState état au début d'un tour de la partie à reprendre, ou null pour commencer une nouvelle partie
+     * @param turnObserver observateur de l'état de la partie au début de chaque tour
+     * @param gameEndObserver observateur de la fin de chaque partie, appelé avant l'affichage de l'écran de fin
+     * @param shuffleObserver observateur des mélanges de la défausse formant une nouvelle pioche
+     */
+    public static void play(Map<PlayerId, Player> players, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets, Random rng,
+                            GameState resumedState, Consumer<GameState> turnObserver, Runnable gameEndObserver, Runnable shuffleObserver) {
         Preconditions.checkArgument(players.size() == PlayerId.ALL.size() && playerNames.size() == PlayerId.ALL.size());
 
+        ExecutorService endScreens = Executors.newFixedThreadPool(PlayerId.COUNT);
+        try {
+            GameState initialState = resumedState;
+            while(playOnce(players, playerNames, tickets, rng, initialState, turnObserver, gameEndObserver, shuffleObserver, endScreens)) {
+                players.values().forEach(Player::endGame);
+                initialState = null;
+            }
+        } finally {
+            endScreens.shutdownNow();
+        }
+    }
+    //-------------------------
+
+    // Joue une partie, à partir de l'état donné s'il n'est pas nul, et retourne vrai ssi les deux joueurs veulent en rejouer une.
+    private static boolean playOnce(Map<PlayerId, Player> players, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets, Random rng,
+                                    GameState resumedState, Consumer<GameState> turnObserver, Runnable gameEndObserver,
+                                    Runnable shuffleObserver, ExecutorService endScreens) {
         gameHasStarted.set(true);
 
-        List<PlayerId> allPlayers = PlayerId.ALL;
         Map<PlayerId,Info> infoMap = new EnumMap<>(PlayerId.class);
-        GameState gameState = GameState.initial(tickets, rng);
         for(Map.Entry<PlayerId,String> e : playerNames.entrySet()){
             players.get(e.getKey()).initPlayers(e.getKey(), playerNames);
             infoMap.put(e.getKey(), new Info(playerNames.get(e.getKey())));
         }
-        receiveInfoBoth(infoMap.get(gameState.currentPlayerId()).willPlayFirst(), players);
-
-        for(PlayerId id : allPlayers) {
-            players.get(id).setInitialTicketChoice(gameState.topTickets(Constants.INITIAL_TICKETS_COUNT));
-            gameState = gameState.withoutTopTickets(Constants.INITIAL_TICKETS_COUNT);
-            players.get(id).updateState(gameState, gameState.playerState(id));
-        }
-        Map<PlayerId, Integer> keptTicketsSizes = new HashMap<>();
-        for(PlayerId id : allPlayers){
-            SortedBag<Ticket> keptTicketsBag = players.get(id).chooseInitialTickets();
-            gameState = gameState.withInitiallyChosenTickets(id, keptTicketsBag);
-            keptTicketsSizes.put(id, keptTicketsBag.size());
-        }
-        keptTicketsSizes.forEach((x,y) -> receiveInfoBoth(infoMap.get(x).keptTickets(y), players));
-
-
-
-        do {
-            gameState = newTurn(players, rng, gameState, infoMap);
-        } while(!gameState.lastTurnBegins() && gameState.lastPlayer() == null);
-        for(PlayerId id : PlayerId.ALL){
-            gameState = newTurn(players, rng, gameState, infoMap);
+        GameState gameState = resumedState == null ? initialTurnState(players, tickets, rng, infoMap) : resumedState;
+
+        // Une fois le dernier joueur connu, chaque joueur joue encore un tour, le dernier joueur en dernier.
+        while(true) {
+            PlayerId lastPlayer = gameState.lastPlayer();
+            PlayerId currentPlayerId = gameState.currentPlayerId();
+            turnObserver.accept(gameState);
+            gameState = newTurn(players, rng, gameState, infoMap, shuffleObserver);
+            if(currentPlayerId == lastPlayer) {
+                break;
+            }
         }
+        gameEndObserver.run();
 
 
+        Map<PlayerId, Trail> playerLongestTrailsMap = GameEngine.longestTrails(gameState);
+        Map<PlayerId, Integer> playerScores = GameEngine.scores(gameState, playerLongestTrailsMap);
         int maxLength = 0;
-        Map<PlayerId, Trail> playerLongestTrailsMap = new EnumMap<>(PlayerId.class);
-        for (PlayerId id : allPlayers) {
-            PlayerState ps = gameState.playerState(id);
-            Trail longestTrail = Trail.longest(ps.routes());
-            if(longestTrail.length() > maxLength){
-                maxLength = longestTrail.length();
-            }
-            playerLongestTrailsMap.put(id, longestTrail);
-
+        for (Trail trail : playerLongestTrailsMap.values()) {
+            maxLength = Math.max(maxLength, trail.length());
         }
-
-        Map<PlayerId, Integer> playerScores = new EnumMap<>(PlayerId.class);
         for (Map.Entry<PlayerId, Trail> entry : playerLongestTrailsMap.entrySet()) {
-            PlayerId id = entry.getKey();
             if(entry.getValue().length() == maxLength){
-                playerScores.put(id, gameState.playerState(id).finalPoints() + Constants.LONGEST_TRAIL_BONUS_POINTS);
-                receiveInfoBoth(infoMap.get(id).getsLongestTrailBonus(Trail.longest(gameState.playerState(id).routes())), players);
-            } else {
-                playerScores.put(id, gameState.playerState(id).finalPoints());
+                receiveInfoBoth(infoMap.get(entry.getKey()).getsLongestTrailBonus(entry.getValue()), players);
             }
         }
 
@@ -110,98 +142,41 @@ public final class Game {
 
         updateBothStates(gameState, players);
 
-        //----------BONUS----------
-        BlockingQueue<Player.TurnKind> player1Choice = new ArrayBlockingQueue<>(1);
-        BlockingQueue<Player.TurnKind> player2Choice = new ArrayBlockingQueue<>(1);
-        //-------------------------
-
-        if(draw){
-            receiveInfoBoth(Info.draw(new ArrayList<>(playerNames.values()), maxScore), players);
-
-            //----------BONUS----------
-            int finalMaxScore1 = maxScore;
-
-            new Thread(() -> {
-                try {
-                    Player.TurnKind result = players.get(PlayerId.PLAYER_1).displayEndScreen(Info.draw(new ArrayList<>(playerNames.values()), finalMaxScore1));
-                    player1Choice.put(result);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-
-            }).start();
-            new Thread(() -> {
-                try {
-                    Player.TurnKind result = players.get(PlayerId.PLAYER_2).displayEndScreen(Info.draw(new ArrayList<>(playerNames.values()), finalMaxScore1));
-                    player2Choice.put(result);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-
-            }).start();
-            //-------------------------
-
-        } else {
-            receiveInfoBoth(infoMap.get(winner).won(maxScore, playerScores.get(winner.next())), players);
-
-            //----------BONUS----------
-            PlayerId finalWinner = winner;
-            int finalMaxScore = maxScore;
-            new Thread( () -> {
-
-                try {
-                    Player.TurnKind result = players.get(PlayerId.PLAYER_1).displayEndScreen(infoMap.get(finalWinner).
-                            won(finalMaxScore, playerScores.get(finalWinner.next())));
-                    player1Choice.put(result);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }).start();
-
-            new Thread( () -> {
-
-                try {
-                    Player.TurnKind result = players.get(PlayerId.PLAYER_2).displayEndScreen(infoMap.get(finalWinner).
-                            won(finalMaxScore, playerScores.get(finalWinner.next())));
-                    player2Choice.put(result);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }).start();
-            //-------------------------
-
-        }
+        String endMessage = draw
+                ? Info.draw(new ArrayList<>(playerNames.values()), maxScore)
+                : infoMap.get(winner).won(maxScore, playerScores.get(winner.next()));
+        receiveInfoBoth(endMessage, players);
+        flushBoth(players);
 
         //----------BONUS----------
-        CountDownLatch latch = new CountDownLatch(2);
-        List<Boolean> checksEnd = new ArrayList<>();
-        new Thread(() -> {
-            checksEnd.add(checkEndCondition(player1Choice, players));
-            latch.countDown();
-
-        }).start();
+        return bothPlayAgain(players, endMessage, endScreens);
+        //-------------------------
+    }
 
-        new Thread(() -> {
-            checksEnd.add(checkEndCondition(player2Choice, players));
-            latch.countDown();
+    // Distribue les billets initiaux et retourne l'état de la partie au début de son premier tour.
+    private static GameState initialTurnState(Map<PlayerId, Player> players, SortedBag<Ticket> tickets, Random rng, Map<PlayerId, Info> infoMap) {
+        List<PlayerId> allPlayers = PlayerId.ALL;
+        GameState gameState = GameState.initial(tickets, rng);
+        receiveInfoBoth(infoMap.get(gameState.currentPlayerId()).willPlayFirst(), players);
 
-        }).start();
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        for(PlayerId id : allPlayers) {
+            players.get(id).setInitialTicketChoice(gameState.topTickets(Constants.INITIAL_TICKETS_COUNT));
+            gameState = gameState.withoutTopTickets(Constants.INITIAL_TICKETS_COUNT);
+            players.get(id).updateState(gameState, gameState.playerState(id));
         }
-
-
-        if(checksEnd.stream().allMatch(e -> e)){
-            players.values().forEach(Player::endGame);
-            play(players, playerNames, tickets, rng);
+        flushBoth(players);
+        Map<PlayerId, Integer> keptTicketsSizes = new HashMap<>();
+        for(PlayerId id : allPlayers){
+            SortedBag<Ticket> keptTicketsBag = players.get(id).chooseInitialTickets();
+            gameState = gameState.withInitiallyChosenTickets(id, keptTicketsBag);
+            keptTicketsSizes.put(id, keptTicketsBag.size());
         }
-        //-------------------------
-
+        keptTicketsSizes.forEach((x,y) -> receiveInfoBoth(infoMap.get(x).keptTickets(y), players));
+        return gameState;
     }
 
-    private static GameState newTurn(Map<PlayerId, Player> players, Random rng, GameState gameState, Map<PlayerId, Info> infoMap) {
+    private static GameState newTurn(Map<PlayerId, Player> players, Random rng, GameState gameState, Map<PlayerId, Info> infoMap,
+                                     Runnable shuffleObserver) {
         PlayerId currentPlayerId = gameState.currentPlayerId();
         Player player = players.get(currentPlayerId);
         receiveInfoBoth(infoMap.get(currentPlayerId).canPlay(), players);
@@ -212,6 +187,7 @@ public final class Game {
         switch(turnKind){
             case DRAW_TICKETS:
                 receiveInfoBoth(playerInfo.drewTickets(Constants.IN_GAME_TICKETS_COUNT), players);
+                flushBoth(players);
                 SortedBag<Ticket> chosenTickets = player.chooseTickets(gameState.topTickets(Constants.IN_GAME_TICKETS_COUNT));
                 gameState = gameState.withChosenAdditionalTickets(gameState.topTickets(Constants.IN_GAME_TICKETS_COUNT), chosenTickets);
                 receiveInfoBoth(playerInfo.keptTickets(chosenTickets.size()), players);
@@ -223,7 +199,7 @@ public final class Game {
                 return gameState;
             case DRAW_CARDS:
                 for(int i = 0 ; i < CARD_DRAWS_PER_TURN; ++i) {
-                    gameState = gameState.withCardsDeckRecreatedIfNeeded(rng);
+                    gameState = withCardsDeckRecreatedIfNeeded(gameState, rng, shuffleObserver);
                     if(i==1){
                         updateBothStates(gameState, players);
                     }
@@ -254,7 +230,7 @@ public final class Game {
 
                         SortedBag.Builder<Card> drawnCardsBuilder = new SortedBag.Builder<>();
                         for(int i = 0; i < Constants.ADDITIONAL_TUNNEL_CARDS; ++i) {
-                            gameState = gameState.withCardsDeckRecreatedIfNeeded(rng);
+                            gameState = withCardsDeckRecreatedIfNeeded(gameState, rng, shuffleObserver);
                             drawnCardsBuilder.add(gameState.topCard());
                             gameState = gameState.withoutTopCard();
                         }
@@ -267,6 +243,7 @@ public final class Game {
                             List<SortedBag<Card>> possibleAdditionalCards = gameState.playerState(currentPlayerId)
                                     .possibleAdditionalCards(additionalClaimCards, initialClaimCards);
                             if(possibleAdditionalCards.size()>0){
+                                flushBoth(players);
                                 chosenAdditionalCards = player.chooseAdditionalCards(possibleAdditionalCards);
                             }
 
@@ -300,29 +277,66 @@ public final class Game {
         return gameState;
     }
 
+    private static GameState withCardsDeckRecreatedIfNeeded(GameState gameState, Random rng, Runnable shuffleObserver) {
+        GameState newGameState = gameState.withCardsDeckRecreatedIfNeeded(rng);
+
+        //----------BONUS----------
+        if(newGameState != gameState) {
+            shuffleObserver.run();
+        }
+        //-------------------------
+
+        return newGameState;
+    }
+
     private static void receiveInfoBoth(String info, Map<PlayerId, Player> players){
         PlayerId.ALL.forEach(id -> players.get(id).receiveInfo(info));
     }
 
     private static void updateBothStates(GameState gameState, Map<PlayerId, Player> players){
         PlayerId.ALL.forEach(id -> players.get(id).updateState(gameState, gameState.playerState(id)));
+        flushBoth(players);
+    }
+
+    private static void flushBoth(Map<PlayerId, Player> players){
+        PlayerId.ALL.forEach(id -> players.get(id).flush());
     }
 
 
     //----------BONUS----------
-    private static boolean checkEndCondition(BlockingQueue<Player.TurnKind> playerChoice, Map<PlayerId, Player> players) {
+    // Affiche l'écran de fin aux deux joueurs en parallèle et retourne vrai ssi aucun d'eux ne quitte ; dès que l'un d'eux quitte
+    // ou se déconnecte, l'attente du choix de l'autre est annulée et la partie se termine pour les deux.
+    private static boolean bothPlayAgain(Map<PlayerId, Player> players, String endMessage, ExecutorService endScreens) {
+        CompletionService<Player.TurnKind> choices = new ExecutorCompletionService<>(endScreens);
+        List<Future<Player.TurnKind>> futures = new ArrayList<>();
+        for(PlayerId id : PlayerId.ALL) {
+            futures.add(choices.submit(() -> players.get(id).displayEndScreen(endMessage)));
+        }
+
+        boolean playAgain = true;
         try {
-            Player.TurnKind playerEnd = playerChoice.take();
-            if (playerEnd == Player.TurnKind.QUIT) {
-                runLater(() -> players.get(PlayerId.PLAYER_1).endGame());
-                runLater(() -> players.get(PlayerId.PLAYER_2).endGame());
-                return false;
+            for(int i = 0; i < futures.size() && playAgain; ++i) {
+                playAgain = choices.take().get() != Player.TurnKind.QUIT;
+            }
+        } catch (ExecutionException e) {
+            playAgain = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            playAgain = false;
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        if(!playAgain) {
+            for(Player player : players.values()) {
+                try {
+                    player.endGame();
+                } catch (UncheckedIOException e) {
+                    // Le joueur s'est déjà déconnecté.
+                }
             }
-            return true;
-        } catch (InterruptedException e){
-            e.printStackTrace();
         }
-        return false;
+        return playAgain;
     }
 
     public static SimpleBooleanProperty hasGameStarted() {
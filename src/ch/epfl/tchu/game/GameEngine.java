@@ -0,0 +1,198 @@
+package ch.epfl.tchu.game;
+
+import ch.epfl.tchu.Preconditions;
+import ch.epfl.tchu.SortedBag;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Moteur de jeu sans interface graphique, destiné à faire jouer rapidement des parties complètes à des joueurs artificiels
+ *
+ * les règles appliquées sont celles de <code>Game</code>, mais aucune information textuelle n'est communiquée aux joueurs,
+ * aucun fil d'exécution n'est créé et rien ne dépend de JavaFX
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class GameEngine {
+    private GameEngine() {
+
+    }
+
+    private final static int CARD_DRAWS_PER_TURN = 2;
+
+    /**
+     * Nombre maximum de tours joués avant que la partie ne soit interrompue, au cas où aucun des joueurs ne pourrait plus agir
+     */
+    public static final int MAX_TURNS = 1000;
+
+    /**
+     * Fait jouer une partie complète de tCHu aux joueurs donnés et retourne son résultat
+     * @param players joueurs et leurs identités
+     * @param playerNames table de noms des joueurs
+     * @param tickets billets disponibles pour cette partie
+     * @param rng générateur de nombre aléatoire utilisé pour tous les mélanges de la partie
+     * @return le résultat de la partie
+     * @throws IllegalArgumentException si les tables des joueurs ou de leurs noms ne contiennent pas exactement deux entrées
+     */
+    public static GameResult play(Map<PlayerId, Player> players, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets, Random rng) {
+        return play(players, playerNames, tickets, rng, gameState -> {});
+    }
+
+    /**
+     * Fait jouer une partie complète de tCHu aux joueurs donnés, en communiquant à l'observateur donné l'état de la partie
+     * au début de chaque tour, et retourne son résultat
+     * @param players joueurs et leurs identités
+     * @param playerNames table de noms des joueurs
+     * @param tickets billets disponibles pour cette partie
+     * @param rng générateur de nombre aléatoire utilisé pour tous les mélanges de la partie
+     * @param turnObserver observateur de l'état de la partie au début de chaque tour
+     * @return le résultat de la partie
+     * @throws IllegalArgumentException si les tables des joueurs ou de leurs noms ne contiennent pas exactement deux entrées
+     */
+    public static GameResult play(Map<PlayerId, Player> players, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets, Random rng,
+                                  Consumer<GameState> turnObserver) {
+        Preconditions.checkArgument(players.size() == PlayerId.ALL.size() && playerNames.size() == PlayerId.ALL.size());
+
+        GameState gameState = GameState.initial(tickets, rng);
+        for(PlayerId id : PlayerId.ALL) {
+            players.get(id).initPlayers(id, playerNames);
+        }
+
+        for(PlayerId id : PlayerId.ALL) {
+            players.get(id).setInitialTicketChoice(gameState.topTickets(Constants.INITIAL_TICKETS_COUNT));
+            gameState = gameState.withoutTopTickets(Constants.INITIAL_TICKETS_COUNT);
+            players.get(id).updateState(gameState, gameState.playerState(id));
+        }
+        for(PlayerId id : PlayerId.ALL) {
+            gameState = gameState.withInitiallyChosenTickets(id, players.get(id).chooseInitialTickets());
+        }
+
+        int turnCount = 0;
+        do {
+            gameState = newTurn(players, rng, gameState, turnObserver);
+            ++turnCount;
+        } while(!gameState.lastTurnBegins() && gameState.lastPlayer() == null && turnCount < MAX_TURNS);
+        for(int i = 0; i < PlayerId.COUNT; ++i) {
+            gameState = newTurn(players, rng, gameState, turnObserver);
+            ++turnCount;
+        }
+
+        updateBothStates(gameState, players);
+
+        Map<PlayerId, Trail> longestTrails = longestTrails(gameState);
+        return new GameResult(scores(gameState, longestTrails), longestTrails, turnCount, gameState);
+    }
+
+    /**
+     * retourne le plus long chemin de chacun des joueurs dans l'état donné
+     * @param gameState état de la partie
+     * @return le plus long chemin de chacun des joueurs
+     */
+    public static Map<PlayerId, Trail> longestTrails(GameState gameState) {
+        Map<PlayerId, Trail> longestTrails = new EnumMap<>(PlayerId.class);
+        for(PlayerId id : PlayerId.ALL) {
+            longestTrails.put(id, Trail.longest(gameState.playerState(id).routes()));
+        }
+        return longestTrails;
+    }
+
+    /**
+     * retourne le score final de chacun des joueurs, le bonus étant attribué à tous les joueurs possédant le plus long chemin
+     * @param gameState état final de la partie
+     * @param longestTrails plus long chemin de chacun des joueurs
+     * @return le score final de chacun des joueurs
+     */
+    public static Map<PlayerId, Integer> scores(GameState gameState, Map<PlayerId, Trail> longestTrails) {
+        int maxLength = 0;
+        for(Trail trail : longestTrails.values()) {
+            maxLength = Math.max(maxLength, trail.length());
+        }
+        Map<PlayerId, Integer> scores = new EnumMap<>(PlayerId.class);
+        for(PlayerId id : PlayerId.ALL) {
+            int bonus = longestTrails.get(id).length() == maxLength ? Constants.LONGEST_TRAIL_BONUS_POINTS : 0;
+            scores.put(id, gameState.playerState(id).finalPoints() + bonus);
+        }
+        return scores;
+    }
+
+    private static GameState newTurn(Map<PlayerId, Player> players, Random rng, GameState gameState, Consumer<GameState> turnObserver) {
+        turnObserver.accept(gameState);
+        PlayerId currentPlayerId = gameState.currentPlayerId();
+        Player player = players.get(currentPlayerId);
+        updateBothStates(gameState, players);
+
+        switch(player.nextTurn()) {
+            case DRAW_TICKETS:
+                SortedBag<Ticket> drawnTickets = gameState.topTickets(Constants.IN_GAME_TICKETS_COUNT);
+                gameState = gameState.withChosenAdditionalTickets(drawnTickets, player.chooseTickets(drawnTickets));
+                break;
+
+            case DRAW_CARDS:
+                for(int i = 0; i < CARD_DRAWS_PER_TURN; ++i) {
+                    gameState = gameState.withCardsDeckRecreatedIfNeeded(rng);
+                    if(i == 1) {
+                        updateBothStates(gameState, players);
+                    }
+                    int drawnSlot = player.drawSlot();
+                    if(drawnSlot == Constants.DECK_SLOT) {
+                        gameState = gameState.withBlindlyDrawnCard();
+                    } else if(Constants.FACE_UP_CARD_SLOTS.contains(drawnSlot)) {
+                        gameState = gameState.withDrawnFaceUpCard(drawnSlot);
+                    }
+                }
+                break;
+
+            case CLAIM_ROUTE:
+                Route route = player.claimedRoute();
+                if(!gameState.currentPlayerState().canClaimRoute(route)) {
+                    break;
+                }
+                SortedBag<Card> initialClaimCards = player.initialClaimCards();
+                if(route.level() == Route.Level.UNDERGROUND) {
+                    SortedBag.Builder<Card> drawnCardsBuilder = new SortedBag.Builder<>();
+                    for(int i = 0; i < Constants.ADDITIONAL_TUNNEL_CARDS; ++i) {
+                        gameState = gameState.withCardsDeckRecreatedIfNeeded(rng);
+                        drawnCardsBuilder.add(gameState.topCard());
+                        gameState = gameState.withoutTopCard();
+                    }
+                    SortedBag<Card> drawnCards = drawnCardsBuilder.build();
+                    int additionalClaimCards = route.additionalClaimCardsCount(initialClaimCards, drawnCards);
+                    gameState = gameState.withMoreDiscardedCards(drawnCards);
+                    SortedBag<Card> chosenAdditionalCards = SortedBag.of();
+                    if(additionalClaimCards > 0) {
+                        List<SortedBag<Card>> possibleAdditionalCards = gameState.playerState(currentPlayerId)
+                                .possibleAdditionalCards(additionalClaimCards, initialClaimCards);
+                        if(!possibleAdditionalCards.isEmpty()) {
+                            chosenAdditionalCards = player.chooseAdditionalCards(possibleAdditionalCards);
+                        }
+                    }
+                    if(!chosenAdditionalCards.isEmpty() || additionalClaimCards == 0) {
+                        gameState = gameState.withClaimedRoute(route, initialClaimCards.union(chosenAdditionalCards));
+                    }
+                } else {
+                    gameState = gameState.withClaimedRoute(route, initialClaimCards);
+                }
+                break;
+
+            default:
+                break;
+        }
+
+        return gameState.forNextTurn();
+    }
+
+    private static void updateBothStates(GameState gameState, Map<PlayerId, Player> players) {
+        for(PlayerId id : PlayerId.ALL) {
+            players.get(id).updateState(gameState, gameState.playerState(id));
+        }
+        for(PlayerId id : PlayerId.ALL) {
+            players.get(id).flush();
+        }
+    }
+
+}
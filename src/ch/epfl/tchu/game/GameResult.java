@@ -0,0 +1,75 @@
+package ch.epfl.tchu.game;
+
+import java.util.Map;
+
+/**
+ * Résultat d'une partie jouée par <code>GameEngine</code>
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class GameResult {
+
+    private final Map<PlayerId, Integer> scores;
+    private final Map<PlayerId, Trail> longestTrails;
+    private final int turnCount;
+    private final GameState finalState;
+
+    /**
+     * construit le résultat d'une partie
+     * @param scores score final de chacun des joueurs
+     * @param longestTrails plus long chemin de chacun des joueurs
+     * @param turnCount nombre de tours joués
+     * @param finalState état de la partie à sa fin
+     */
+    public GameResult(Map<PlayerId, Integer> scores, Map<PlayerId, Trail> longestTrails, int turnCount, GameState finalState) {
+        this.scores = Map.copyOf(scores);
+        this.longestTrails = Map.copyOf(longestTrails);
+        this.turnCount = turnCount;
+        this.finalState = finalState;
+    }
+
+    /**
+     * retourne le score final du joueur donné
+     * @param playerId identité du joueur
+     * @return le score final du joueur donné
+     */
+    public int score(PlayerId playerId) {
+        return scores.get(playerId);
+    }
+
+    /**
+     * retourne le plus long chemin du joueur donné
+     * @param playerId identité du joueur
+     * @return le plus long chemin du joueur donné
+     */
+    public Trail longestTrail(PlayerId playerId) {
+        return longestTrails.get(playerId);
+    }
+
+    /**
+     * retourne le nombre de tours joués durant la partie
+     * @return le nombre de tours joués durant la partie
+     */
+    public int turnCount() {
+        return turnCount;
+    }
+
+    /**
+     * retourne l'état de la partie à sa fin
+     * @return l'état de la partie à sa fin
+     */
+    public GameState finalState() {
+        return finalState;
+    }
+
+    /**
+     * retourne l'identité du gagnant de la partie, ou null en cas d'égalité
+     * @return l'identité du gagnant de la partie, ou null en cas d'égalité
+     */
+    public PlayerId winner() {
+        int score1 = score(PlayerId.PLAYER_1);
+        int score2 = score(PlayerId.PLAYER_2);
+        return score1 == score2 ? null : score1 > score2 ? PlayerId.PLAYER_1 : PlayerId.PLAYER_2;
+    }
+}
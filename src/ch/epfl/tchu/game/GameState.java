@@ -2,9 +2,6 @@ package ch.epfl.tchu.game;
 
 import ch.epfl.tchu.Preconditions;
 import ch.epfl.tchu.SortedBag;
-import ch.epfl.tchu.gui.Helper;
-
-//---------- CONTIENT DU BONUS ----------
 
 import java.util.*;
 
@@ -36,26 +33,53 @@ public final class GameState extends PublicGameState {
      * @return l'état initial d'une partie de tCHu
      */
     public static GameState initial(SortedBag<Ticket> tickets, Random rng){
-        List<Card> cardList = Constants.ALL_CARDS.toList();
-        Collections.shuffle(cardList, rng);
+        Deck<Card> cardDeck = Deck.of(Constants.ALL_CARDS, rng);
         Map<PlayerId, PlayerState> playerStates = new EnumMap<>(PlayerId.class);
         for(PlayerId id : PlayerId.ALL){
-            List<Card> playerCards = new ArrayList<>();
-            for(int i = 0; i < Constants.INITIAL_CARDS_COUNT; ++i){
-                playerCards.add(cardList.get(0));
-                cardList.remove(0);
-            }
-            playerStates.put(id, PlayerState.initial(SortedBag.of(playerCards)));
+            playerStates.put(id, PlayerState.initial(cardDeck.topCards(Constants.INITIAL_CARDS_COUNT)));
+            cardDeck = cardDeck.withoutTopCards(Constants.INITIAL_CARDS_COUNT);
         }
 
         int chosenPlayerID = rng.nextInt(PlayerId.COUNT);
         PlayerId playerId = PlayerId.ALL.get(chosenPlayerID);
-        Deck<Card> cardDeck = Deck.of(SortedBag.of(cardList), rng);
         Deck<Ticket> ticketDeck = Deck.of(tickets, rng);
         return new GameState(ticketDeck, playerId, playerStates,CardState.of(cardDeck), null);
 
     }
 
+    /**
+     * retourne l'état d'une partie de tCHu reconstitué à partir de ses composantes, typiquement pour reprendre une partie sauvegardée
+     * @param tickets pioche des billets
+     * @param cardState état privé des cartes
+     * @param playerStates état complet de chacun des joueurs
+     * @param currentPlayerId identité du joueur courant
+     * @param lastPlayer identité du dernier joueur, ou null si elle est encore inconnue
+     * @return l'état de la partie
+     * @throws IllegalArgumentException si l'état de l'un des joueurs manque
+     */
+    public static GameState of(Deck<Ticket> tickets, CardState cardState, Map<PlayerId, PlayerState> playerStates,
+                               PlayerId currentPlayerId, PlayerId lastPlayer) {
+        Preconditions.checkArgument(playerStates.keySet().containsAll(PlayerId.ALL));
+        return new GameState(tickets, currentPlayerId, playerStates, cardState, lastPlayer);
+    }
+
+    /**
+     * retourne la pioche des billets
+     * @return la pioche des billets
+     */
+    public Deck<Ticket> ticketDeck() {
+        return tickets;
+    }
+
+    /**
+     * retourne l'état privé des cartes
+     * @return l'état privé des cartes
+     */
+    @Override
+    public CardState cardState() {
+        return cardState;
+    }
+
     /**
      * retourne l'état complet du joueur donné (privé et publique)
      * @param playerId identité du joueur
@@ -134,11 +158,6 @@ public final class GameState extends PublicGameState {
     public GameState withCardsDeckRecreatedIfNeeded(Random rng) {
         if(cardState.isDeckEmpty()) {
             CardState newCardState = cardState.withDeckRecreatedFromDiscards(rng);
-
-            //----------BONUS----------
-            Helper.playSound(Helper.Sound.SHUFFLE);
-            //-------------------------
-
             return new GameState(tickets, currentPlayerId(), playerStates, newCardState, lastPlayer());
         } else {
             return this;
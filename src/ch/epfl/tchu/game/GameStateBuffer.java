@@ -0,0 +1,689 @@
+package ch.epfl.tchu.game;
+
+import ch.epfl.tchu.Preconditions;
+import ch.epfl.tchu.SortedBag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * État modifiable d'une partie de tCHu, destiné aux joueurs artificiels qui simulent un grand nombre de coups
+ *
+ * tout l'état, pioches, mains, routes et partitions des gares des joueurs compris, est stocké dans un unique tableau d'entiers ;
+ * les coups le modifient sur place, sans allocation, en appliquant exactement les mêmes règles que <code>GameEngine</code>
+ * et <code>Game</code>, y compris les mélanges de la défausse, qui tirent les mêmes nombres du générateur aléatoire donné
+ *
+ * chaque modification est enregistrée dans un journal d'annulation : <code>mark</code> retourne la position courante
+ * du journal, et <code>undo</code> annule toutes les modifications effectuées depuis, ce qui permet d'explorer puis d'abandonner
+ * une suite de coups ; les nombres tirés du générateur aléatoire ne sont en revanche pas rendus
+ *
+ * les routes et les billets doivent être ceux de <code>ChMap</code> ; les conversions depuis et vers <code>GameState</code>
+ * n'ont lieu qu'aux extrémités d'une recherche
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class GameStateBuffer {
+
+    private static final List<Route> ROUTES = ChMap.routes();
+    private static final List<Ticket> TICKETS = ChMap.tickets();
+    private static final int STATIONS_COUNT = ChMap.stations().size();
+    private static final Map<Route, Integer> ROUTE_INDICES = indices(ROUTES);
+    private static final Map<Ticket, Integer> TICKET_INDICES = indices(TICKETS);
+    private static final int NONE = -1;
+
+    // Position des composantes de l'état dans le tableau ; les joueurs sont désignés par leur index, NONE désignant l'absence de joueur.
+    private static final int CURRENT_PLAYER = 0;
+    private static final int LAST_PLAYER = 1;
+    private static final int GAME_OVER = 2;
+    private static final int TICKETS_TOP = 3;
+    private static final int TICKETS_END = 4;
+    private static final int DECK_TOP = 5;
+    private static final int DECK_END = 6;
+    private static final int DISCARDS_SIZE = 7;
+    private static final int FACE_UP_CARDS = 8;
+    private static final int DISCARDS = FACE_UP_CARDS + Constants.FACE_UP_CARDS_COUNT;
+    private static final int ROUTE_OWNERS = DISCARDS + Card.COUNT;
+    private static final int TICKETS_DECK = ROUTE_OWNERS + ROUTES.size();
+    private static final int CARDS_DECK = TICKETS_DECK + TICKETS.size();
+    private static final int PLAYERS = CARDS_DECK + Constants.TOTAL_CARDS_COUNT;
+
+    // Position des composantes de l'état d'un joueur, relativement au début de celui-ci ; les billets et les routes sont stockés
+    // dans leur ordre d'acquisition, et la partition des gares sous forme d'arbres dont chaque racine connaît la taille.
+    private static final int HAND = 0;
+    private static final int HAND_SIZE = HAND + Card.COUNT;
+    private static final int CAR_COUNT = HAND_SIZE + 1;
+    private static final int CLAIM_POINTS = CAR_COUNT + 1;
+    private static final int TICKET_COUNT = CLAIM_POINTS + 1;
+    private static final int TICKET_LIST = TICKET_COUNT + 1;
+    private static final int ROUTE_COUNT = TICKET_LIST + TICKETS.size();
+    private static final int ROUTE_LIST = ROUTE_COUNT + 1;
+    private static final int STATION_PARENTS = ROUTE_LIST + ROUTES.size();
+    private static final int STATION_SIZES = STATION_PARENTS + STATIONS_COUNT;
+    private static final int PLAYER_SIZE = STATION_SIZES + STATIONS_COUNT;
+
+    private static final int SIZE = PLAYERS + PlayerId.COUNT * PLAYER_SIZE;
+
+    private final int[] state = new int[SIZE];
+    private final StationConnectivity[] connectivities = new StationConnectivity[PlayerId.COUNT];
+    // Paires (position, ancienne valeur), dans l'ordre des modifications.
+    private int[] undoLog = new int[1 << 10];
+    private int undoLogSize;
+
+    /**
+     * construit un état modifiable identique à l'état donné, pris au début d'un tour
+     * @param gameState état de la partie
+     * @throws IllegalArgumentException si l'état contient des routes ou des billets qui ne sont pas ceux de ChMap
+     */
+    public GameStateBuffer(GameState gameState) {
+        for(PlayerId id : PlayerId.ALL) {
+            int player = player(id);
+            connectivities[id.ordinal()] = (s1, s2) -> station(player, s1.id()) == station(player, s2.id());
+        }
+        load(gameState);
+    }
+
+    private static <E> Map<E, Integer> indices(List<E> list) {
+        Map<E, Integer> indices = new HashMap<>();
+        for(int i = 0; i < list.size(); ++i) {
+            indices.put(list.get(i), i);
+        }
+        return Map.copyOf(indices);
+    }
+
+    private static int index(Map<?, Integer> indices, Object element) {
+        Integer index = indices.get(element);
+        Preconditions.checkArgument(index != null);
+        return index;
+    }
+
+    private static int player(PlayerId id) {
+        return PLAYERS + id.ordinal() * PLAYER_SIZE;
+    }
+
+    private static PlayerId playerId(int index) {
+        return index == NONE ? null : PlayerId.ALL.get(index);
+    }
+
+    /**
+     * remplace le contenu du récepteur par l'état donné, pris au début d'un tour, et vide le journal d'annulation
+     * @param gameState état de la partie
+     * @throws IllegalArgumentException si l'état contient des routes ou des billets qui ne sont pas ceux de ChMap
+     */
+    public void load(GameState gameState) {
+        Arrays.fill(state, 0);
+        undoLogSize = 0;
+
+        state[CURRENT_PLAYER] = gameState.currentPlayerId().ordinal();
+        state[LAST_PLAYER] = gameState.lastPlayer() == null ? NONE : gameState.lastPlayer().ordinal();
+
+        List<Ticket> tickets = gameState.ticketDeck().topCardsList(gameState.ticketDeck().size());
+        for(int i = 0; i < tickets.size(); ++i) {
+            state[TICKETS_DECK + i] = index(TICKET_INDICES, tickets.get(i));
+        }
+        state[TICKETS_END] = tickets.size();
+
+        CardState cardState = gameState.cardState();
+        List<Card> deck = cardState.deck().topCardsList(cardState.deck().size());
+        for(int i = 0; i < deck.size(); ++i) {
+            state[CARDS_DECK + i] = deck.get(i).ordinal();
+        }
+        state[DECK_END] = deck.size();
+        for(int slot : Constants.FACE_UP_CARD_SLOTS) {
+            state[FACE_UP_CARDS + slot] = cardState.faceUpCard(slot).ordinal();
+        }
+        for(Card card : Card.ALL) {
+            state[DISCARDS + card.ordinal()] = cardState.discards().countOf(card);
+        }
+        state[DISCARDS_SIZE] = cardState.discardsSize();
+
+        Arrays.fill(state, ROUTE_OWNERS, ROUTE_OWNERS + ROUTES.size(), NONE);
+        for(PlayerId id : PlayerId.ALL) {
+            int player = player(id);
+            PlayerState playerState = gameState.playerState(id);
+            for(Card card : Card.ALL) {
+                state[player + HAND + card.ordinal()] = playerState.cardBag().countOf(card);
+            }
+            state[player + HAND_SIZE] = playerState.cardCount();
+            state[player + CAR_COUNT] = playerState.carCount();
+            state[player + CLAIM_POINTS] = playerState.claimPoints();
+            for(Ticket ticket : playerState.tickets()) {
+                state[player + TICKET_LIST + state[player + TICKET_COUNT]++] = index(TICKET_INDICES, ticket);
+            }
+            for(int s = 0; s < STATIONS_COUNT; ++s) {
+                state[player + STATION_PARENTS + s] = s;
+                state[player + STATION_SIZES + s] = 1;
+            }
+            for(Route route : playerState.routes()) {
+                int routeIndex = index(ROUTE_INDICES, route);
+                state[ROUTE_OWNERS + routeIndex] = id.ordinal();
+                state[player + ROUTE_LIST + state[player + ROUTE_COUNT]++] = routeIndex;
+                connect(player, route);
+            }
+        }
+        undoLogSize = 0;
+    }
+
+    /**
+     * retourne l'état immuable identique au récepteur
+     * @return l'état immuable identique au récepteur
+     */
+    public GameState toGameState() {
+        List<Ticket> tickets = new ArrayList<>();
+        for(int i = state[TICKETS_TOP]; i < state[TICKETS_END]; ++i) {
+            tickets.add(TICKETS.get(state[TICKETS_DECK + i]));
+        }
+        List<Card> deck = new ArrayList<>();
+        for(int i = state[DECK_TOP]; i < state[DECK_END]; ++i) {
+            deck.add(Card.ALL.get(state[CARDS_DECK + i]));
+        }
+        List<Card> faceUpCards = new ArrayList<>();
+        for(int slot : Constants.FACE_UP_CARD_SLOTS) {
+            faceUpCards.add(Card.ALL.get(state[FACE_UP_CARDS + slot]));
+        }
+        CardBag discards = CardBag.EMPTY;
+        for(Card card : Card.ALL) {
+            discards = discards.union(CardBag.of(state[DISCARDS + card.ordinal()], card));
+        }
+
+        Map<PlayerId, PlayerState> playerStates = new EnumMap<>(PlayerId.class);
+        for(PlayerId id : PlayerId.ALL) {
+            int player = player(id);
+            SortedBag.Builder<Ticket> playerTickets = new SortedBag.Builder<>();
+            for(int i = 0; i < state[player + TICKET_COUNT]; ++i) {
+                playerTickets.add(TICKETS.get(state[player + TICKET_LIST + i]));
+            }
+            SortedBag.Builder<Card> cards = new SortedBag.Builder<>();
+            for(Card card : Card.ALL) {
+                cards.add(state[player + HAND + card.ordinal()], card);
+            }
+            List<Route> routes = new ArrayList<>();
+            for(int i = 0; i < state[player + ROUTE_COUNT]; ++i) {
+                routes.add(ROUTES.get(state[player + ROUTE_LIST + i]));
+            }
+            playerStates.put(id, new PlayerState(playerTickets.build(), cards.build(), routes));
+        }
+        return GameState.of(Deck.of(tickets), CardState.of(faceUpCards, Deck.of(deck), discards), playerStates,
+                currentPlayerId(), lastPlayer());
+    }
+
+    /**
+     * retourne la position courante du journal d'annulation
+     * @return la position courante du journal d'annulation
+     */
+    public int mark() {
+        return undoLogSize;
+    }
+
+    /**
+     * annule toutes les modifications effectuées depuis que le journal d'annulation se trouvait à la position donnée
+     * @param mark position du journal retournée par mark
+     * @throws IllegalArgumentException si la position n'est pas comprise entre 0 et la position courante (incluses)
+     */
+    public void undo(int mark) {
+        Preconditions.checkArgument(mark >= 0 && mark <= undoLogSize && mark % 2 == 0);
+        while(undoLogSize > mark) {
+            int oldValue = undoLog[--undoLogSize];
+            state[undoLog[--undoLogSize]] = oldValue;
+        }
+    }
+
+    private void set(int position, int value) {
+        if(state[position] == value) {
+            return;
+        }
+        if(undoLogSize == undoLog.length) {
+            undoLog = Arrays.copyOf(undoLog, undoLog.length * 2);
+        }
+        undoLog[undoLogSize++] = position;
+        undoLog[undoLogSize++] = state[position];
+        state[position] = value;
+    }
+
+    private void add(int position, int value) {
+        set(position, state[position] + value);
+    }
+
+    /**
+     * retourne l'identité du joueur courant
+     * @return l'identité du joueur courant
+     */
+    public PlayerId currentPlayerId() {
+        return playerId(state[CURRENT_PLAYER]);
+    }
+
+    /**
+     * retourne l'identité du dernier joueur, ou null si elle est encore inconnue
+     * @return l'identité du dernier joueur, ou null si elle est encore inconnue
+     */
+    public PlayerId lastPlayer() {
+        return playerId(state[LAST_PLAYER]);
+    }
+
+    /**
+     * retourne vrai ssi le dernier joueur a joué son dernier tour, la partie étant alors terminée
+     * @return vrai ssi la partie est terminée
+     */
+    public boolean isGameOver() {
+        return state[GAME_OVER] != 0;
+    }
+
+    /**
+     * retourne vrai ssi le dernier tour commence, comme GameState.lastTurnBegins
+     * @return vrai ssi le dernier tour commence
+     */
+    public boolean lastTurnBegins() {
+        return state[LAST_PLAYER] == NONE && carCount(currentPlayerId()) <= 2;
+    }
+
+    /**
+     * retourne le nombre de billets de la pioche
+     * @return le nombre de billets de la pioche
+     */
+    public int ticketsCount() {
+        return state[TICKETS_END] - state[TICKETS_TOP];
+    }
+
+    /**
+     * retourne le billet d'index donné à partir du sommet de la pioche
+     * @param index index du billet, 0 désignant le billet du sommet
+     * @return le billet d'index donné à partir du sommet de la pioche
+     * @throws IndexOutOfBoundsException si la pioche ne contient pas autant de billets
+     */
+    public Ticket topTicket(int index) {
+        Objects.checkIndex(index, ticketsCount());
+        return TICKETS.get(state[TICKETS_DECK + state[TICKETS_TOP] + index]);
+    }
+
+    /**
+     * retourne vrai ssi la pioche des billets n'est pas vide, comme PublicGameState.canDrawTickets
+     * @return vrai ssi la pioche des billets n'est pas vide
+     */
+    public boolean canDrawTickets() {
+        return ticketsCount() != 0;
+    }
+
+    /**
+     * retourne vrai ssi la pioche et la défausse contiennent ensemble au moins 5 cartes, comme PublicGameState.canDrawCards
+     * @return vrai ssi il est possible de tirer des cartes
+     */
+    public boolean canDrawCards() {
+        return deckSize() + discardsSize() >= 5;
+    }
+
+    /**
+     * retourne la taille de la pioche des cartes
+     * @return la taille de la pioche des cartes
+     */
+    public int deckSize() {
+        return state[DECK_END] - state[DECK_TOP];
+    }
+
+    /**
+     * retourne la taille de la défausse
+     * @return la taille de la défausse
+     */
+    public int discardsSize() {
+        return state[DISCARDS_SIZE];
+    }
+
+    /**
+     * retourne la carte face visible à l'emplacement donné
+     * @param slot emplacement de la carte
+     * @return la carte face visible à l'emplacement donné
+     * @throws IndexOutOfBoundsException si l'emplacement n'est pas compris entre 0 (inclus) et 5 (exclus)
+     */
+    public Card faceUpCard(int slot) {
+        Objects.checkIndex(slot, Constants.FACE_UP_CARDS_COUNT);
+        return Card.ALL.get(state[FACE_UP_CARDS + slot]);
+    }
+
+    /**
+     * retourne le nombre de cartes données que possède le joueur donné
+     * @param playerId identité du joueur
+     * @param card carte
+     * @return le nombre de cartes données que possède le joueur
+     */
+    public int cardCount(PlayerId playerId, Card card) {
+        return state[player(playerId) + HAND + card.ordinal()];
+    }
+
+    /**
+     * retourne le nombre total de cartes que possède le joueur donné
+     * @param playerId identité du joueur
+     * @return le nombre de cartes que possède le joueur
+     */
+    public int cardCount(PlayerId playerId) {
+        return state[player(playerId) + HAND_SIZE];
+    }
+
+    /**
+     * retourne le nombre de wagons du joueur donné
+     * @param playerId identité du joueur
+     * @return le nombre de wagons du joueur
+     */
+    public int carCount(PlayerId playerId) {
+        return state[player(playerId) + CAR_COUNT];
+    }
+
+    /**
+     * retourne le nombre de points de construction du joueur donné
+     * @param playerId identité du joueur
+     * @return le nombre de points de construction du joueur
+     */
+    public int claimPoints(PlayerId playerId) {
+        return state[player(playerId) + CLAIM_POINTS];
+    }
+
+    /**
+     * retourne le nombre de billets du joueur donné
+     * @param playerId identité du joueur
+     * @return le nombre de billets du joueur
+     */
+    public int ticketCount(PlayerId playerId) {
+        return state[player(playerId) + TICKET_COUNT];
+    }
+
+    /**
+     * retourne le billet d'index donné du joueur donné, les billets étant indexés dans leur ordre d'acquisition
+     * @param playerId identité du joueur
+     * @param index index du billet
+     * @return le billet d'index donné du joueur
+     * @throws IndexOutOfBoundsException si le joueur ne possède pas autant de billets
+     */
+    public Ticket ticket(PlayerId playerId, int index) {
+        int player = player(playerId);
+        Objects.checkIndex(index, state[player + TICKET_COUNT]);
+        return TICKETS.get(state[player + TICKET_LIST + index]);
+    }
+
+    /**
+     * retourne le nombre de points, éventuellement négatif, obtenus par le joueur donné grâce à ses billets
+     * @param playerId identité du joueur
+     * @return le nombre de points des billets du joueur
+     */
+    public int ticketPoints(PlayerId playerId) {
+        int player = player(playerId);
+        StationConnectivity connectivity = connectivities[playerId.ordinal()];
+        int points = 0;
+        for(int i = 0; i < state[player + TICKET_COUNT]; ++i) {
+            points += TICKETS.get(state[player + TICKET_LIST + i]).points(connectivity);
+        }
+        return points;
+    }
+
+    /**
+     * retourne le nombre de points du joueur donné, sans le bonus du plus long chemin, comme PlayerState.finalPoints
+     * @param playerId identité du joueur
+     * @return le nombre de points du joueur, sans le bonus du plus long chemin
+     */
+    public int finalPoints(PlayerId playerId) {
+        return claimPoints(playerId) + ticketPoints(playerId);
+    }
+
+    /**
+     * retourne l'identité du joueur s'étant emparé de la route donnée, ou null si elle est libre
+     * @param route route
+     * @return l'identité du joueur s'étant emparé de la route, ou null si elle est libre
+     * @throws IllegalArgumentException si la route n'est pas une route de ChMap
+     */
+    public PlayerId routeOwner(Route route) {
+        return playerId(state[ROUTE_OWNERS + index(ROUTE_INDICES, route)]);
+    }
+
+    /**
+     * retourne vrai ssi le joueur courant possède les cartes données
+     * @param cards cartes
+     * @return vrai ssi le joueur courant possède les cartes données
+     */
+    public boolean hasCards(CardBag cards) {
+        int player = player(currentPlayerId());
+        for(Card card : Card.ALL) {
+            if(cards.countOf(card) > state[player + HAND + card.ordinal()]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * retourne vrai ssi le joueur courant a assez de wagons et de cartes pour s'emparer de la route donnée,
+     * comme PlayerState.canClaimRoute ; la route peut appartenir à un joueur
+     * @param route route
+     * @return vrai ssi le joueur courant peut s'emparer de la route
+     */
+    public boolean canClaimRoute(Route route) {
+        int player = player(currentPlayerId());
+        if(state[player + CAR_COUNT] < route.length()) {
+            return false;
+        }
+        int locomotiveCount = route.level() == Route.Level.UNDERGROUND ? state[player + HAND + Card.LOCOMOTIVE.ordinal()] : 0;
+        if(route.color() != null) {
+            return state[player + HAND + Card.of(route.color()).ordinal()] + locomotiveCount >= route.length();
+        }
+        if(locomotiveCount >= route.length()) {
+            return true;
+        }
+        for(Card card : Card.CARS) {
+            if(state[player + HAND + card.ordinal()] + locomotiveCount >= route.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * retourne vrai ssi le joueur courant peut jouer le nombre donné de cartes additionnelles pour s'emparer d'un tunnel
+     * avec les cartes initiales données, c'est-à-dire si PlayerState.possibleAdditionalCards n'est pas vide
+     * @param additionalCardsCount nombre de cartes additionnelles
+     * @param initialCards cartes initialement posées
+     * @return vrai ssi le joueur courant peut jouer les cartes additionnelles
+     * @throws IllegalArgumentException si le nombre de cartes additionnelles n'est pas compris entre 1 et 3 (inclus),
+     *                                  si les cartes initiales sont vides ou si elles contiennent plus de 2 types de cartes
+     */
+    public boolean canPlayAdditionalCards(int additionalCardsCount, CardBag initialCards) {
+        Preconditions.checkArgument(additionalCardsCount >= 1 && additionalCardsCount <= 3 && !initialCards.isEmpty()
+                && initialCards.distinctCount() <= 2);
+        int player = player(currentPlayerId());
+        int usableCount = 0;
+        for(Card card : Card.ALL) {
+            if(card == Card.LOCOMOTIVE || initialCards.contains(card)) {
+                usableCount += Math.max(0, state[player + HAND + card.ordinal()] - initialCards.countOf(card));
+            }
+        }
+        return usableCount >= additionalCardsCount;
+    }
+
+    /**
+     * ajoute les billets donnés à ceux du joueur donné, comme GameState.withInitiallyChosenTickets
+     * @param playerId identité du joueur
+     * @param chosenTickets billets choisis par le joueur
+     * @throws IllegalArgumentException si le joueur possède déjà au moins un billet, ou si les billets ne sont pas ceux de ChMap
+     */
+    public void chooseInitialTickets(PlayerId playerId, SortedBag<Ticket> chosenTickets) {
+        int player = player(playerId);
+        Preconditions.checkArgument(state[player + TICKET_COUNT] == 0);
+        for(Ticket ticket : chosenTickets) {
+            set(player + TICKET_LIST + state[player + TICKET_COUNT], index(TICKET_INDICES, ticket));
+            add(player + TICKET_COUNT, 1);
+        }
+    }
+
+    /**
+     * fait tirer au joueur courant les billets du sommet de la pioche et lui fait garder ceux désignés par le masque donné,
+     * comme GameState.withChosenAdditionalTickets
+     * @param keptTickets masque des billets gardés, dont le bit de rang i désigne le billet d'index i à partir du sommet
+     * @throws IllegalArgumentException si la pioche contient moins de 3 billets ou si le masque désigne d'autres billets
+     */
+    public void drawTickets(int keptTickets) {
+        Preconditions.checkArgument(ticketsCount() >= Constants.IN_GAME_TICKETS_COUNT
+                && (keptTickets >>> Constants.IN_GAME_TICKETS_COUNT) == 0);
+        int player = player(currentPlayerId());
+        int top = state[TICKETS_TOP];
+        for(int i = 0; i < Constants.IN_GAME_TICKETS_COUNT; ++i) {
+            if((keptTickets & (1 << i)) != 0) {
+                set(player + TICKET_LIST + state[player + TICKET_COUNT], state[TICKETS_DECK + top + i]);
+                add(player + TICKET_COUNT, 1);
+            }
+        }
+        set(TICKETS_TOP, top + Constants.IN_GAME_TICKETS_COUNT);
+    }
+
+    /**
+     * fait tirer une carte au joueur courant, depuis l'emplacement donné, après avoir recréé la pioche à partir de la défausse
+     * si elle est vide, comme l'un des deux tirages d'un tour de tirage de cartes
+     * @param slot emplacement de la carte face visible tirée, ou Constants.DECK_SLOT pour la carte du sommet de la pioche
+     * @param rng générateur aléatoire utilisé pour mélanger la défausse
+     * @throws IllegalArgumentException si l'emplacement n'est pas valide ou si la pioche et la défausse sont vides
+     */
+    public void drawCard(int slot, Random rng) {
+        Preconditions.checkArgument(slot == Constants.DECK_SLOT || Constants.FACE_UP_CARD_SLOTS.contains(slot));
+        recreateDeckIfNeeded(rng);
+        int card = drawTopCard();
+        if(slot != Constants.DECK_SLOT) {
+            int faceUpCard = state[FACE_UP_CARDS + slot];
+            set(FACE_UP_CARDS + slot, card);
+            card = faceUpCard;
+        }
+        int player = player(currentPlayerId());
+        add(player + HAND + card, 1);
+        add(player + HAND_SIZE, 1);
+    }
+
+    /**
+     * tire les 3 cartes additionnelles d'une tentative de prise du tunnel donné avec les cartes initiales données,
+     * en recréant la pioche à partir de la défausse chaque fois qu'elle est vide, puis les place dans la défausse,
+     * et retourne le nombre de cartes additionnelles à jouer, comme Route.additionalClaimCardsCount
+     * @param route tunnel
+     * @param initialCards cartes initialement posées
+     * @param rng générateur aléatoire utilisé pour mélanger la défausse
+     * @return le nombre de cartes additionnelles à jouer
+     * @throws IllegalArgumentException si la route n'est pas un tunnel ou si la pioche et la défausse sont vides
+     */
+    public int drawAdditionalCards(Route route, CardBag initialCards, Random rng) {
+        Preconditions.checkArgument(route.level() == Route.Level.UNDERGROUND);
+        boolean notOnlyLocomotive = initialCards.countOf(Card.LOCOMOTIVE) != initialCards.size();
+        // Les cartes tirées ne rejoignent la défausse qu'une fois les trois tirées, la pioche pouvant être recréée entre-temps.
+        int drawnCards = 0;
+        for(int i = 0; i < Constants.ADDITIONAL_TUNNEL_CARDS; ++i) {
+            recreateDeckIfNeeded(rng);
+            drawnCards |= drawTopCard() << (i * Byte.SIZE);
+        }
+        int count = 0;
+        for(int i = 0; i < Constants.ADDITIONAL_TUNNEL_CARDS; ++i) {
+            Card card = Card.ALL.get((drawnCards >>> (i * Byte.SIZE)) & 0xFF);
+            if(card == Card.LOCOMOTIVE || (notOnlyLocomotive && card.color() == route.color())) {
+                ++count;
+            }
+            discard(card, 1);
+        }
+        return count;
+    }
+
+    /**
+     * fait s'emparer le joueur courant de la route donnée au moyen des cartes données, qui sont ajoutées à la défausse,
+     * comme GameState.withClaimedRoute
+     * @param route route
+     * @param cards cartes utilisées
+     * @throws IllegalArgumentException si la route n'est pas une route de ChMap
+     */
+    public void claimRoute(Route route, CardBag cards) {
+        int routeIndex = index(ROUTE_INDICES, route);
+        PlayerId id = currentPlayerId();
+        int player = player(id);
+        for(Card card : Card.ALL) {
+            int count = cards.countOf(card);
+            if(count != 0) {
+                int handCount = state[player + HAND + card.ordinal()];
+                set(player + HAND + card.ordinal(), Math.max(0, handCount - count));
+                add(player + HAND_SIZE, -Math.min(handCount, count));
+                discard(card, count);
+            }
+        }
+        set(ROUTE_OWNERS + routeIndex, id.ordinal());
+        set(player + ROUTE_LIST + state[player + ROUTE_COUNT], routeIndex);
+        add(player + ROUTE_COUNT, 1);
+        add(player + CAR_COUNT, -route.length());
+        add(player + CLAIM_POINTS, route.claimPoints());
+        connect(player, route);
+    }
+
+    /**
+     * termine le tour du joueur courant, comme GameState.forNextTurn : le joueur suivant devient le joueur courant,
+     * et le joueur courant devient le dernier joueur si le dernier tour commence
+     */
+    public void nextTurn() {
+        int current = state[CURRENT_PLAYER];
+        if(state[LAST_PLAYER] == current) {
+            set(GAME_OVER, 1);
+        }
+        if(lastTurnBegins()) {
+            set(LAST_PLAYER, current);
+        }
+        set(CURRENT_PLAYER, currentPlayerId().next().ordinal());
+    }
+
+    private int drawTopCard() {
+        int top = state[DECK_TOP];
+        Preconditions.checkArgument(top < state[DECK_END]);
+        set(DECK_TOP, top + 1);
+        return state[CARDS_DECK + top];
+    }
+
+    private void discard(Card card, int count) {
+        add(DISCARDS + card.ordinal(), count);
+        add(DISCARDS_SIZE, count);
+    }
+
+    // Mélange la défausse comme Deck.of, qui mélange avec Collections.shuffle les cartes de la défausse triées.
+    private void recreateDeckIfNeeded(Random rng) {
+        if(deckSize() != 0) {
+            return;
+        }
+        int size = 0;
+        for(Card card : Card.ALL) {
+            for(int i = state[DISCARDS + card.ordinal()]; i > 0; --i) {
+                set(CARDS_DECK + size++, card.ordinal());
+            }
+            set(DISCARDS + card.ordinal(), 0);
+        }
+        for(int i = size; i > 1; --i) {
+            int j = rng.nextInt(i);
+            int card = state[CARDS_DECK + i - 1];
+            set(CARDS_DECK + i - 1, state[CARDS_DECK + j]);
+            set(CARDS_DECK + j, card);
+        }
+        set(DECK_TOP, 0);
+        set(DECK_END, size);
+        set(DISCARDS_SIZE, 0);
+    }
+
+    private int station(int player, int station) {
+        while(state[player + STATION_PARENTS + station] != station) {
+            station = state[player + STATION_PARENTS + station];
+        }
+        return station;
+    }
+
+    // Union par taille sans compression des chemins, afin que chaque union ne modifie que deux entrées et puisse être annulée.
+    private void connect(int player, Route route) {
+        int root1 = station(player, route.station1().id());
+        int root2 = station(player, route.station2().id());
+        if(root1 == root2) {
+            return;
+        }
+        if(state[player + STATION_SIZES + root1] < state[player + STATION_SIZES + root2]) {
+            int root = root1;
+            root1 = root2;
+            root2 = root;
+        }
+        set(player + STATION_PARENTS + root2, root1);
+        add(player + STATION_SIZES + root1, state[player + STATION_SIZES + root2]);
+    }
+}
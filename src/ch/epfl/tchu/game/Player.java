@@ -97,6 +97,13 @@ public interface Player {
      */
     SortedBag<Card> chooseAdditionalCards(List<SortedBag<Card>> options);
 
+    /**
+     * est appelée après un groupe d'informations et de changements d'état, pour que le joueur reçoive d'un coup ceux qui sont encore en attente
+     * (par défaut, ne fait rien, les joueurs locaux les recevant immédiatement)
+     */
+    default void flush() {
+    }
+
     //----------BONUS----------
     void addSpectator(Spectator spectator);
 
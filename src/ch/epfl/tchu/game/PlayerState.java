@@ -4,9 +4,7 @@ import ch.epfl.tchu.Preconditions;
 import ch.epfl.tchu.SortedBag;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * @author Thibault Czarniak (327577)
@@ -15,7 +13,9 @@ import java.util.stream.Collectors;
 public final class PlayerState extends PublicPlayerState {
 
     private final SortedBag<Ticket> tickets;
-    private final SortedBag<Card> cards;
+    private final CardBag cards;
+    private final StationPartition partition;
+    private SortedBag<Card> cardsBag;
 
     /**
      * construit l'état privé d'un joueur possédant les billets donnés, les cartes données et s'étant emparé des routes données
@@ -24,9 +24,16 @@ public final class PlayerState extends PublicPlayerState {
      * @param routes liste des routes en possession du joueur
      */
     public PlayerState(SortedBag<Ticket> tickets, SortedBag<Card> cards, List<Route> routes) {
+        this(tickets, CardBag.of(cards), routes, StationPartition.fromRoutes(routes));
+        this.cardsBag = cards;
+    }
+
+    // La partition des gares est partagée entre les états successifs du joueur et mise à jour à chaque route prise.
+    private PlayerState(SortedBag<Ticket> tickets, CardBag cards, List<Route> routes, StationPartition partition) {
         super(tickets.size(), cards.size(), routes);
         this.tickets = tickets;
         this.cards = cards;
+        this.partition = partition;
     }
 
     /**
@@ -55,7 +62,7 @@ public final class PlayerState extends PublicPlayerState {
      */
     public PlayerState withAddedTickets(SortedBag<Ticket> newTickets) {
         SortedBag<Ticket> ticketsUnion = tickets.union(newTickets);
-        return new PlayerState(ticketsUnion, cards, super.routes());
+        return new PlayerState(ticketsUnion, cards, super.routes(), partition);
     }
 
     /**
@@ -63,6 +70,17 @@ public final class PlayerState extends PublicPlayerState {
      * @return les cartes wagon/locomotive du joueur,
      */
     public SortedBag<Card> cards() {
+        if(cardsBag == null) {
+            cardsBag = cards.toSortedBag();
+        }
+        return cardsBag;
+    }
+
+    /**
+     * retourne les cartes wagon/locomotive du joueur sous forme de multiensemble de cartes empaqueté
+     * @return les cartes wagon/locomotive du joueur
+     */
+    public CardBag cardBag() {
         return cards;
     }
 
@@ -72,8 +90,7 @@ public final class PlayerState extends PublicPlayerState {
      * @return un état identique au récepteur, si ce n'est que le joueur possède en plus la carte donnée
      */
     public PlayerState withAddedCard(Card card){
-        SortedBag<Card> cardsUnion = cards.union(SortedBag.of(1, card));
-        return new PlayerState(tickets, cardsUnion, super.routes());
+        return new PlayerState(tickets, cards.with(card), super.routes(), partition);
     }
 
 
@@ -84,7 +101,7 @@ public final class PlayerState extends PublicPlayerState {
      */
     public boolean canClaimRoute(Route route) {
         if(super.carCount() >= route.length()) {
-            return route.possibleClaimCards().stream().anyMatch(cards::contains);
+            return route.canBeClaimedWith(cards);
         }
         return false;
     }
@@ -97,7 +114,15 @@ public final class PlayerState extends PublicPlayerState {
      */
     public List<SortedBag<Card>> possibleClaimCards(Route route){
         Preconditions.checkArgument(super.carCount() >= route.length());
-        return route.possibleClaimCards().stream().filter(cards::contains).collect(Collectors.toList());
+        List<SortedBag<Card>> claimCards = route.possibleClaimCards();
+        List<CardBag> claimCardBags = route.possibleClaimCardBags();
+        List<SortedBag<Card>> possibleClaimCards = new ArrayList<>();
+        for(int i = 0; i < claimCards.size(); ++i) {
+            if(cards.contains(claimCardBags.get(i))) {
+                possibleClaimCards.add(claimCards.get(i));
+            }
+        }
+        return possibleClaimCards;
 
     }
 
@@ -116,15 +141,20 @@ public final class PlayerState extends PublicPlayerState {
      */
     public List<SortedBag<Card>> possibleAdditionalCards(int additionalCardsCount, SortedBag<Card> initialCards){
         Preconditions.checkArgument(additionalCardsCount >= 1 && additionalCardsCount <=3 && !initialCards.isEmpty() && initialCards.toSet().size() <=2);
-        List<Card> cardsCopy = (cards.difference(initialCards)).toList();
-        SortedBag.Builder<Card> usableCardsBuilder = new SortedBag.Builder<>();
-        cardsCopy.stream().filter(card -> card == Card.LOCOMOTIVE || initialCards.contains(card)).forEach(usableCardsBuilder::add);
-        SortedBag<Card> possibleCards = usableCardsBuilder.build();
-        if (possibleCards.size() < additionalCardsCount) {
+        CardBag remainingCards = cards.difference(CardBag.of(initialCards));
+        CardBag usableCards = CardBag.EMPTY;
+        for(Card card : Card.ALL) {
+            if(card == Card.LOCOMOTIVE || initialCards.contains(card)) {
+                usableCards = usableCards.union(CardBag.of(remainingCards.countOf(card), card));
+            }
+        }
+        if (usableCards.size() < additionalCardsCount) {
             return List.of();
         }
-        List<SortedBag<Card>> options = new ArrayList<>(possibleCards.subsetsOfSize(additionalCardsCount));
-        options.sort(Comparator.comparingInt(cs -> cs.countOf(Card.LOCOMOTIVE)));
+        List<SortedBag<Card>> options = new ArrayList<>();
+        for(CardBag option : usableCards.subsetsOfSize(additionalCardsCount)) {
+            options.add(option.toSortedBag());
+        }
         return options;
 
     }
@@ -138,8 +168,17 @@ public final class PlayerState extends PublicPlayerState {
     public PlayerState withClaimedRoute(Route route, SortedBag<Card> claimCards) {
         List<Route> routesUnion = new ArrayList<>(super.routes());
         routesUnion.add(route);
-        SortedBag<Card> newCards = cards.difference(claimCards);
-        return new PlayerState(tickets, newCards, routesUnion);
+        CardBag newCards = cards.difference(CardBag.of(claimCards));
+        return new PlayerState(tickets, newCards, routesUnion, partition.withConnected(route.station1(), route.station2()));
+    }
+
+    /**
+     * retourne vrai ssi le billet donné est actuellement réalisé par le réseau du joueur, c'est à dire s'il lui rapporterait des points
+     * @param ticket billet à tester
+     * @return vrai ssi le billet donné est actuellement réalisé par le réseau du joueur
+     */
+    public boolean isTicketFulfilled(Ticket ticket) {
+        return ticket.points(partition) > 0;
     }
 
     /**
@@ -148,7 +187,6 @@ public final class PlayerState extends PublicPlayerState {
      */
     public int ticketPoints() {
         int points = 0;
-        StationPartition partition = computeStationPartition();
         for(Ticket ticket : this.tickets) {
             points += ticket.points(partition);
         }
@@ -164,29 +202,4 @@ public final class PlayerState extends PublicPlayerState {
         return claimPoints() + ticketPoints();
     }
 
-
-    private StationPartition computeStationPartition() {
-        int maxId = 0;
-        for(Route route : super.routes()) {
-            if (route.station1().id() >= maxId) {
-                maxId = route.station1().id();
-            }
-            if (route.station2().id() >= maxId) {
-                maxId = route.station2().id();
-            }
-
-        }
-        StationPartition.Builder partitionBuilder = new StationPartition.Builder(maxId + 1);
-        for(Route route1 : super.routes()) {
-            partitionBuilder.connect(route1.station1(), route1.station2());
-            for(Route route2 : super.routes()) {
-                partitionBuilder.connect(route2.station1(), route2.station2());
-                if(!route1.id().equals(route2.id()) && route1.stations().stream().anyMatch(e -> route2.stations().contains(e))) {
-                    partitionBuilder.connect(route1.station1(), route2.station1());
-                }
-            }
-        }
-        return partitionBuilder.build();
-    }
-
 }
@@ -28,6 +28,8 @@ public final class Route {
     private final int length;
     private final Level level;
     private final Color color;
+    private final List<SortedBag<Card>> claimCards;
+    private final List<CardBag> claimCardBags;
 
     /**
      * Construit une route
@@ -49,6 +51,12 @@ public final class Route {
         this.length = length;
         this.level = Objects.requireNonNull(level);
         this.color = color;
+        this.claimCards = List.copyOf(computePossibleClaimCards());
+        List<CardBag> cardBags = new ArrayList<>();
+        for(SortedBag<Card> cards : claimCards) {
+            cardBags.add(CardBag.of(cards));
+        }
+        this.claimCardBags = List.copyOf(cardBags);
     }
 
     /**
@@ -136,6 +144,10 @@ public final class Route {
      * @return une liste des decks cartes que le joueur peut jouer pour s'emparer de la route, triée par ordre croissant de nombre de carte locomotive, puis par couleur
      */
     public List<SortedBag<Card>> possibleClaimCards() {
+        return claimCards;
+    }
+
+    private List<SortedBag<Card>> computePossibleClaimCards() {
 
         SortedBag<Card> CardSortedBag;
         List<SortedBag<Card>> CardSortedBagList = new ArrayList<>();
@@ -180,6 +192,38 @@ public final class Route {
         return CardSortedBagList;
     }
 
+    /**
+     * retourne les mêmes ensembles de cartes que possibleClaimCards, dans le même ordre, sous forme de multiensembles de cartes empaquetés
+     *
+     * @return la liste des multiensembles de cartes que le joueur peut jouer pour s'emparer de la route
+     */
+    public List<CardBag> possibleClaimCardBags() {
+        return claimCardBags;
+    }
+
+    /**
+     * retourne vrai ssi les cartes données contiennent au moins l'un des ensembles de cartes permettant de s'emparer de la route,
+     * en ne consultant que le nombre de cartes de chaque couleur et le nombre de locomotives
+     *
+     * @param cards cartes du joueur
+     * @return vrai ssi les cartes données permettent de s'emparer de la route
+     */
+    public boolean canBeClaimedWith(CardBag cards) {
+        int locomotiveCount = level == Level.UNDERGROUND ? cards.countOf(Card.LOCOMOTIVE) : 0;
+        if(color != null) {
+            return cards.countOf(Card.of(color)) + locomotiveCount >= length;
+        }
+        if(locomotiveCount >= length) {
+            return true;
+        }
+        for(Card card : Card.CARS) {
+            if(cards.countOf(card) + locomotiveCount >= length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * retourne le nombre de cartes additionnelles que le joueur va devoir jouer pour s'emparer de la route
      *
@@ -0,0 +1,511 @@
+package ch.epfl.tchu.game;
+
+import ch.epfl.tchu.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Index immuable du graphe des routes d'une carte, construit une seule fois, destiné aux joueurs artificiels
+ * et aux indications données aux joueurs
+ *
+ * les routes partant de chaque gare sont stockées en lignes creuses compressées, indexées par l'identité des gares ;
+ * l'index contient de plus la longueur, en nombre de wagons, du plus court chemin entre chaque paire de gares,
+ * et pour chaque billet les routes appartenant à l'un des plus courts chemins de l'un de ses trajets
+ *
+ * les routes prises au cours d'une partie sont prises en compte par <code>Paths</code>, qui met à jour les longueurs
+ * des plus courts chemins au fur et à mesure : ses requêtes ne font que lire un tableau
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class RouteGraph {
+
+    /**
+     * Longueur du chemin entre deux gares qu'aucun chemin ne relie
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // États des routes pour un joueur.
+    private static final int FREE = 0;
+    private static final int OWNED = 1;
+    private static final int BLOCKED = 2;
+
+    private static final RouteGraph CH_MAP = new RouteGraph(ChMap.stations(), ChMap.routes(), ChMap.tickets());
+
+    private final List<Station> stations;
+    private final List<Route> routes;
+    private final Map<Route, Integer> routeIndices;
+    private final Map<Ticket, Integer> ticketIndices;
+
+    // Lignes creuses compressées : les arcs partant de la gare s sont ceux d'index compris entre edgesStart[s] (inclus)
+    // et edgesStart[s + 1] (exclus), chaque route donnant un arc dans chaque sens.
+    private final int[] edgesStart;
+    private final int[] edgeStations;
+    private final int[] edgeRoutes;
+    // Index des routes reliant les mêmes gares que chaque route, elle exclue.
+    private final int[][] twinRoutes;
+    // Gares de départ et d'arrivée des trajets de chaque billet, par paires.
+    private final int[][] ticketTrips;
+    private final int[] distances;
+    private final List<List<Route>> candidateRoutes;
+    private final long[][] candidateRouteSets;
+
+    /**
+     * construit l'index du graphe formé des gares et des routes données, ainsi que les routes candidates des billets donnés
+     * @param stations gares, dont les identités doivent être leurs index
+     * @param routes routes reliant les gares
+     * @param tickets billets dont les trajets relient les gares
+     * @throws IllegalArgumentException si l'identité d'une gare n'est pas son index
+     */
+    public RouteGraph(List<Station> stations, List<Route> routes, List<Ticket> tickets) {
+        for(int i = 0; i < stations.size(); ++i) {
+            Preconditions.checkArgument(stations.get(i).id() == i);
+        }
+        this.stations = List.copyOf(stations);
+        this.routes = List.copyOf(routes);
+        routeIndices = indices(routes);
+        ticketIndices = indices(tickets);
+        int n = stations.size();
+
+        edgesStart = new int[n + 1];
+        for(Route route : routes) {
+            ++edgesStart[route.station1().id() + 1];
+            ++edgesStart[route.station2().id() + 1];
+        }
+        for(int s = 0; s < n; ++s) {
+            edgesStart[s + 1] += edgesStart[s];
+        }
+        edgeStations = new int[2 * routes.size()];
+        edgeRoutes = new int[2 * routes.size()];
+        int[] next = Arrays.copyOf(edgesStart, n);
+        for(int r = 0; r < routes.size(); ++r) {
+            int s1 = routes.get(r).station1().id();
+            int s2 = routes.get(r).station2().id();
+            edgeStations[next[s1]] = s2;
+            edgeRoutes[next[s1]++] = r;
+            edgeStations[next[s2]] = s1;
+            edgeRoutes[next[s2]++] = r;
+        }
+
+        twinRoutes = new int[routes.size()][];
+        for(int r = 0; r < routes.size(); ++r) {
+            List<Integer> twins = new ArrayList<>();
+            for(int t = 0; t < routes.size(); ++t) {
+                if(t != r && routes.get(t).stations().equals(routes.get(r).stations())) {
+                    twins.add(t);
+                }
+            }
+            twinRoutes[r] = twins.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        int[] weights = new int[routes.size()];
+        for(int r = 0; r < routes.size(); ++r) {
+            weights[r] = routes.get(r).length();
+        }
+        distances = new int[n * n];
+        BucketQueue queue = new BucketQueue(n, edgeRoutes.length);
+        for(int s = 0; s < n; ++s) {
+            shortestDistances(s, weights, distances, s * n, queue, null);
+        }
+
+        ticketTrips = new int[tickets.size()][];
+        candidateRoutes = new ArrayList<>();
+        candidateRouteSets = new long[tickets.size()][];
+        for(int t = 0; t < tickets.size(); ++t) {
+            List<Trip> trips = tickets.get(t).getTrips();
+            ticketTrips[t] = new int[2 * trips.size()];
+            for(int i = 0; i < trips.size(); ++i) {
+                ticketTrips[t][2 * i] = trips.get(i).from().id();
+                ticketTrips[t][2 * i + 1] = trips.get(i).to().id();
+            }
+            long[] candidates = new long[(routes.size() + Long.SIZE - 1) / Long.SIZE];
+            List<Route> candidateList = new ArrayList<>();
+            for(int r = 0; r < routes.size(); ++r) {
+                if(isOnShortestPath(r, ticketTrips[t])) {
+                    candidates[r / Long.SIZE] |= 1L << r;
+                    candidateList.add(routes.get(r));
+                }
+            }
+            candidateRouteSets[t] = candidates;
+            candidateRoutes.add(Collections.unmodifiableList(candidateList));
+        }
+    }
+
+    /**
+     * retourne l'index du graphe de ChMap, construit une seule fois
+     * @return l'index du graphe de ChMap
+     */
+    public static RouteGraph chMap() {
+        return CH_MAP;
+    }
+
+    private static <E> Map<E, Integer> indices(List<E> list) {
+        Map<E, Integer> indices = new HashMap<>();
+        for(int i = 0; i < list.size(); ++i) {
+            indices.put(list.get(i), i);
+        }
+        return Map.copyOf(indices);
+    }
+
+    private static int index(Map<?, Integer> indices, Object element) {
+        Integer index = indices.get(element);
+        Preconditions.checkArgument(index != null);
+        return index;
+    }
+
+    // Algorithme de Dijkstra depuis la gare donnée, dont les résultats sont écrits à partir de la position donnée ; les routes
+    // de poids strictement négatif sont ignorées, et l'arc par lequel chaque gare est atteinte est enregistré si un tableau
+    // est donné.
+    private void shortestDistances(int source, int[] weights, int[] distances, int row, BucketQueue queue, int[] previousEdges) {
+        Arrays.fill(distances, row, row + stations.size(), UNREACHABLE);
+        distances[row + source] = 0;
+        queue.clear();
+        queue.push(source, 0);
+        for(int distance = 0; !queue.isEmpty(); ++distance) {
+            int u;
+            while((u = queue.pop(distance)) != -1) {
+                // Une gare peut avoir été ajoutée plusieurs fois, seule sa distance la plus courte compte.
+                if(distances[row + u] != distance || queue.isSettled(u)) {
+                    continue;
+                }
+                queue.settle(u);
+                for(int e = edgesStart[u]; e < edgesStart[u + 1]; ++e) {
+                    int weight = weights[edgeRoutes[e]];
+                    int v = edgeStations[e];
+                    if(weight >= 0 && distance + weight < distances[row + v]) {
+                        distances[row + v] = distance + weight;
+                        queue.push(v, distance + weight);
+                        if(previousEdges != null) {
+                            previousEdges[v] = e;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isOnShortestPath(int routeIndex, int[] trips) {
+        int s1 = routes.get(routeIndex).station1().id();
+        int s2 = routes.get(routeIndex).station2().id();
+        int length = routes.get(routeIndex).length();
+        for(int i = 0; i < trips.length; i += 2) {
+            int distance = distance(distances, trips[i], trips[i + 1]);
+            if(distance != UNREACHABLE
+                    && (sum(distance(distances, trips[i], s1), length, distance(distances, s2, trips[i + 1])) == distance
+                    || sum(distance(distances, trips[i], s2), length, distance(distances, s1, trips[i + 1])) == distance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int distance(int[] distances, int from, int to) {
+        return distances[from * stations.size() + to];
+    }
+
+    private static int sum(int distance1, int length, int distance2) {
+        return distance1 == UNREACHABLE || distance2 == UNREACHABLE ? UNREACHABLE : distance1 + length + distance2;
+    }
+
+    /**
+     * retourne le nombre de routes partant de la gare donnée
+     * @param station gare
+     * @return le nombre de routes partant de la gare
+     */
+    public int degree(Station station) {
+        return edgesStart[station.id() + 1] - edgesStart[station.id()];
+    }
+
+    /**
+     * retourne la route d'index donné parmi celles partant de la gare donnée
+     * @param station gare
+     * @param index index de la route
+     * @return la route d'index donné parmi celles partant de la gare
+     * @throws IndexOutOfBoundsException si l'index n'est pas compris entre 0 (inclus) et le nombre de routes partant de la gare (exclus)
+     */
+    public Route route(Station station, int index) {
+        Objects.checkIndex(index, degree(station));
+        return routes.get(edgeRoutes[edgesStart[station.id()] + index]);
+    }
+
+    /**
+     * retourne le nombre minimum de wagons nécessaires pour relier les gares données lorsqu'aucune route n'est prise
+     * @param from gare de départ
+     * @param to gare d'arrivée
+     * @return le nombre minimum de wagons nécessaires pour relier les gares, ou UNREACHABLE si aucun chemin ne les relie
+     */
+    public int distance(Station from, Station to) {
+        return distance(distances, from.id(), to.id());
+    }
+
+    /**
+     * retourne la liste non modifiable des routes appartenant à l'un des plus courts chemins de l'un des trajets du billet
+     * donné lorsqu'aucune route n'est prise, dans l'ordre des routes de la carte
+     * @param ticket billet
+     * @return les routes candidates du billet
+     * @throws IllegalArgumentException si le billet n'est pas l'un de ceux de l'index
+     */
+    public List<Route> candidateRoutes(Ticket ticket) {
+        return candidateRoutes.get(index(ticketIndices, ticket));
+    }
+
+    /**
+     * retourne vrai ssi la route donnée appartient à l'un des plus courts chemins de l'un des trajets du billet donné
+     * lorsqu'aucune route n'est prise
+     * @param ticket billet
+     * @param route route
+     * @return vrai ssi la route est l'une des routes candidates du billet
+     * @throws IllegalArgumentException si le billet ou la route n'est pas l'un de ceux de l'index
+     */
+    public boolean isCandidateRoute(Ticket ticket, Route route) {
+        int r = index(routeIndices, route);
+        return (candidateRouteSets[index(ticketIndices, ticket)][r / Long.SIZE] & (1L << r)) != 0;
+    }
+
+    /**
+     * retourne de nouveaux plus courts chemins, dans lesquels aucune route n'est encore prise
+     * @return de nouveaux plus courts chemins
+     */
+    public Paths paths() {
+        return new Paths();
+    }
+
+    /**
+     * Plus courts chemins d'un joueur au cours d'une partie : les routes dont il s'est emparé ne coûtent plus aucun wagon,
+     * et celles dont l'adversaire s'est emparé, de même que les autres voies d'une route double prise, sont bloquées
+     *
+     * bloquer une route ne recalcule que les plus courts chemins partant des gares dont l'un des plus courts chemins
+     * l'emprunte, et s'emparer d'une route ne fait que raccourcir les chemins passant par elle
+     */
+    public final class Paths {
+        private final int[] routeStates = new int[routes.size()];
+        private final int[] weights = new int[routes.size()];
+        private final int[] distances = RouteGraph.this.distances.clone();
+        private final BucketQueue queue = new BucketQueue(stations.size(), edgeRoutes.length);
+        private final boolean[] stale = new boolean[stations.size()];
+        private final int[] pathDistances = new int[stations.size()];
+        private final int[] previousEdges = new int[stations.size()];
+
+        private Paths() {
+            for(int r = 0; r < routes.size(); ++r) {
+                weights[r] = routes.get(r).length();
+            }
+        }
+
+        /**
+         * met à jour les chemins du joueur donné d'après les routes prises dans l'état donné ; seules les routes prises
+         * depuis la dernière mise à jour sont traitées
+         * @param gameState état de la partie
+         * @param playerId identité du joueur
+         * @throws IllegalArgumentException si l'une des routes n'est pas l'une de celles de l'index
+         */
+        public void update(PublicGameState gameState, PlayerId playerId) {
+            for(PlayerId id : PlayerId.ALL) {
+                for(Route route : gameState.playerState(id).routes()) {
+                    int r = index(routeIndices, route);
+                    if(id == playerId && routeStates[r] != OWNED) {
+                        own(r);
+                    } else if(id != playerId && routeStates[r] != BLOCKED) {
+                        block(route);
+                    }
+                }
+            }
+        }
+
+        /**
+         * indique que le joueur s'est emparé de la route donnée, ce qui bloque les autres voies de la route si elle est double
+         * @param route route
+         * @throws IllegalArgumentException si la route n'est pas l'une de celles de l'index
+         */
+        public void own(Route route) {
+            own(index(routeIndices, route));
+        }
+
+        /**
+         * indique que l'adversaire s'est emparé de la route donnée, ce qui bloque la route et ses autres voies si elle est double
+         * @param route route
+         * @throws IllegalArgumentException si la route n'est pas l'une de celles de l'index
+         */
+        public void block(Route route) {
+            int routeIndex = index(routeIndices, route);
+            block(routeIndex);
+            for(int twin : twinRoutes[routeIndex]) {
+                block(twin);
+            }
+        }
+
+        private void own(int routeIndex) {
+            routeStates[routeIndex] = OWNED;
+            weights[routeIndex] = 0;
+            int n = stations.size();
+            int row1 = routes.get(routeIndex).station1().id() * n;
+            int row2 = routes.get(routeIndex).station2().id() * n;
+            for(int s = 0; s < n; ++s) {
+                // Le graphe n'étant pas orienté, distances[s * n + s1] est aussi distances[row1 + s].
+                relax(s * n, distances[row1 + s], row2);
+                relax(s * n, distances[row2 + s], row1);
+            }
+            // Les autres voies ne raccourcissant plus aucun chemin, les bloquer ne recalcule aucun chemin.
+            for(int twin : twinRoutes[routeIndex]) {
+                block(twin);
+            }
+        }
+
+        // Raccourcit les chemins partant de la ligne donnée par ceux passant par une gare située à la distance donnée
+        // et continuant depuis la ligne de l'autre extrémité de la route prise.
+        private void relax(int row, int distance, int otherRow) {
+            if(distance == UNREACHABLE) {
+                return;
+            }
+            for(int t = 0; t < stations.size(); ++t) {
+                int otherDistance = distances[otherRow + t];
+                if(otherDistance != UNREACHABLE && distance + otherDistance < distances[row + t]) {
+                    distances[row + t] = distance + otherDistance;
+                }
+            }
+        }
+
+        private void block(int routeIndex) {
+            if(routeStates[routeIndex] != FREE) {
+                return;
+            }
+            routeStates[routeIndex] = BLOCKED;
+            int weight = weights[routeIndex];
+            weights[routeIndex] = -1;
+            int n = stations.size();
+            int s1 = routes.get(routeIndex).station1().id();
+            int s2 = routes.get(routeIndex).station2().id();
+            for(int s = 0; s < n; ++s) {
+                int d1 = distances[s * n + s1];
+                int d2 = distances[s * n + s2];
+                stale[s] = d1 != UNREACHABLE && d2 != UNREACHABLE && (d1 + weight == d2 || d2 + weight == d1);
+            }
+            for(int s = 0; s < n; ++s) {
+                if(stale[s]) {
+                    shortestDistances(s, weights, distances, s * n, queue, null);
+                }
+            }
+            // Les lignes recalculées sont aussi des colonnes, le graphe n'étant pas orienté.
+            for(int s = 0; s < n; ++s) {
+                if(stale[s]) {
+                    for(int t = 0; t < n; ++t) {
+                        distances[t * n + s] = distances[s * n + t];
+                    }
+                }
+            }
+        }
+
+        /**
+         * retourne le nombre minimum de wagons que le joueur doit encore poser pour relier les gares données
+         * @param from gare de départ
+         * @param to gare d'arrivée
+         * @return le nombre minimum de wagons pour relier les gares, ou UNREACHABLE si aucun chemin ne les relie
+         */
+        public int distance(Station from, Station to) {
+            return RouteGraph.this.distance(distances, from.id(), to.id());
+        }
+
+        /**
+         * retourne le nombre minimum de wagons que le joueur doit encore poser pour réaliser l'un des trajets du billet donné,
+         * 0 indiquant un billet déjà réalisé
+         * @param ticket billet
+         * @return le nombre minimum de wagons pour réaliser le billet, ou UNREACHABLE si aucun de ses trajets n'est réalisable
+         * @throws IllegalArgumentException si le billet n'est pas l'un de ceux de l'index
+         */
+        public int distance(Ticket ticket) {
+            int[] trips = ticketTrips[index(ticketIndices, ticket)];
+            int distance = UNREACHABLE;
+            for(int i = 0; i < trips.length; i += 2) {
+                distance = Math.min(distance, RouteGraph.this.distance(distances, trips[i], trips[i + 1]));
+            }
+            return distance;
+        }
+
+        /**
+         * retourne les routes de l'un des plus courts chemins reliant les gares données, dans l'ordre du chemin, en omettant
+         * celles appartenant déjà au joueur ; contrairement aux autres requêtes, le chemin est recalculé à chaque appel
+         * @param from gare de départ
+         * @param to gare d'arrivée
+         * @return les routes restant à prendre sur l'un des plus courts chemins, vide si aucun chemin ne relie les gares
+         */
+        public List<Route> path(Station from, Station to) {
+            shortestDistances(from.id(), weights, pathDistances, 0, queue, previousEdges);
+            List<Route> path = new ArrayList<>();
+            if(pathDistances[to.id()] == UNREACHABLE) {
+                return path;
+            }
+            for(Station station = to; station.id() != from.id(); ) {
+                int r = edgeRoutes[previousEdges[station.id()]];
+                if(routeStates[r] != OWNED) {
+                    path.add(routes.get(r));
+                }
+                station = routes.get(r).stationOpposite(station);
+            }
+            Collections.reverse(path);
+            return path;
+        }
+    }
+
+    // File de priorité à seaux de l'algorithme de Dijkstra, les poids des routes étant des entiers compris entre 0
+    // et Constants.MAX_ROUTE_LENGTH : les gares en attente ont toutes une distance comprise entre la distance courante
+    // et celle-ci augmentée de MAX_ROUTE_LENGTH, et chaque seau est une liste chaînée d'entrées.
+    private static final class BucketQueue {
+        private final int[] heads = new int[Constants.MAX_ROUTE_LENGTH + 1];
+        private final int[] entryStations;
+        private final int[] nextEntries;
+        private final boolean[] settled;
+        private int entriesCount;
+        private int size;
+
+        private BucketQueue(int stationsCount, int edgesCount) {
+            entryStations = new int[edgesCount + 1];
+            nextEntries = new int[edgesCount + 1];
+            settled = new boolean[stationsCount];
+        }
+
+        private void clear() {
+            Arrays.fill(heads, -1);
+            Arrays.fill(settled, false);
+            entriesCount = 0;
+            size = 0;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void push(int station, int distance) {
+            int bucket = distance % heads.length;
+            entryStations[entriesCount] = station;
+            nextEntries[entriesCount] = heads[bucket];
+            heads[bucket] = entriesCount++;
+            ++size;
+        }
+
+        // Retire une gare du seau de la distance donnée, ou retourne -1 s'il est vide.
+        private int pop(int distance) {
+            int bucket = distance % heads.length;
+            int entry = heads[bucket];
+            if(entry == -1) {
+                return -1;
+            }
+            heads[bucket] = nextEntries[entry];
+            --size;
+            return entryStations[entry];
+        }
+
+        private boolean isSettled(int station) {
+            return settled[station];
+        }
+
+        private void settle(int station) {
+            settled[station] = true;
+        }
+    }
+}
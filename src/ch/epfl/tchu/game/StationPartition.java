@@ -2,6 +2,8 @@ package ch.epfl.tchu.game;
 
 import ch.epfl.tchu.Preconditions;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -16,6 +18,49 @@ public final class StationPartition implements StationConnectivity {
         this.representatives = representatives;
     }
 
+    /**
+     * retourne la partition aplatie des gares reliées par les routes données, construite en une seule passe sur les routes
+     * @param routes routes du réseau
+     * @return la partition aplatie des gares reliées par les routes données
+     */
+    public static StationPartition fromRoutes(List<Route> routes) {
+        int maxId = -1;
+        for(Route route : routes) {
+            maxId = Math.max(maxId, Math.max(route.station1().id(), route.station2().id()));
+        }
+        Builder builder = new Builder(maxId + 1);
+        for(Route route : routes) {
+            builder.connect(route.station1(), route.station2());
+        }
+        return builder.build();
+    }
+
+    /**
+     * retourne une partition identique à celle-ci, si ce n'est que les sous-ensembles contenant les deux gares données sont joints
+     *
+     * la partition réceptrice n'est pas modifiée, ce qui permet à plusieurs états d'un joueur de la partager
+     * @param s1 gare 1
+     * @param s2 gare 2
+     * @return une partition identique à celle-ci, si ce n'est que les sous-ensembles contenant les deux gares données sont joints
+     */
+    public StationPartition withConnected(Station s1, Station s2) {
+        int length = Math.max(representatives.length, Math.max(s1.id(), s2.id()) + 1);
+        int[] newRepresentatives = Arrays.copyOf(representatives, length);
+        for(int i = representatives.length; i < length; ++i) {
+            newRepresentatives[i] = i;
+        }
+        int representative1 = newRepresentatives[s1.id()];
+        int representative2 = newRepresentatives[s2.id()];
+        if(representative1 != representative2) {
+            for(int i = 0; i < length; ++i) {
+                if(newRepresentatives[i] == representative2) {
+                    newRepresentatives[i] = representative1;
+                }
+            }
+        }
+        return new StationPartition(newRepresentatives);
+    }
+
     /**
      * Permet de vérifier la connexion ou non de deux stations sur le réseau d'un joueur
      * @param s1 Station de départ
@@ -29,22 +74,24 @@ public final class StationPartition implements StationConnectivity {
 
     /**
      * Classe bâtisseur imbriquée
+     *
+     * la partition profonde est une forêt d'ensembles disjoints : l'union se fait par rang et la recherche du représentant compresse les chemins
      */
     public final static class Builder {
         private final int[] representatives;
+        private final byte[] ranks;
 
         /**
          * construit un bâtisseur de partition d'un ensemble de gares dont l'identité est comprise entre 0 et la valeur en argument
          * @param stationCount id de station maximum
-         * @throws IllegalArgumentException si stationCount est strictement positif
+         * @throws IllegalArgumentException si stationCount est strictement négatif
          */
         public Builder(int stationCount) {
             Preconditions.checkArgument(stationCount >= 0);
             representatives = new int[stationCount];
-            int i =0;
-            for(Station s : ChMap.stations().subList(0, stationCount)) {
-                representatives[i] = s.id();
-                ++i;
+            ranks = new byte[stationCount];
+            for(int i = 0; i < stationCount; ++i) {
+                representatives[i] = i;
             }
         }
 
@@ -59,10 +106,16 @@ public final class StationPartition implements StationConnectivity {
             Objects.checkIndex(s1.id(), representatives.length);
             Objects.checkIndex(s2.id(), representatives.length);
 
-            int initialRepresentative = representatives[s2.id()];
-            for(int i = 0; i< representatives.length; ++i){
-                if(representatives[i] == initialRepresentative){
-                    representatives[i] = representative(s1.id());
+            int representative1 = representative(s1.id());
+            int representative2 = representative(s2.id());
+            if(representative1 != representative2) {
+                if(ranks[representative1] < ranks[representative2]) {
+                    representatives[representative1] = representative2;
+                } else {
+                    representatives[representative2] = representative1;
+                    if(ranks[representative1] == ranks[representative2]) {
+                        ++ranks[representative1];
+                    }
                 }
             }
             return this;
@@ -73,11 +126,24 @@ public final class StationPartition implements StationConnectivity {
          * @return la partition aplatie des gares correspondant à la partition profonde en cours de construction par ce bâtisseur
          */
         public StationPartition build(){
-            return new StationPartition(representatives);
+            int[] flatRepresentatives = new int[representatives.length];
+            for(int i = 0; i < representatives.length; ++i) {
+                flatRepresentatives[i] = representative(i);
+            }
+            return new StationPartition(flatRepresentatives);
         }
 
         private int representative(int stationId){
-            return representatives[stationId];
+            int root = stationId;
+            while(representatives[root] != root) {
+                root = representatives[root];
+            }
+            while(representatives[stationId] != root) {
+                int next = representatives[stationId];
+                representatives[stationId] = root;
+                stationId = next;
+            }
+            return root;
         }
 
     }
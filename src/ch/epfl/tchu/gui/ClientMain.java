@@ -1,17 +1,16 @@
 package ch.epfl.tchu.gui;
 
 import ch.epfl.tchu.game.Player;
-import ch.epfl.tchu.game.Spectator;
 import ch.epfl.tchu.net.RemotePlayerClient;
 
-import ch.epfl.tchu.net.SpectatorProxy;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 //---------- CONTIENT DU BONUS ----------
 
@@ -64,21 +63,24 @@ public final class ClientMain extends Application {
     public static void startClient(String hostName, int port, int spectatorPort) {
         Player remotePlayer = new GraphicalPlayerAdapter();
         RemotePlayerClient remotePlayerClient = new RemotePlayerClient(remotePlayer, hostName, port);
-        new Thread(remotePlayerClient::run).start();
-        new Thread(() -> {
+        ServerSocket spectatorServerSocket;
+        try {
+            spectatorServerSocket = new ServerSocket(spectatorPort);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
 
-            try {
-                ServerSocket serverSocket1 = new ServerSocket(spectatorPort);
-                while (true) {
-                    Socket specSocket = serverSocket1.accept();
-                    Spectator spectator = new SpectatorProxy(specSocket);
-                    remotePlayer.addSpectator(spectator);
-                }
+        // L'acceptation des spectateurs se termine avec la connexion au serveur.
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.execute(() -> ServerMain.acceptSpectators(spectatorServerSocket, remotePlayer));
+        executor.execute(() -> {
+            try (spectatorServerSocket) {
+                remotePlayerClient.run();
             } catch (IOException e) {
-                e.printStackTrace();
+                // La prise d'écoute n'est plus utilisée.
             }
-
-
-        }).start();
+        });
+        executor.shutdown();
     }
 }
@@ -11,6 +11,7 @@ import javafx.collections.ObservableList;
 import javafx.scene.Group;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
@@ -57,6 +58,9 @@ final class DecksViewCreator {
 
         ListView<Ticket> listView = new ListView<>(gameState.getPlayerTickets());
 
+        //----------BONUS----------
+        listView.setCellFactory(l -> new TicketHintCell(gameState));
+
         listView.setOnMouseClicked(event -> {
             if(! listView.getSelectionModel().isEmpty()) {
                 List<Trip> tripsList = listView.getSelectionModel().getSelectedItem().getTrips();
@@ -99,6 +103,37 @@ final class DecksViewCreator {
         return view;
     }
 
+    //----------BONUS----------
+    // Cellule affichant un billet suivi de l'indication calculée en arrière-plan : réalisé, irréalisable, ou nombre de
+    // wagons manquants.
+    private static final class TicketHintCell extends ListCell<Ticket> {
+        private final ObservableGameState gameState;
+
+        private TicketHintCell(ObservableGameState gameState) {
+            this.gameState = gameState;
+        }
+
+        @Override
+        protected void updateItem(Ticket ticket, boolean empty) {
+            super.updateItem(ticket, empty);
+            textProperty().unbind();
+            if(empty || ticket == null) {
+                setText(null);
+                return;
+            }
+            ReadOnlyIntegerProperty missingCars = gameState.getTicketMissingCars(ticket);
+            textProperty().bind(Bindings.createStringBinding(() -> {
+                int cars = missingCars.get();
+                if(cars == 0) {
+                    return String.format(StringsFr.FULFILLED_TICKET_HINT, ticket);
+                } else if(cars == TicketHintEngine.UNREACHABLE) {
+                    return String.format(StringsFr.UNREACHABLE_TICKET_HINT, ticket);
+                }
+                return String.format(StringsFr.MISSING_CARS_TICKET_HINT, ticket, cars, StringsFr.plural(cars));
+            }, missingCars));
+        }
+    }
+
     /**
      * créée la vue des pioches des cartes et billets
      * @param gameState l'état de la partie
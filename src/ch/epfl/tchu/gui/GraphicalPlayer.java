@@ -3,6 +3,7 @@ package ch.epfl.tchu.gui;
 import ch.epfl.tchu.Preconditions;
 import ch.epfl.tchu.SortedBag;
 import ch.epfl.tchu.game.*;
+import ch.epfl.tchu.net.SpectatorBroadcaster;
 
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
@@ -48,7 +49,7 @@ public final class GraphicalPlayer {
     private final Stage primaryStage;
 
     //----------BONUS----------
-    private final List<Spectator> spectators;
+    private final SpectatorBroadcaster spectators;
     //-------------------------
 
     /**
@@ -69,14 +70,13 @@ public final class GraphicalPlayer {
         createPlayerWindow(primaryStage);
 
         //----------BONUS----------
-        spectators = new ArrayList<>();
+        spectators = new SpectatorBroadcaster(id, playerNames);
         //-------------------------
 
     }
     //----------BONUS----------
     public void addSpectator(Spectator spectator){
         spectators.add(spectator);
-        spectator.initSpectator(id, playerNames);
     }
     //-------------------------
 
@@ -90,7 +90,7 @@ public final class GraphicalPlayer {
         gameState.setState(pGS, pS);
 
         //----------BONUS----------
-        spectators.forEach(s -> s.setState(pGS, pS));
+        spectators.setState(pGS, pS);
         //-------------------------
     }
 
@@ -106,7 +106,7 @@ public final class GraphicalPlayer {
         }
 
         //----------BONUS----------
-        spectators.forEach(s -> s.receiveInfo(infoString));
+        spectators.receiveInfo(infoString);
         //-------------------------
     }
 
@@ -367,6 +367,10 @@ public final class GraphicalPlayer {
 
     public void endGame() {
         primaryStage.hide();
+
+        //----------BONUS----------
+        spectators.close();
+        //-------------------------
     }
 
 
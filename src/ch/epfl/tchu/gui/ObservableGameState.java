@@ -30,7 +30,12 @@ public final class ObservableGameState {
     private final ObservableList<Ticket> playerTickets;
     private final Map<Card, IntegerProperty> playerCards;
     private final Map<Route, BooleanProperty> claimableRoutes;
-    private final Set<List<Station>> claimedStations;
+    private final Map<List<Station>, List<Route>> routesByStations;
+    private final Set<Route> unavailableRoutes;
+    private final Map<PlayerId, Integer> claimedRoutesCount;
+
+    //----------BONUS----------
+    private final TicketHintEngine ticketHints;
 
     /**
      * construit un état de jeu observable spécifique à un joueur
@@ -51,8 +56,13 @@ public final class ObservableGameState {
         playerTickets = FXCollections.observableArrayList();
         playerCards = createPlayerCards();
         claimableRoutes = createClaimableRoutes();
-        claimedStations = new HashSet<>();
+        routesByStations = createRoutesByStations();
+        unavailableRoutes = new HashSet<>();
+        claimedRoutesCount = new EnumMap<>(PlayerId.class);
+        PlayerId.ALL.forEach(p -> claimedRoutesCount.put(p, 0));
 
+        //----------BONUS----------
+        ticketHints = new TicketHintEngine(playerID);
         }
 
     private Map<PlayerId, IntegerProperty> createPlayerIntPropertyMap(){
@@ -81,6 +91,14 @@ public final class ObservableGameState {
         return claimableRoutes;
     }
 
+    private Map<List<Station>, List<Route>> createRoutesByStations(){
+        Map<List<Station>, List<Route>> routesByStations = new HashMap<>();
+        for(Route route : ChMap.routes()){
+            routesByStations.computeIfAbsent(route.stations(), s -> new ArrayList<>()).add(route);
+        }
+        return routesByStations;
+    }
+
     private Map<Route, ObjectProperty<PlayerId>> createRoutes(){
         Map<Route, ObjectProperty<PlayerId>> routes = new HashMap<>();
         for(Route route : ChMap.routes()){
@@ -92,11 +110,14 @@ public final class ObservableGameState {
     /**
      * Modifie chacune des propriétés de l'état de jeu observable à partir de
      * la partie publique du jeu et de l'état complet du joueur associé à l'instance
-     * d'ObservableGameState
+     * d'ObservableGameState ; seules les propriétés dont la valeur dépend de ce qui a changé
+     * depuis l'état précédent sont recalculées
      * @param pGS la partie publique du jeu
      * @param pS l'état complet du joueur
      */
     public void setState(PublicGameState pGS, PlayerState pS) {
+        PlayerState previousPS = ps;
+        PublicGameState previousPGS = publicGameState;
         ps = pS;
         publicGameState = pGS;
         remainingTickets.setValue((100*pGS.ticketsCount()/ChMap.tickets().size()));
@@ -105,11 +126,33 @@ public final class ObservableGameState {
             Card newCard = pGS.cardState().faceUpCard(slot);
             faceUpCards.get(slot).set(newCard);
         }
+
+        boolean reset = previousPS == null;
         for(PlayerId id : PlayerId.ALL){
-            for(Route route : pGS.playerState(id).routes()){
-                claimedStations.add(route.stations());
-                routes.get(route).setValue(id);
+            reset |= pGS.playerState(id).routes().size() < claimedRoutesCount.get(id);
+        }
+        if(reset){
+            resetRoutes();
+        }
+        boolean routesChanged = reset;
+        List<Route> newRoutes = new ArrayList<>();
+        for(PlayerId id : PlayerId.ALL){
+            List<Route> playerRoutes = pGS.playerState(id).routes();
+            // Au cours d'une partie, un joueur ne fait qu'ajouter des routes aux siennes, mais leur ordre n'est pas forcément
+            // conservé par le réseau : les nouvelles routes sont donc celles dont il n'est pas encore le propriétaire.
+            if(playerRoutes.size() != claimedRoutesCount.get(id)){
+                for(Route route : playerRoutes){
+                    ObjectProperty<PlayerId> owner = routes.get(route);
+                    if(owner.get() != id){
+                        // Une route prise rend indisponibles toutes les voies reliant les mêmes gares.
+                        unavailableRoutes.addAll(routesByStations.get(route.stations()));
+                        owner.setValue(id);
+                        newRoutes.add(route);
+                        routesChanged = true;
+                    }
+                }
             }
+            claimedRoutesCount.put(id, playerRoutes.size());
             playersTicketsCount.get(id).setValue(pGS.playerState(id).ticketCount());
             playersCardsCount.get(id).setValue(pGS.playerState(id).cardCount());
             playersCarCount.get(id).setValue(pGS.playerState(id).carCount());
@@ -117,18 +160,46 @@ public final class ObservableGameState {
 
         }
 
-        for(Route route : routes.keySet()){
-            claimableRoutes.get(route).set(pGS.currentPlayerId() == playerId &&
-                    !claimedStations.contains(route.stations()) && pS.canClaimRoute(route));
+        boolean handChanged = reset || !pS.cardBag().equals(previousPS.cardBag());
+        boolean wasCurrentPlayer = !reset && previousPGS.currentPlayerId() == playerId;
+        if(pGS.currentPlayerId() != playerId){
+            if(reset || wasCurrentPlayer){
+                claimableRoutes.values().forEach(claimable -> claimable.set(false));
+            }
+        } else if(!wasCurrentPlayer || handChanged || pS.carCount() != previousPS.carCount()){
+            for(Route route : routes.keySet()){
+                claimableRoutes.get(route).set(!unavailableRoutes.contains(route) && pS.canClaimRoute(route));
+            }
+        } else {
+            // Seules les voies des routes prises depuis l'état précédent peuvent avoir cessé d'être disponibles.
+            for(Route route : newRoutes){
+                routesByStations.get(route.stations()).forEach(r -> claimableRoutes.get(r).set(false));
+            }
         }
 
+        boolean ticketsChanged = reset || !pS.tickets().equals(previousPS.tickets());
+        if(ticketsChanged){
+            playerTickets.setAll(pS.tickets().toList());
+        }
+        if(handChanged){
+            for(Card card : Card.ALL){
+                playerCards.get(card).set(pS.cardBag().countOf(card));
+            }
+        }
 
-        playerTickets.setAll(pS.tickets().toList());
-        for(Card card : Card.ALL){
-            playerCards.get(card).set(pS.cards().countOf(card));
+        //----------BONUS----------
+        if(routesChanged || ticketsChanged){
+            ticketHints.setState(pGS, pS);
         }
     }
 
+    // Oublie les routes prises, au début d'une nouvelle partie.
+    private void resetRoutes() {
+        unavailableRoutes.clear();
+        routes.values().forEach(owner -> owner.setValue(null));
+        claimedRoutesCount.replaceAll((id, count) -> 0);
+    }
+
 
     /**
      * accesseur de la propriété contenant le pourcentage de billets restant dans la pioche
@@ -217,6 +288,27 @@ public final class ObservableGameState {
         return FXCollections.unmodifiableObservableList(playerTickets);
     }
 
+    //----------BONUS----------
+    /**
+     * accesseur du nombre minimum de wagons que le joueur doit encore poser pour réaliser le billet donné, calculé en arrière-plan
+     * @param ticket billet du joueur
+     * @return la propriété contenant le nombre de wagons manquants, 0 si le billet est réalisé et
+     * TicketHintEngine.UNREACHABLE s'il ne peut plus l'être
+     */
+    public ReadOnlyIntegerProperty getTicketMissingCars(Ticket ticket) {
+        return ticketHints.missingCars(ticket);
+    }
+
+    //----------BONUS----------
+    /**
+     * pour savoir si le joueur a réalisé le billet donné, calculé en arrière-plan
+     * @param ticket billet du joueur
+     * @return la propriété indiquant si le billet est réalisé
+     */
+    public ReadOnlyBooleanProperty isTicketFulfilled(Ticket ticket) {
+        return ticketHints.isFulfilled(ticket);
+    }
+
     /**
      * accesseur de la liste des cartes du joueur
      * @return la liste des cartes du joueur
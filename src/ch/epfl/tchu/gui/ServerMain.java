@@ -3,18 +3,28 @@ package ch.epfl.tchu.gui;
 import ch.epfl.tchu.SortedBag;
 import ch.epfl.tchu.game.ChMap;
 import ch.epfl.tchu.game.Game;
+import ch.epfl.tchu.game.GameState;
 import ch.epfl.tchu.game.Player;
 import ch.epfl.tchu.game.PlayerId;
+import ch.epfl.tchu.game.Ticket;
+import ch.epfl.tchu.net.GameCheckpointer;
+import ch.epfl.tchu.net.GameJournal;
+import ch.epfl.tchu.net.RemotePlayerClient;
 import ch.epfl.tchu.net.RemotePlayerProxy;
 
 import ch.epfl.tchu.net.SpectatorProxy;
+import ch.epfl.tchu.net.SpectatorRelay;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 //---------- CONTIENT DU BONUS ----------
 /**
@@ -65,30 +75,139 @@ public final class ServerMain extends Application {
     public static void startServer(Map<PlayerId, String> playerNames, int port, int spectatorPort) {
         try {
             ServerSocket serverSocket = new ServerSocket(port);
-            Socket socket = serverSocket.accept();
+            Socket socket;
+            ServerSocket spectatorServerSocket;
+            try {
+                socket = serverSocket.accept();
+                spectatorServerSocket = new ServerSocket(spectatorPort);
+            } catch (IOException e) {
+                serverSocket.close();
+                throw e;
+            }
             Player player1 = new GraphicalPlayerAdapter();
-            Player player2 = new RemotePlayerProxy(socket);
-            Map<PlayerId, Player> players = Map.of(PlayerId.PLAYER_1, player1, PlayerId.PLAYER_2, player2);
-            new Thread(() -> Game.play(players, playerNames, SortedBag.of(ChMap.tickets()), new Random())).start();
-            new Thread(() -> {
 
-                try {
-                    ServerSocket serverSocket1 = new ServerSocket(spectatorPort);
-                    while (true) {
-                        Socket specSocket = serverSocket1.accept();
-                        player1.addSpectator(new SpectatorProxy(specSocket));
-                    }
+            // Les parties et l'acceptation des spectateurs ont la même durée de vie : la fin des parties, normale ou causée par
+            // la déconnexion définitive du joueur distant, ferme les prises d'écoute, ce qui termine l'attente de nouveaux spectateurs.
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            executor.execute(() -> acceptSpectators(spectatorServerSocket, player1));
+            executor.execute(() -> {
+                try (serverSocket; spectatorServerSocket) {
+                    serveGames(serverSocket, socket, player1, playerNames);
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    // Les prises d'écoute ne sont plus utilisées.
                 }
-
-
-            }).start();
+            });
+            executor.shutdown();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
-}
 
+    // Joue avec le client connecté à la prise donnée ; si la connexion est perdue en cours de partie, la partie est terminée
+    // pour le joueur local et, tant qu'un point de contrôle permet de la reprendre, le serveur attend que le client se reconnecte
+    // durant RemotePlayerClient.RECONNECT_TIMEOUT millisecondes, comme celui-ci le fait de son côté.
+    private static void serveGames(ServerSocket serverSocket, Socket socket, Player localPlayer, Map<PlayerId, String> playerNames)
+            throws IOException {
+        serverSocket.setSoTimeout(RemotePlayerClient.RECONNECT_TIMEOUT);
+        while(true) {
+            try (Socket s = socket) {
+                Player remotePlayer = new RemotePlayerProxy(s);
+                try {
+                    playGames(Map.of(PlayerId.PLAYER_1, localPlayer, PlayerId.PLAYER_2, remotePlayer), playerNames);
+                    return;
+                } catch (UncheckedIOException | IllegalArgumentException e) {
+                    localPlayer.endGame();
+                }
+            } catch (UncheckedIOException | IllegalArgumentException e) {
+                // La négociation avec le client a échoué : il peut encore se reconnecter.
+            }
+            if(resumedState(playerNames) == null) {
+                return;
+            }
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                return;
+            }
+        }
+    }
 
+    // Retourne l'état du dernier point de contrôle s'il oppose les joueurs donnés, ou null si la partie doit être recommencée.
+    private static GameState resumedState(Map<PlayerId, String> playerNames) {
+        try {
+            GameCheckpointer.Checkpoint checkpoint = GameCheckpointer.read(GameCheckpointer.DEFAULT_FILE);
+            if(checkpoint != null && checkpoint.playerNames().equals(playerNames)) {
+                return checkpoint.gameState();
+            }
+        } catch (IOException e) {
+            // La partie est recommencée.
+        }
+        return null;
+    }
 
+    // Reprend la partie du dernier point de contrôle si elle oppose les mêmes joueurs, ou en commence une nouvelle, enregistrée
+    // dans un journal ; une partie reprise n'est pas enregistrée, son journal ne pouvant être rejoué sans son début.
+    private static void playGames(Map<PlayerId, Player> players, Map<PlayerId, String> playerNames) {
+        SortedBag<Ticket> tickets = SortedBag.of(ChMap.tickets());
+        GameState resumedState = resumedState(playerNames);
+        GameCheckpointer checkpointer = null;
+        GameJournal journal = null;
+        try {
+            checkpointer = new GameCheckpointer(GameCheckpointer.DEFAULT_FILE, playerNames);
+        } catch (IOException e) {
+            // Les parties sont jouées sans points de contrôle.
+        }
+        if(resumedState == null) {
+            try {
+                journal = GameJournal.createIn(GameJournal.DEFAULT_DIRECTORY, playerNames, tickets);
+            } catch (IOException e) {
+                // Les parties sont jouées sans être enregistrées.
+            }
+        }
+        try {
+            Map<PlayerId, Player> gamePlayers = journal == null ? players : journal.players(players);
+            Random rng = journal == null ? new Random() : journal.random(new Random());
+            if(checkpointer == null) {
+                Game.play(gamePlayers, playerNames, tickets, rng, resumedState, gameState -> {}, () -> {});
+            } else {
+                Game.play(gamePlayers, playerNames, tickets, rng, resumedState, checkpointer::checkpoint, checkpointer::clear);
+            }
+        } finally {
+            if(checkpointer != null) {
+                checkpointer.close();
+            }
+            if(journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * accepte les spectateurs se connectant à la prise donnée et les ajoute au joueur donné, jusqu'à la fermeture de la prise ;
+     * la version du protocole est négociée avec chaque spectateur par l'un de SpectatorRelay.HANDSHAKE_THREADS fils, de
+     * sorte qu'un spectateur silencieux ou invalide ne retarde pas l'acceptation des autres
+     * @param spectatorServerSocket prise d'écoute des spectateurs
+     * @param player joueur observé par les spectateurs
+     */
+    static void acceptSpectators(ServerSocket spectatorServerSocket, Player player) {
+        ExecutorService handshakes = Executors.newFixedThreadPool(SpectatorRelay.HANDSHAKE_THREADS);
+        try {
+            while (true) {
+                Socket specSocket = spectatorServerSocket.accept();
+                handshakes.execute(() -> {
+                    try {
+                        player.addSpectator(new SpectatorProxy(specSocket));
+                    } catch (UncheckedIOException | IllegalArgumentException e) {
+                        // La négociation a échoué : le mandataire a fermé la prise du spectateur.
+                    }
+                });
+            }
+        } catch (IOException e) {
+            if(!spectatorServerSocket.isClosed()) {
+                e.printStackTrace();
+            }
+        } finally {
+            handshakes.shutdownNow();
+        }
+    }
+}
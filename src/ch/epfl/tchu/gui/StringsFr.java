@@ -87,4 +87,9 @@ public final class StringsFr {
     //-----BONUS-----
     public static final String MULTIPLE_SELECTION = "\n(Sélection multiple : ctrl ou cmd)";
 
+    // Indications sur les billets
+    public static final String FULFILLED_TICKET_HINT = "%s ✓";
+    public static final String MISSING_CARS_TICKET_HINT = "%s (encore %s wagon%s)";
+    public static final String UNREACHABLE_TICKET_HINT = "%s ✗";
+
 }
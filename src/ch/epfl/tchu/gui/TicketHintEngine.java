@@ -0,0 +1,229 @@
+package ch.epfl.tchu.gui;
+
+import ch.epfl.tchu.game.*;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static javafx.application.Platform.runLater;
+
+//----------BONUS----------
+
+/**
+ * Moteur d'indications sur les billets d'un joueur : pour chaque billet en main, indique s'il est réalisé et le nombre
+ * minimum de wagons que le joueur doit encore poser pour le réaliser, compte tenu des routes encore libres
+ *
+ * les calculs sont effectués par un fil dédié, partagé par tous les moteurs, et leurs résultats sont publiés sur le fil
+ * JavaFX ; un calcul est abandonné dès qu'un état plus récent arrive, et ses résultats ne sont jamais publiés ; les
+ * résultats sont conservés pour les derniers ensembles de routes prises rencontrés, de sorte que les états ne différant
+ * que par les cartes ne coûtent aucun calcul
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+final class TicketHintEngine {
+
+    /**
+     * Nombre de wagons manquants d'un billet qu'aucun chemin libre ne permet plus de réaliser
+     */
+    public static final int UNREACHABLE = -1;
+
+    private static final int CACHE_SIZE = 32;
+    private static final List<Route> ROUTES = ChMap.routes();
+    private static final Map<Route, Integer> ROUTE_INDICES = routeIndices();
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tchu-hints");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PlayerId playerId;
+    private final Map<Ticket, IntegerProperty> missingCars = new HashMap<>();
+    private final Map<Ticket, BooleanProperty> fulfilled = new HashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    // Utilisé uniquement par le fil JavaFX.
+    private Future<?> pending;
+
+    // Utilisés uniquement par le fil de calcul.
+    private final Map<Key, Map<Ticket, Integer>> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Map<Ticket, Integer>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private RouteGraph.Paths paths;
+    private final BitSet ownedApplied = new BitSet(ROUTES.size());
+    private final BitSet blockedApplied = new BitSet(ROUTES.size());
+
+    // Routes prises par le joueur et par ses adversaires, clé des résultats conservés.
+    private static final class Key {
+        private final BitSet owned;
+        private final BitSet blocked;
+
+        private Key(BitSet owned, BitSet blocked) {
+            this.owned = owned;
+            this.blocked = blocked;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && owned.equals(((Key) o).owned) && blocked.equals(((Key) o).blocked);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(owned, blocked);
+        }
+    }
+
+    /**
+     * construit le moteur d'indications du joueur donné ; les indications initiales sont celles d'un plateau sans aucune
+     * route prise
+     * @param playerId identité du joueur
+     */
+    TicketHintEngine(PlayerId playerId) {
+        this.playerId = playerId;
+        paths = RouteGraph.chMap().paths();
+        for(Ticket ticket : ChMap.tickets()) {
+            int distance = paths.distance(ticket);
+            missingCars.put(ticket, new SimpleIntegerProperty(toMissingCars(distance)));
+            fulfilled.put(ticket, new SimpleBooleanProperty(distance == 0));
+        }
+    }
+
+    private static Map<Route, Integer> routeIndices() {
+        Map<Route, Integer> indices = new HashMap<>();
+        for(int i = 0; i < ROUTES.size(); ++i) {
+            indices.put(ROUTES.get(i), i);
+        }
+        return indices;
+    }
+
+    /**
+     * lance le calcul des indications des billets du joueur dans l'état donné, en abandonnant le calcul en cours s'il y en a un ;
+     * doit être appelée sur le fil JavaFX
+     * @param pGS la partie publique du jeu
+     * @param pS l'état complet du joueur
+     */
+    void setState(PublicGameState pGS, PlayerState pS) {
+        long currentGeneration = generation.incrementAndGet();
+        if(pending != null) {
+            pending.cancel(false);
+        }
+        BitSet owned = new BitSet(ROUTES.size());
+        BitSet blocked = new BitSet(ROUTES.size());
+        for(PlayerId id : PlayerId.ALL) {
+            BitSet routes = id == playerId ? owned : blocked;
+            pGS.playerState(id).routes().forEach(r -> routes.set(ROUTE_INDICES.get(r)));
+        }
+        List<Ticket> tickets = pS.tickets().toList();
+        pending = EXECUTOR.submit(() -> compute(currentGeneration, new Key(owned, blocked), tickets));
+    }
+
+    /**
+     * accesseur de la propriété contenant le nombre minimum de wagons que le joueur doit encore poser pour réaliser le billet
+     * donné, 0 s'il est réalisé et UNREACHABLE s'il ne peut plus l'être
+     * @param ticket billet de ChMap
+     * @return la propriété contenant le nombre de wagons manquants pour réaliser le billet
+     */
+    ReadOnlyIntegerProperty missingCars(Ticket ticket) {
+        return missingCars.get(ticket);
+    }
+
+    /**
+     * pour savoir si le joueur a réalisé le billet donné
+     * @param ticket billet de ChMap
+     * @return la propriété indiquant si le billet est réalisé
+     */
+    ReadOnlyBooleanProperty isFulfilled(Ticket ticket) {
+        return fulfilled.get(ticket);
+    }
+
+    private boolean isCancelled(long currentGeneration) {
+        return generation.get() != currentGeneration;
+    }
+
+    private void compute(long currentGeneration, Key key, List<Ticket> tickets) {
+        Map<Ticket, Integer> distances = cache.get(key);
+        if(distances == null || !distances.keySet().containsAll(tickets)) {
+            if(!advanceTo(currentGeneration, key)) {
+                return;
+            }
+            if(distances == null) {
+                distances = new HashMap<>();
+                cache.put(key, distances);
+            }
+            for(Ticket ticket : tickets) {
+                if(isCancelled(currentGeneration)) {
+                    return;
+                }
+                distances.computeIfAbsent(ticket, paths::distance);
+            }
+        }
+        Map<Ticket, Integer> hints = new HashMap<>();
+        for(Ticket ticket : tickets) {
+            hints.put(ticket, distances.get(ticket));
+        }
+        runLater(() -> publish(currentGeneration, hints));
+    }
+
+    // Amène les chemins à l'état de la clé donnée, en ne traitant que les routes prises depuis le dernier calcul, ou en
+    // repartant d'un plateau vide si l'une des routes déjà traitées n'est plus prise ; les chemins restent cohérents
+    // après chaque route, un abandon ne perd donc rien.
+    private boolean advanceTo(long currentGeneration, Key key) {
+        if(!isSubset(ownedApplied, key.owned) || !isSubset(blockedApplied, key.blocked)) {
+            paths = RouteGraph.chMap().paths();
+            ownedApplied.clear();
+            blockedApplied.clear();
+        }
+        for(int r = key.owned.nextSetBit(0); r >= 0; r = key.owned.nextSetBit(r + 1)) {
+            if(!ownedApplied.get(r)) {
+                if(isCancelled(currentGeneration)) {
+                    return false;
+                }
+                paths.own(ROUTES.get(r));
+                ownedApplied.set(r);
+            }
+        }
+        for(int r = key.blocked.nextSetBit(0); r >= 0; r = key.blocked.nextSetBit(r + 1)) {
+            if(!blockedApplied.get(r)) {
+                if(isCancelled(currentGeneration)) {
+                    return false;
+                }
+                paths.block(ROUTES.get(r));
+                blockedApplied.set(r);
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSubset(BitSet subset, BitSet set) {
+        BitSet difference = (BitSet) subset.clone();
+        difference.andNot(set);
+        return difference.isEmpty();
+    }
+
+    private void publish(long currentGeneration, Map<Ticket, Integer> hints) {
+        if(isCancelled(currentGeneration)) {
+            return;
+        }
+        hints.forEach((ticket, distance) -> {
+            missingCars.get(ticket).set(toMissingCars(distance));
+            fulfilled.get(ticket).set(distance == 0);
+        });
+    }
+
+    private static int toMissingCars(int distance) {
+        return distance == RouteGraph.UNREACHABLE ? UNREACHABLE : distance;
+    }
+}
@@ -0,0 +1,145 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.Preconditions;
+import ch.epfl.tchu.SortedBag;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ * Interface de Serial-deserializer binaire, équivalent de Serde écrivant et lisant les valeurs dans un tampon d'octets
+ */
+public interface BinarySerde<E> {
+
+    /**
+     * écrit la valeur donnée dans le tampon donné, à partir de sa position courante
+     * @param value la valeur à sérialiser
+     * @param buffer le tampon dans lequel écrire
+     * @throws java.nio.BufferOverflowException si le tampon n'est pas assez grand
+     */
+    void write(E value, ByteBuffer buffer);
+
+    /**
+     * lit une valeur dans le tampon donné, à partir de sa position courante
+     * @param buffer le tampon dans lequel lire
+     * @return la valeur lue
+     * @throws java.nio.BufferUnderflowException si le tampon ne contient pas une valeur complète
+     */
+    E read(ByteBuffer buffer);
+
+    /**
+     * méthode générique prenant en arguments une fonction d'écriture et une fonction de lecture, et retournant le serde binaire correspondant
+     * @param writer fonction d'écriture
+     * @param reader fonction de lecture
+     * @param <T> paramètre de type de la méthode
+     * @return le serde binaire correspondant
+     */
+    static <T> BinarySerde<T> of(BiConsumer<T, ByteBuffer> writer, Function<ByteBuffer, T> reader) {
+        return new BinarySerde<>() {
+
+            @Override
+            public void write(T value, ByteBuffer buffer) {
+                writer.accept(value, buffer);
+            }
+
+            @Override
+            public T read(ByteBuffer buffer) {
+                return reader.apply(buffer);
+            }
+        };
+    }
+
+    /**
+     * méthode générique prenant en argument la liste de toutes les valeurs d'un ensemble de valeurs énuméré et retournant le serde binaire
+     * correspondant, qui représente chaque valeur par son index dans la liste, en entier de longueur variable
+     * @param list liste de toutes les valeurs d'un ensemble de valeurs énuméré
+     * @param <T> type des valeurs de la liste
+     * @return le serde binaire correspondant
+     */
+    static <T> BinarySerde<T> oneOf(List<T> list) {
+        Preconditions.checkArgument(!list.isEmpty());
+        List<T> values = List.copyOf(list);
+        Map<T, Integer> indices = new HashMap<>();
+        for(int i = values.size() - 1; i >= 0; --i) {
+            indices.put(values.get(i), i);
+        }
+        return of((value, buffer) -> writeVarInt(indices.get(value), buffer), buffer -> values.get(readVarInt(buffer)));
+    }
+
+    /**
+     * méthode générique prenant en argument un serde binaire et retournant un serde binaire capable de (dé)sérialiser des listes de valeurs
+     * (dé)sérialisées par le serde donné, précédées de leur nombre
+     * @param serde serde binaire des éléments
+     * @param <T> type des valeurs de la liste
+     * @return un serde binaire capable de (dé)sérialiser des listes de valeurs (dé)sérialisées par le serde donné
+     */
+    static <T> BinarySerde<List<T>> listOf(BinarySerde<T> serde) {
+        return of((list, buffer) -> {
+                    writeVarInt(list.size(), buffer);
+                    list.forEach(e -> serde.write(e, buffer));
+                },
+                buffer -> {
+                    int size = readVarInt(buffer);
+                    // Chaque élément occupant au moins un octet, la taille annoncée ne peut pas faire allouer plus que le tampon.
+                    List<T> list = new ArrayList<>(Math.min(size, buffer.remaining()));
+                    for(int i = 0; i < size; ++i) {
+                        list.add(serde.read(buffer));
+                    }
+                    return list;
+                });
+    }
+
+    /**
+     * méthode générique prenant en argument un serde binaire et retournant un serde binaire capable de (dé)sérialiser des SortedBag de valeurs
+     * (dé)sérialisées par le serde donné
+     * @param serde serde binaire des éléments
+     * @param <T> type des valeurs du SortedBag
+     * @return un serde binaire capable de (dé)sérialiser des SortedBag de valeurs (dé)sérialisées par le serde donné
+     */
+    static <T extends Comparable<T>> BinarySerde<SortedBag<T>> bagOf(BinarySerde<T> serde) {
+        BinarySerde<List<T>> listSerde = listOf(serde);
+        return of((bag, buffer) -> listSerde.write(bag.toList(), buffer), buffer -> SortedBag.of(listSerde.read(buffer)));
+    }
+
+    /**
+     * écrit l'entier positif ou nul donné sur un nombre variable d'octets, 7 bits par octet en commençant par les poids faibles,
+     * le bit de poids fort de chaque octet indiquant si d'autres octets suivent
+     * @param value entier à écrire
+     * @param buffer tampon dans lequel écrire
+     * @throws IllegalArgumentException si l'entier est strictement négatif
+     */
+    static void writeVarInt(int value, ByteBuffer buffer) {
+        Preconditions.checkArgument(value >= 0);
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * lit un entier écrit par writeVarInt
+     * @param buffer tampon dans lequel lire
+     * @return l'entier lu
+     * @throws IllegalArgumentException si l'entier lu ne tient pas dans un int positif
+     */
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for(int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                Preconditions.checkArgument(value >= 0);
+                return value;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+}
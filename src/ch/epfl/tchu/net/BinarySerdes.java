@@ -0,0 +1,188 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.Preconditions;
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ * Classe contenant les serdes binaires utilisés par la version binaire du protocole de tCHu
+ *
+ * les index (cartes, routes, billets, ...) et les tailles sont écrits en entiers de longueur variable, les chaînes en UTF-8 précédées
+ * de leur longueur, les multiplicités des cartes sur 4 bits chacune et les routes d'un joueur sous la forme de la liste de leurs index,
+ * dans l'ordre où il s'en est emparé
+ */
+public final class BinarySerdes {
+    private BinarySerdes(){
+
+    }
+
+    private static final int CARD_COUNT_BITS = 4;
+    private static final int MAX_CARD_COUNT = (1 << CARD_COUNT_BITS) - 1;
+    private static final int CARD_BAG_BYTES = (Card.COUNT * CARD_COUNT_BITS + Byte.SIZE - 1) / Byte.SIZE;
+
+    /** Serde binaire d'entier, en entier de longueur variable après repliement des négatifs sur les impairs */
+    public static final BinarySerde<Integer> integerSerde = BinarySerde.of(
+            (i, buffer) -> BinarySerde.writeVarInt((i << 1) ^ (i >> 31), buffer),
+            buffer -> {
+                int zigZag = BinarySerde.readVarInt(buffer);
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            });
+
+    /** Serde binaire de chaîne de caractères (String), encodée en UTF-8 et précédée de sa longueur en octets */
+    public static final BinarySerde<String> stringSerde = BinarySerde.of(
+            (i, buffer) -> {
+                byte[] bytes = i.getBytes(StandardCharsets.UTF_8);
+                BinarySerde.writeVarInt(bytes.length, buffer);
+                buffer.put(bytes);
+            },
+            buffer -> {
+                byte[] bytes = new byte[BinarySerde.readVarInt(buffer)];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            });
+
+    /** Serde binaire de PlayerId */
+    public static final BinarySerde<PlayerId> playerIdSerde = BinarySerde.oneOf(PlayerId.ALL);
+
+    /** Serde binaire de TurnKind */
+    public static final BinarySerde<Player.TurnKind> turnKindSerde = BinarySerde.oneOf(Player.TurnKind.ALL);
+
+    /** Serde binaire de Card */
+    public static final BinarySerde<Card> cardSerde = BinarySerde.oneOf(Card.ALL);
+
+    /** Serde binaire de Route */
+    public static final BinarySerde<Route> routeSerde = BinarySerde.oneOf(ChMap.routes());
+
+    /** Serde binaire de Ticket */
+    public static final BinarySerde<Ticket> ticketSerde = BinarySerde.oneOf(ChMap.tickets());
+
+    /** Serde binaire de liste de chaînes de caractères (String) */
+    public static final BinarySerde<List<String>> listOfString = BinarySerde.listOf(stringSerde);
+
+    /** Serde binaire de liste de cartes */
+    public static final BinarySerde<List<Card>> listOfCard = BinarySerde.listOf(cardSerde);
+
+    /** Serde binaire de liste de routes, qui en conserve l'ordre */
+    public static final BinarySerde<List<Route>> listOfRoute = BinarySerde.listOf(routeSerde);
+
+    /**
+     * Serde binaire de multiensemble de cartes empaqueté, la multiplicité de chaque carte occupant 4 bits ;
+     * chaque carte doit donc figurer au plus 15 fois, ce qui est le cas de toute main et de tout ensemble de cartes de prise
+     */
+    public static final BinarySerde<CardBag> cardBagSerde = BinarySerde.of(
+            (i, buffer) -> {
+                byte[] nibbles = new byte[CARD_BAG_BYTES];
+                for(Card card : Card.ALL) {
+                    int count = i.countOf(card);
+                    Preconditions.checkArgument(count <= MAX_CARD_COUNT);
+                    nibbles[card.ordinal() / 2] |= count << (CARD_COUNT_BITS * (card.ordinal() % 2));
+                }
+                buffer.put(nibbles);
+            },
+            buffer -> {
+                CardBag cards = CardBag.EMPTY;
+                byte[] nibbles = new byte[CARD_BAG_BYTES];
+                buffer.get(nibbles);
+                for(Card card : Card.ALL) {
+                    int count = (nibbles[card.ordinal() / 2] >>> (CARD_COUNT_BITS * (card.ordinal() % 2))) & MAX_CARD_COUNT;
+                    cards = cards.union(CardBag.of(count, card));
+                }
+                return cards;
+            });
+
+    /** Serde binaire de SortedBag de cartes */
+    public static final BinarySerde<SortedBag<Card>> bagOfCard = BinarySerde.of(
+            (i, buffer) -> cardBagSerde.write(CardBag.of(i), buffer),
+            buffer -> cardBagSerde.read(buffer).toSortedBag());
+
+    /** Serde binaire de SortedBag de tickets */
+    public static final BinarySerde<SortedBag<Ticket>> bagOfTicket = BinarySerde.bagOf(ticketSerde);
+
+    /** Serde binaire de liste de SortedBags de cartes */
+    public static final BinarySerde<List<SortedBag<Card>>> listOfBagOfCard = BinarySerde.listOf(bagOfCard);
+
+    /** Serde binaire de PublicCardState */
+    public static final BinarySerde<PublicCardState> publicCardStateSerde = BinarySerde.of(
+            (i, buffer) -> {
+                listOfCard.write(i.faceUpCards(), buffer);
+                BinarySerde.writeVarInt(i.deckSize(), buffer);
+                BinarySerde.writeVarInt(i.discardsSize(), buffer);
+            },
+            buffer -> new PublicCardState(listOfCard.read(buffer), BinarySerde.readVarInt(buffer), BinarySerde.readVarInt(buffer)));
+
+    /** Serde binaire de PublicPlayerState */
+    public static final BinarySerde<PublicPlayerState> publicPlayerStateSerde = BinarySerde.of(
+            (i, buffer) -> {
+                BinarySerde.writeVarInt(i.ticketCount(), buffer);
+                BinarySerde.writeVarInt(i.cardCount(), buffer);
+                listOfRoute.write(i.routes(), buffer);
+            },
+            buffer -> new PublicPlayerState(BinarySerde.readVarInt(buffer), BinarySerde.readVarInt(buffer), listOfRoute.read(buffer)));
+
+    /** Serde binaire de PlayerState */
+    public static final BinarySerde<PlayerState> playerStateSerde = BinarySerde.of(
+            (i, buffer) -> {
+                bagOfTicket.write(i.tickets(), buffer);
+                bagOfCard.write(i.cards(), buffer);
+                listOfRoute.write(i.routes(), buffer);
+            },
+            buffer -> new PlayerState(bagOfTicket.read(buffer), bagOfCard.read(buffer), listOfRoute.read(buffer)));
+
+    /** Serde binaire de PublicGameState, le dernier joueur étant écrit 0 s'il n'est pas encore connu et 1 + son index sinon */
+    public static final BinarySerde<PublicGameState> publicGameStateSerde = BinarySerde.of(
+            (i, buffer) -> {
+                BinarySerde.writeVarInt(i.ticketsCount(), buffer);
+                publicCardStateSerde.write(i.cardState(), buffer);
+                playerIdSerde.write(i.currentPlayerId(), buffer);
+                publicPlayerStateSerde.write(i.playerState(PlayerId.PLAYER_1), buffer);
+                publicPlayerStateSerde.write(i.playerState(PlayerId.PLAYER_2), buffer);
+                BinarySerde.writeVarInt(i.lastPlayer() == null ? 0 : 1 + i.lastPlayer().ordinal(), buffer);
+            },
+            buffer -> {
+                int ticketsCount = BinarySerde.readVarInt(buffer);
+                PublicCardState cardState = publicCardStateSerde.read(buffer);
+                PlayerId currentPlayerId = playerIdSerde.read(buffer);
+                PublicPlayerState playerState1 = publicPlayerStateSerde.read(buffer);
+                PublicPlayerState playerState2 = publicPlayerStateSerde.read(buffer);
+                int lastPlayer = BinarySerde.readVarInt(buffer);
+                return new PublicGameState(ticketsCount, cardState, currentPlayerId, Map.of(PlayerId.PLAYER_1, playerState1, PlayerId.PLAYER_2, playerState2),
+                        lastPlayer == 0 ? null : PlayerId.ALL.get(lastPlayer - 1));
+            });
+
+    /** Serde binaire de liste de billets */
+    public static final BinarySerde<List<Ticket>> listOfTicket = BinarySerde.listOf(ticketSerde);
+
+    /**
+     * Serde binaire de GameState complet, pioches comprises dans leur ordre ; le dernier joueur est écrit comme dans publicGameStateSerde
+     */
+    public static final BinarySerde<GameState> gameStateSerde = BinarySerde.of(
+            (i, buffer) -> {
+                listOfTicket.write(i.ticketDeck().topCardsList(i.ticketDeck().size()), buffer);
+                listOfCard.write(i.cardState().faceUpCards(), buffer);
+                listOfCard.write(i.cardState().deck().topCardsList(i.cardState().deck().size()), buffer);
+                cardBagSerde.write(i.cardState().discards(), buffer);
+                playerStateSerde.write(i.playerState(PlayerId.PLAYER_1), buffer);
+                playerStateSerde.write(i.playerState(PlayerId.PLAYER_2), buffer);
+                playerIdSerde.write(i.currentPlayerId(), buffer);
+                BinarySerde.writeVarInt(i.lastPlayer() == null ? 0 : 1 + i.lastPlayer().ordinal(), buffer);
+            },
+            buffer -> {
+                Deck<Ticket> tickets = Deck.of(listOfTicket.read(buffer));
+                List<Card> faceUpCards = listOfCard.read(buffer);
+                Deck<Card> deck = Deck.of(listOfCard.read(buffer));
+                CardState cardState = CardState.of(faceUpCards, deck, cardBagSerde.read(buffer));
+                PlayerState playerState1 = playerStateSerde.read(buffer);
+                PlayerState playerState2 = playerStateSerde.read(buffer);
+                PlayerId currentPlayerId = playerIdSerde.read(buffer);
+                int lastPlayer = BinarySerde.readVarInt(buffer);
+                return GameState.of(tickets, cardState, Map.of(PlayerId.PLAYER_1, playerState1, PlayerId.PLAYER_2, playerState2),
+                        currentPlayerId, lastPlayer == 0 ? null : PlayerId.ALL.get(lastPlayer - 1));
+            });
+}
@@ -0,0 +1,39 @@
+package ch.epfl.tchu.net;
+
+/**
+ * Paire formée du serde textuel et du serde binaire d'un même type de valeurs, permettant d'écrire un message une seule fois
+ * quelle que soit la version du protocole utilisée par la connexion
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class Codec<E> {
+
+    private final Serde<E> text;
+    private final BinarySerde<E> binary;
+
+    /**
+     * construit la paire formée des serdes donnés
+     * @param text serde textuel
+     * @param binary serde binaire
+     */
+    public Codec(Serde<E> text, BinarySerde<E> binary) {
+        this.text = text;
+        this.binary = binary;
+    }
+
+    /**
+     * retourne le serde textuel
+     * @return le serde textuel
+     */
+    public Serde<E> text() {
+        return text;
+    }
+
+    /**
+     * retourne le serde binaire
+     * @return le serde binaire
+     */
+    public BinarySerde<E> binary() {
+        return binary;
+    }
+}
@@ -0,0 +1,50 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.util.List;
+
+/**
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ * Classe contenant les paires de serdes des arguments des messages échangés entre serveur et clients
+ */
+public final class Codecs {
+    private Codecs(){
+
+    }
+
+    /** Codec d'entier */
+    public static final Codec<Integer> integerCodec = new Codec<>(Serdes.integerSerde, BinarySerdes.integerSerde);
+
+    /** Codec de chaîne de caractères (String) */
+    public static final Codec<String> stringCodec = new Codec<>(Serdes.stringSerde, BinarySerdes.stringSerde);
+
+    /** Codec de PlayerId */
+    public static final Codec<PlayerId> playerIdCodec = new Codec<>(Serdes.playerIdSerde, BinarySerdes.playerIdSerde);
+
+    /** Codec de TurnKind */
+    public static final Codec<Player.TurnKind> turnKindCodec = new Codec<>(Serdes.turnKindSerde, BinarySerdes.turnKindSerde);
+
+    /** Codec de Route */
+    public static final Codec<Route> routeCodec = new Codec<>(Serdes.routeSerde, BinarySerdes.routeSerde);
+
+    /** Codec de liste de chaînes de caractères (String) */
+    public static final Codec<List<String>> listOfString = new Codec<>(Serdes.listOfString, BinarySerdes.listOfString);
+
+    /** Codec de SortedBag de cartes */
+    public static final Codec<SortedBag<Card>> bagOfCard = new Codec<>(Serdes.bagOfCard, BinarySerdes.bagOfCard);
+
+    /** Codec de SortedBag de tickets */
+    public static final Codec<SortedBag<Ticket>> bagOfTicket = new Codec<>(Serdes.bagOfTicket, BinarySerdes.bagOfTicket);
+
+    /** Codec de liste de SortedBags de cartes */
+    public static final Codec<List<SortedBag<Card>>> listOfBagOfCard = new Codec<>(Serdes.listOfBagOfCard, BinarySerdes.listOfBagOfCard);
+
+    /** Codec de PlayerState */
+    public static final Codec<PlayerState> playerStateCodec = new Codec<>(Serdes.playerStateSerde, BinarySerdes.playerStateSerde);
+
+    /** Codec de PublicGameState */
+    public static final Codec<PublicGameState> publicGameStateCodec = new Codec<>(Serdes.publicGameStateSerde, BinarySerdes.publicGameStateSerde);
+}
@@ -0,0 +1,360 @@
+package ch.epfl.tchu.net;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Connexion établie sur une "prise", qui possède l'unique tampon d'entrée et l'unique tampon de sortie utilisés pour toute sa durée de vie
+ *
+ * les messages envoyés sont accumulés jusqu'au prochain appel à flush, ce qui permet d'envoyer plusieurs messages consécutifs
+ * en une seule écriture sur la prise ; le nombre d'écritures et de lectures effectuées sur la prise est compté
+ *
+ * la version du protocole est négociée à l'établissement de la connexion : le client propose la sienne, le serveur répond
+ * par la plus récente qu'il connaisse qui ne la dépasse pas ; un client ne proposant rien parle le protocole textuel d'origine
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class Connection implements MessageChannel, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Durée, en millisecondes, pendant laquelle le serveur attend la proposition de version d'un client, avant de le considérer
+     * comme un client textuel d'origine
+     */
+    public static final int NEGOTIATION_TIMEOUT = 1000;
+
+    /**
+     * Longueur maximale, en octets, d'une trame ou d'une ligne reçue ; une longueur annoncée supérieure, ou une ligne plus longue,
+     * est considérée comme une corruption du flot, ce qui empêche le pair de faire croître le tampon d'entrée sans limite
+     */
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    // Taille à partir de laquelle le tampon d'entrée plein ne peut plus contenir le début d'une ligne ou d'une trame valide,
+    // dont la longueur occupe au plus 5 octets.
+    private static final int MAX_INPUT_BUFFER_SIZE = MAX_FRAME_LENGTH + 5;
+
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private Protocol protocol = Protocol.TEXT;
+
+    private byte[] inputBuffer = new byte[BUFFER_SIZE];
+    private int inputPosition;
+    private int inputLimit;
+    private byte[] outputBuffer = new byte[BUFFER_SIZE];
+    private int outputCount;
+    private ByteBuffer frameBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder lineBuilder = new StringBuilder();
+
+    private long readsCount;
+    private long writesCount;
+
+    /**
+     * construit une connexion sur la prise donnée, utilisant le protocole textuel d'origine
+     * @param socket prise connectée
+     * @throws UncheckedIOException si les flots de la prise ne peuvent pas être obtenus
+     */
+    public Connection(Socket socket) {
+        this.socket = socket;
+        try {
+            input = socket.getInputStream();
+            output = socket.getOutputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * construit la connexion côté serveur sur la prise donnée et négocie la version du protocole avec le client
+     * @param socket prise acceptée par le serveur
+     * @return la connexion, utilisant la version du protocole négociée
+     * @throws IOException en cas d'erreur d'entrée/sortie
+     * @throws IllegalArgumentException si le client envoie autre chose qu'une proposition de version valide
+     */
+    public static Connection accept(Socket socket) throws IOException {
+        Connection connection = new Connection(socket);
+        String hello;
+        socket.setSoTimeout(NEGOTIATION_TIMEOUT);
+        try {
+            hello = connection.readLine();
+        } catch (SocketTimeoutException e) {
+            hello = null;
+        } finally {
+            socket.setSoTimeout(0);
+        }
+        if(hello != null) {
+            ReceivedMessage message = ReceivedMessage.ofText(hello, true);
+            if(message.id() != MessageId.HELLO) {
+                throw new IllegalArgumentException();
+            }
+            Protocol protocol = Protocol.upTo(message.next(Codecs.integerCodec));
+            connection.writeLine(Message.of(MessageId.HELLO).with(Codecs.integerCodec, protocol.version()).toText());
+            connection.flush();
+            connection.protocol = protocol;
+        }
+        return connection;
+    }
+
+    /**
+     * construit la connexion côté client sur la prise donnée et négocie la version du protocole avec le serveur
+     * @param socket prise connectée au serveur
+     * @return la connexion, utilisant la version du protocole négociée
+     * @throws IOException en cas d'erreur d'entrée/sortie, ou si le serveur ferme la connexion sans répondre
+     * @throws IllegalArgumentException si le serveur répond autre chose qu'une version valide
+     */
+    public static Connection connect(Socket socket) throws IOException {
+        Connection connection = new Connection(socket);
+        connection.writeLine(Message.of(MessageId.HELLO).with(Codecs.integerCodec, Protocol.LATEST.version()).toText());
+        String hello = connection.readLine();
+        if(hello == null) {
+            throw new EOFException();
+        }
+        ReceivedMessage message = ReceivedMessage.ofText(hello, true);
+        if(message.id() != MessageId.HELLO) {
+            throw new IllegalArgumentException();
+        }
+        connection.protocol = Protocol.upTo(message.next(Codecs.integerCodec));
+        return connection;
+    }
+
+    /**
+     * retourne la version du protocole utilisée par la connexion
+     * @return la version du protocole utilisée par la connexion
+     */
+    @Override
+    public Protocol protocol() {
+        return protocol;
+    }
+
+    /**
+     * sérialise et écrit, sans l'envoyer, le message donné
+     * @param message message à envoyer
+     * @throws UncheckedIOException en cas d'erreur d'entrée/sortie
+     */
+    @Override
+    public void send(Message message) {
+        if(protocol == Protocol.TEXT) {
+            lineBuilder.setLength(0);
+            message.writeText(lineBuilder);
+            writeLine(lineBuilder);
+            return;
+        }
+        while(true) {
+            try {
+                frameBuffer.clear();
+                message.writeBinary(frameBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                frameBuffer = ByteBuffer.allocate(frameBuffer.capacity() * 2);
+            }
+        }
+        frameBuffer.flip();
+        int frameLength = frameBuffer.remaining();
+        ensureOutputCapacity(5 + frameLength);
+        for(int length = frameLength; ; length >>>= 7) {
+            if((length & ~0x7F) == 0) {
+                outputBuffer[outputCount++] = (byte) length;
+                break;
+            }
+            outputBuffer[outputCount++] = (byte) ((length & 0x7F) | 0x80);
+        }
+        frameBuffer.get(outputBuffer, outputCount, frameLength);
+        outputCount += frameLength;
+    }
+
+    /**
+     * écrit, sans l'envoyer, un message déjà sérialisé dans la version du protocole de la connexion
+     * @param bytes octets du message, retour à la ligne ou longueur de la trame compris
+     */
+    void sendEncoded(byte[] bytes) {
+        ensureOutputCapacity(bytes.length);
+        System.arraycopy(bytes, 0, outputBuffer, outputCount, bytes.length);
+        outputCount += bytes.length;
+    }
+
+    /**
+     * envoie en une fois tous les messages écrits depuis le dernier envoi
+     * @throws UncheckedIOException en cas d'erreur d'entrée/sortie
+     */
+    @Override
+    public void flush() {
+        if(outputCount == 0) {
+            return;
+        }
+        try {
+            output.write(outputBuffer, 0, outputCount);
+            output.flush();
+            ++writesCount;
+            outputCount = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * envoie les messages en attente puis attend et retourne le prochain message reçu, qui commence par son type
+     * @return le prochain message reçu, ou null si la connexion a été fermée par l'autre partie
+     * @throws IOException en cas d'erreur de lecture, ou si l'autre partie annonce une trame ou envoie une ligne plus longue
+     * que MAX_FRAME_LENGTH
+     * @throws UncheckedIOException en cas d'erreur lors de l'envoi des messages en attente
+     */
+    public ReceivedMessage receiveMessage() throws IOException {
+        return receive(true);
+    }
+
+    /**
+     * envoie les messages en attente puis attend et retourne la prochaine réponse reçue
+     * @return la prochaine réponse reçue, ou null si la connexion a été fermée par l'autre partie
+     * @throws IOException en cas d'erreur de lecture, ou si l'autre partie annonce une trame ou envoie une ligne plus longue
+     * que MAX_FRAME_LENGTH
+     * @throws UncheckedIOException en cas d'erreur lors de l'envoi des messages en attente
+     */
+    @Override
+    public ReceivedMessage receiveReply() throws IOException {
+        return receive(false);
+    }
+
+    private ReceivedMessage receive(boolean withId) throws IOException {
+        if(protocol == Protocol.TEXT) {
+            String line = readLine();
+            return line == null ? null : ReceivedMessage.ofText(line, withId);
+        }
+        ByteBuffer frame = readFrame();
+        return frame == null ? null : ReceivedMessage.ofBinary(frame, withId);
+    }
+
+    /**
+     * retourne le nombre d'écritures effectuées sur la prise, chacune correspondant à un appel système
+     * @return le nombre d'écritures effectuées sur la prise
+     */
+    public long writesCount() {
+        return writesCount;
+    }
+
+    /**
+     * retourne le nombre de lectures effectuées sur la prise, chacune correspondant à un appel système
+     * @return le nombre de lectures effectuées sur la prise
+     */
+    public long readsCount() {
+        return readsCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    // Les lignes du protocole textuel ne contenant en pratique que des caractères ASCII, elles sont copiées caractère
+    // par caractère dans le tampon de sortie ; seules les autres passent par une chaîne encodée en UTF-8.
+    private void writeLine(CharSequence line) {
+        int length = line.length();
+        ensureOutputCapacity(length + 1);
+        int i = 0;
+        for(; i < length && line.charAt(i) < 0x80; ++i) {
+            outputBuffer[outputCount + i] = (byte) line.charAt(i);
+        }
+        if(i < length) {
+            writeEncodedLine(line.toString());
+            return;
+        }
+        outputCount += length;
+        outputBuffer[outputCount++] = '\n';
+    }
+
+    private void writeEncodedLine(String line) {
+        byte[] bytes = line.getBytes(UTF_8);
+        ensureOutputCapacity(bytes.length + 1);
+        System.arraycopy(bytes, 0, outputBuffer, outputCount, bytes.length);
+        outputCount += bytes.length;
+        outputBuffer[outputCount++] = '\n';
+    }
+
+    private void ensureOutputCapacity(int additionalBytes) {
+        if(outputCount + additionalBytes > outputBuffer.length) {
+            outputBuffer = Arrays.copyOf(outputBuffer, Math.max(2 * outputBuffer.length, outputCount + additionalBytes));
+        }
+    }
+
+    private String readLine() throws IOException {
+        flush();
+        int scanned = inputPosition;
+        while(true) {
+            for(; scanned < inputLimit; ++scanned) {
+                if(inputBuffer[scanned] == '\n') {
+                    int end = scanned > inputPosition && inputBuffer[scanned - 1] == '\r' ? scanned - 1 : scanned;
+                    String line = new String(inputBuffer, inputPosition, end - inputPosition, UTF_8);
+                    inputPosition = scanned + 1;
+                    return line;
+                }
+            }
+            int consumed = inputPosition;
+            if(!fill()) {
+                return null;
+            }
+            scanned -= consumed;
+        }
+    }
+
+    private ByteBuffer readFrame() throws IOException {
+        flush();
+        int length = 0;
+        for(int shift = 0; ; shift += 7) {
+            if(shift >= Integer.SIZE) {
+                throw new StreamCorruptedException();
+            }
+            if(inputPosition == inputLimit && !fill()) {
+                if(shift == 0) {
+                    return null;
+                }
+                throw new EOFException();
+            }
+            byte b = inputBuffer[inputPosition++];
+            length |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                break;
+            }
+        }
+        if(length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException();
+        }
+        while(inputLimit - inputPosition < length) {
+            if(!fill()) {
+                throw new EOFException();
+            }
+        }
+        ByteBuffer frame = ByteBuffer.wrap(Arrays.copyOfRange(inputBuffer, inputPosition, inputPosition + length));
+        inputPosition += length;
+        return frame;
+    }
+
+    // Déplace les octets non consommés au début du tampon, l'agrandit s'il est plein, puis y lit de nouveaux octets.
+    private boolean fill() throws IOException {
+        int remaining = inputLimit - inputPosition;
+        if(inputPosition > 0) {
+            System.arraycopy(inputBuffer, inputPosition, inputBuffer, 0, remaining);
+            inputPosition = 0;
+            inputLimit = remaining;
+        }
+        if(inputLimit == inputBuffer.length) {
+            if(inputBuffer.length >= MAX_INPUT_BUFFER_SIZE) {
+                throw new StreamCorruptedException();
+            }
+            inputBuffer = Arrays.copyOf(inputBuffer, Math.min(2 * inputBuffer.length, MAX_INPUT_BUFFER_SIZE));
+        }
+        int read = input.read(inputBuffer, inputLimit, inputBuffer.length - inputLimit);
+        ++readsCount;
+        if(read == -1) {
+            return false;
+        }
+        inputLimit += read;
+        return true;
+    }
+}
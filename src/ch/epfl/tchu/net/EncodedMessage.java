@@ -0,0 +1,70 @@
+package ch.epfl.tchu.net;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Message diffusé à plusieurs connexions, qui n'est sérialisé qu'une seule fois par format (ligne de texte ou trame binaire),
+ * lors de la première demande, quel que soit le nombre de connexions auxquelles il est envoyé
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+final class EncodedMessage {
+
+    private static final int INITIAL_FRAME_SIZE = 1 << 10;
+
+    private final Message message;
+    private byte[] line;
+    private byte[] frame;
+
+    /**
+     * construit le message diffusé correspondant au message donné, sans le sérialiser
+     * @param message message à diffuser
+     */
+    EncodedMessage(Message message) {
+        this.message = message;
+    }
+
+    /**
+     * retourne les octets à écrire sur une connexion utilisant la version donnée du protocole, retour à la ligne
+     * ou longueur de la trame compris ; le tableau retourné est partagé et ne doit pas être modifié
+     * @param protocol version du protocole de la connexion
+     * @return les octets représentant le message dans la version donnée du protocole
+     */
+    synchronized byte[] bytes(Protocol protocol) {
+        if(protocol == Protocol.TEXT) {
+            if(line == null) {
+                line = (message.toText() + '\n').getBytes(UTF_8);
+            }
+            return line;
+        }
+        if(frame == null) {
+            frame = encodeFrame();
+        }
+        return frame;
+    }
+
+    private byte[] encodeFrame() {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_FRAME_SIZE);
+        while(true) {
+            try {
+                buffer.clear();
+                buffer.position(5);
+                message.writeBinary(buffer);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        int length = buffer.position() - 5;
+        ByteBuffer header = ByteBuffer.allocate(5);
+        BinarySerde.writeVarInt(length, header);
+        int start = 5 - header.position();
+        buffer.position(start);
+        buffer.put(header.array(), 0, header.position());
+        return Arrays.copyOfRange(buffer.array(), start, 5 + length);
+    }
+}
@@ -0,0 +1,290 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.game.GameState;
+import ch.epfl.tchu.game.PlayerId;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Point de contrôle d'une partie en cours, permettant de la reprendre au début du dernier tour commencé après un arrêt
+ * du serveur ou une déconnexion
+ *
+ * chaque point de contrôle contient l'état complet de la partie, pioches comprises, sérialisé en quelques centaines
+ * d'octets ; il est écrit par un fil dédié, l'appelant ne faisant que déposer l'état : si plusieurs états sont déposés
+ * pendant une écriture, seul le dernier est écrit ensuite, de sorte que plusieurs points de contrôle partagent une même
+ * synchronisation avec le disque
+ *
+ * le fichier contient deux emplacements de SLOT_SIZE octets, écrits alternativement et protégés chacun par une somme
+ * de contrôle : une écriture interrompue ne peut donc endommager que le point de contrôle en cours d'écriture, le précédent
+ * restant lisible
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class GameCheckpointer implements Closeable {
+
+    /**
+     * Fichier par défaut des points de contrôle
+     */
+    public static final Path DEFAULT_FILE = Path.of("checkpoint.tchu");
+
+    /**
+     * Taille, en octets, de chacun des deux emplacements du fichier
+     */
+    public static final int SLOT_SIZE = 1 << 12;
+
+    private static final int MAGIC = 0x74434850;
+    // Nombre magique, numéro de séquence, taille des données et somme de contrôle.
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final List<String> names;
+    private final Thread writer;
+    private final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+    private final CRC32 crc = new CRC32();
+    private long sequenceNumber;
+
+    // Protégés par le verrou du point de contrôle.
+    private GameState pendingState;
+    private boolean clearPending;
+    private boolean closed;
+    private boolean failed;
+
+    /**
+     * Point de contrôle lu dans un fichier : noms des joueurs et état de la partie au début d'un tour
+     */
+    public static final class Checkpoint {
+        private final long sequenceNumber;
+        private final Map<PlayerId, String> playerNames;
+        private final GameState gameState;
+
+        private Checkpoint(long sequenceNumber, Map<PlayerId, String> playerNames, GameState gameState) {
+            this.sequenceNumber = sequenceNumber;
+            this.playerNames = playerNames;
+            this.gameState = gameState;
+        }
+
+        /**
+         * retourne les noms des joueurs
+         * @return les noms des joueurs
+         */
+        public Map<PlayerId, String> playerNames() {
+            return playerNames;
+        }
+
+        /**
+         * retourne l'état de la partie au début du tour
+         * @return l'état de la partie au début du tour
+         */
+        public GameState gameState() {
+            return gameState;
+        }
+    }
+
+    /**
+     * ouvre, en le créant si nécessaire, le fichier de points de contrôle donné pour les parties opposant les joueurs donnés,
+     * et démarre le fil d'écriture ; le point de contrôle présent dans le fichier reste lisible jusqu'à ce qu'un autre soit écrit
+     * @param file fichier des points de contrôle
+     * @param playerNames noms des joueurs
+     * @throws IOException en cas d'erreur lors de l'ouverture ou de la lecture du fichier
+     */
+    public GameCheckpointer(Path file, Map<PlayerId, String> playerNames) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Checkpoint latest = readLatest(channel);
+            sequenceNumber = latest == null ? 0 : latest.sequenceNumber;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        names = new ArrayList<>(new EnumMap<>(playerNames).values());
+        writer = new Thread(this::writeLoop, "tchu-checkpoint");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * lit le dernier point de contrôle valide du fichier donné
+     * @param file fichier des points de contrôle
+     * @return le dernier point de contrôle valide, ou null si le fichier n'existe pas ou n'en contient aucun
+     * @throws IOException en cas d'erreur de lecture
+     */
+    public static Checkpoint read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readLatest(channel);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * dépose l'état donné, pris au début d'un tour, qui sera écrit dès que possible à la place de l'état en attente s'il y en a un ;
+     * n'effectue aucune entrée/sortie
+     * @param gameState état de la partie au début d'un tour
+     */
+    public synchronized void checkpoint(GameState gameState) {
+        if(closed || failed) {
+            return;
+        }
+        pendingState = gameState;
+        clearPending = false;
+        notifyAll();
+    }
+
+    /**
+     * demande l'effacement des points de contrôle, typiquement à la fin de la partie ; l'état en attente est abandonné
+     */
+    public synchronized void clear() {
+        if(closed || failed) {
+            return;
+        }
+        pendingState = null;
+        clearPending = true;
+        notifyAll();
+    }
+
+    /**
+     * ferme le fichier une fois l'état ou l'effacement en attente écrit ; une erreur lors de la fermeture est ignorée
+     */
+    @Override
+    public void close() {
+        synchronized(this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Les points de contrôle écrits restent lisibles.
+        }
+    }
+
+    // Écrit le dernier état déposé, ou efface les points de contrôle, puis synchronise le fichier avec le disque ; une erreur
+    // d'écriture met fin aux points de contrôle, sans interrompre la partie.
+    private void writeLoop() {
+        try {
+            while(true) {
+                GameState state;
+                synchronized(this) {
+                    while(!closed && pendingState == null && !clearPending) {
+                        wait();
+                    }
+                    if(pendingState == null && !clearPending) {
+                        return;
+                    }
+                    state = pendingState;
+                    pendingState = null;
+                    clearPending = false;
+                }
+                if(state == null) {
+                    erase();
+                } else {
+                    write(state);
+                }
+                channel.force(false);
+            }
+        } catch (IOException | BufferOverflowException e) {
+            synchronized(this) {
+                failed = true;
+                pendingState = null;
+                clearPending = false;
+            }
+        } catch (InterruptedException e) {
+            // Le fil d'écriture n'est jamais interrompu.
+        }
+    }
+
+    private void write(GameState gameState) throws IOException {
+        ++sequenceNumber;
+        slot.clear().position(HEADER_SIZE);
+        BinarySerdes.listOfString.write(names, slot);
+        BinarySerdes.gameStateSerde.write(gameState, slot);
+        int length = slot.position() - HEADER_SIZE;
+        crc.reset();
+        crc.update(slot.array(), HEADER_SIZE, length);
+        slot.putInt(0, MAGIC).putLong(Integer.BYTES, sequenceNumber).putInt(Integer.BYTES + Long.BYTES, length)
+                .putInt(Integer.BYTES + Long.BYTES + Integer.BYTES, (int) crc.getValue());
+        slot.flip();
+        writeFully(slot, slotPosition(sequenceNumber));
+    }
+
+    private void erase() throws IOException {
+        for(int i = 0; i < 2; ++i) {
+            writeFully(ByteBuffer.allocate(Integer.BYTES), slotPosition(i));
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long slotPosition(long sequenceNumber) {
+        return (sequenceNumber % 2) * SLOT_SIZE;
+    }
+
+    // Retourne le point de contrôle valide de plus grand numéro de séquence parmi ceux des deux emplacements.
+    private static Checkpoint readLatest(FileChannel channel) throws IOException {
+        Checkpoint latest = null;
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        for(int i = 0; i < 2; ++i) {
+            buffer.clear();
+            int read;
+            do {
+                read = channel.read(buffer, slotPosition(i) + buffer.position());
+            } while(read > 0 && buffer.hasRemaining());
+            buffer.flip();
+            Checkpoint checkpoint = readSlot(buffer);
+            if(checkpoint != null && (latest == null || checkpoint.sequenceNumber > latest.sequenceNumber)) {
+                latest = checkpoint;
+            }
+        }
+        return latest;
+    }
+
+    private static Checkpoint readSlot(ByteBuffer buffer) {
+        try {
+            if(buffer.getInt() != MAGIC) {
+                return null;
+            }
+            long sequenceNumber = buffer.getLong();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if(length < 0 || length > buffer.remaining()) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), HEADER_SIZE, length);
+            if((int) crc.getValue() != checksum) {
+                return null;
+            }
+            List<String> names = BinarySerdes.listOfString.read(buffer);
+            Map<PlayerId, String> playerNames = new EnumMap<>(PlayerId.class);
+            for(PlayerId id : PlayerId.ALL) {
+                playerNames.put(id, names.get(id.ordinal()));
+            }
+            return new Checkpoint(sequenceNumber, playerNames, BinarySerdes.gameStateSerde.read(buffer));
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+}
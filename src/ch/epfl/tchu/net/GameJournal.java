@@ -0,0 +1,312 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Journal d'une ou plusieurs parties successives, dans lequel sont ajoutés au fil du jeu toutes les décisions des joueurs
+ * et tous les tirages aléatoires, ce qui suffit à reconstituer chaque état de la partie avec <code>GameReplay</code>
+ *
+ * le journal est un fichier projeté en mémoire par régions de REGION_SIZE octets : une entrée n'est qu'une copie en mémoire
+ * de quelques octets, sans appel système, et les entrées écrites survivent à l'arrêt brutal du programme ; chaque entrée
+ * commence par un octet d'en-tête non nul, la fin du journal étant marquée par un octet nul ou par la fin du fichier
+ *
+ * les joueurs et le générateur aléatoire passés au jeu doivent être ceux retournés par <code>players</code> et <code>random</code> ;
+ * une erreur d'écriture n'interrompt pas la partie, mais met fin à l'enregistrement
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class GameJournal implements Closeable {
+
+    /**
+     * Répertoire par défaut des journaux
+     */
+    public static final Path DEFAULT_DIRECTORY = Path.of("journals");
+
+    /**
+     * Taille, en octets, des régions du fichier projetées en mémoire
+     */
+    public static final int REGION_SIZE = 1 << 16;
+
+    /**
+     * Extension des fichiers de journal
+     */
+    public static final String EXTENSION = ".tchu";
+
+    static final int MAGIC = 0x7443484A;
+    static final int VERSION = 1;
+
+    /**
+     * Types des entrées du journal ; l'octet d'en-tête d'une entrée contient l'index du type augmenté de un, suivi
+     * de l'index du joueur concerné sur le bit de poids faible
+     */
+    enum Entry {
+        RANDOM,
+        INITIAL_TICKETS,
+        TURN_KIND,
+        TICKETS,
+        SLOT,
+        ROUTE,
+        INITIAL_CLAIM_CARDS,
+        ADDITIONAL_CARDS;
+
+        static final List<Entry> ALL = List.of(values());
+
+        byte header(PlayerId playerId) {
+            return (byte) ((ordinal() + 1) << 1 | (playerId == null ? 0 : playerId.ordinal()));
+        }
+    }
+
+    private static final AtomicInteger JOURNALS_COUNT = new AtomicInteger();
+
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private ByteBuffer entryBuffer = ByteBuffer.allocate(1 << 8);
+    private boolean failed;
+
+    private GameJournal(FileChannel channel) throws IOException {
+        this.channel = channel;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+    }
+
+    /**
+     * crée, en écrasant un éventuel fichier existant, le journal des parties opposant les joueurs donnés avec les billets donnés
+     * @param file fichier du journal
+     * @param playerNames noms des joueurs
+     * @param tickets billets disponibles pour chaque partie
+     * @return le journal, ne contenant encore aucune entrée
+     * @throws IOException en cas d'erreur lors de la création du fichier
+     */
+    public static GameJournal create(Path file, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            GameJournal journal = new GameJournal(channel);
+            List<String> names = new ArrayList<>(new EnumMap<>(playerNames).values());
+            journal.write(buffer -> {
+                buffer.putInt(MAGIC);
+                buffer.put((byte) VERSION);
+                BinarySerdes.listOfString.write(names, buffer);
+                BinarySerdes.bagOfTicket.write(tickets, buffer);
+            });
+            if(journal.failed) {
+                throw new IOException();
+            }
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * crée un nouveau journal, dont le nom est unique, dans le répertoire donné, qui est créé s'il n'existe pas
+     * @param directory répertoire du journal
+     * @param playerNames noms des joueurs
+     * @param tickets billets disponibles pour chaque partie
+     * @return le journal, ne contenant encore aucune entrée
+     * @throws IOException en cas d'erreur lors de la création du répertoire ou du fichier
+     */
+    public static GameJournal createIn(Path directory, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets) throws IOException {
+        Files.createDirectories(directory);
+        String name = "game-" + System.currentTimeMillis() + "-" + ProcessHandle.current().pid() + "-" + JOURNALS_COUNT.incrementAndGet();
+        return create(directory.resolve(name + EXTENSION), playerNames, tickets);
+    }
+
+    /**
+     * retourne un générateur aléatoire tirant ses nombres du générateur donné et les enregistrant dans le journal ;
+     * seuls les tirages d'entiers bornés, les seuls utilisés par le jeu, sont permis
+     * @param rng générateur aléatoire du jeu
+     * @return le générateur aléatoire enregistrant ses tirages
+     */
+    public Random random(Random rng) {
+        return new Random() {
+            @Override
+            public int nextInt(int bound) {
+                int value = rng.nextInt(bound);
+                write(Entry.RANDOM, null, BinarySerdes.integerSerde, value);
+                return value;
+            }
+
+            @Override
+            protected int next(int bits) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * retourne les joueurs donnés, dont les décisions sont enregistrées dans le journal
+     * @param players joueurs et leurs identités
+     * @return les joueurs dont les décisions sont enregistrées
+     */
+    public Map<PlayerId, Player> players(Map<PlayerId, Player> players) {
+        Map<PlayerId, Player> recordingPlayers = new EnumMap<>(PlayerId.class);
+        players.forEach((id, player) -> recordingPlayers.put(id, new RecordingPlayer(id, player)));
+        return recordingPlayers;
+    }
+
+    /**
+     * ferme le journal en ramenant la taille du fichier à celle des entrées écrites ; une erreur lors de la fermeture
+     * est ignorée, les entrées écrites restant lisibles
+     */
+    @Override
+    public void close() {
+        long length = regionStart + region.position();
+        try {
+            region.force();
+            channel.truncate(length);
+        } catch (IOException | UncheckedIOException e) {
+            // Certains systèmes refusent de tronquer un fichier projeté : la fin du journal reste alors marquée par des zéros.
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Le journal est abandonné de toute façon.
+        }
+    }
+
+    private <E> void write(Entry entry, PlayerId playerId, BinarySerde<E> serde, E value) {
+        write(buffer -> {
+            buffer.put(entry.header(playerId));
+            serde.write(value, buffer);
+        });
+    }
+
+    // Sérialise l'entrée dans un tampon ordinaire, puis la copie dans la région projetée, en projetant la suivante si nécessaire.
+    private void write(Consumer<ByteBuffer> writer) {
+        if(failed) {
+            return;
+        }
+        while(true) {
+            try {
+                entryBuffer.clear();
+                writer.accept(entryBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                entryBuffer = ByteBuffer.allocate(entryBuffer.capacity() * 2);
+            }
+        }
+        entryBuffer.flip();
+        try {
+            if(region.remaining() < entryBuffer.remaining()) {
+                regionStart += region.position();
+                region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, entryBuffer.remaining()));
+            }
+            region.put(entryBuffer);
+        } catch (IOException e) {
+            failed = true;
+        }
+    }
+
+    // Joueur enregistrant chacune de ses décisions avant de la communiquer au jeu.
+    private final class RecordingPlayer implements Player {
+        private final PlayerId id;
+        private final Player player;
+
+        private RecordingPlayer(PlayerId id, Player player) {
+            this.id = id;
+            this.player = player;
+        }
+
+        private <E> E record(Entry entry, BinarySerde<E> serde, E value) {
+            write(entry, id, serde, value);
+            return value;
+        }
+
+        @Override
+        public void initPlayers(PlayerId ownId, Map<PlayerId, String> playerNames) {
+            player.initPlayers(ownId, playerNames);
+        }
+
+        @Override
+        public void receiveInfo(String info) {
+            player.receiveInfo(info);
+        }
+
+        @Override
+        public void updateState(PublicGameState newState, PlayerState ownState) {
+            player.updateState(newState, ownState);
+        }
+
+        @Override
+        public void setInitialTicketChoice(SortedBag<Ticket> tickets) {
+            player.setInitialTicketChoice(tickets);
+        }
+
+        @Override
+        public SortedBag<Ticket> chooseInitialTickets() {
+            return record(Entry.INITIAL_TICKETS, BinarySerdes.bagOfTicket, player.chooseInitialTickets());
+        }
+
+        @Override
+        public TurnKind nextTurn() {
+            return record(Entry.TURN_KIND, BinarySerdes.turnKindSerde, player.nextTurn());
+        }
+
+        @Override
+        public SortedBag<Ticket> chooseTickets(SortedBag<Ticket> options) {
+            return record(Entry.TICKETS, BinarySerdes.bagOfTicket, player.chooseTickets(options));
+        }
+
+        @Override
+        public int drawSlot() {
+            return record(Entry.SLOT, BinarySerdes.integerSerde, player.drawSlot());
+        }
+
+        @Override
+        public Route claimedRoute() {
+            return record(Entry.ROUTE, BinarySerdes.routeSerde, player.claimedRoute());
+        }
+
+        @Override
+        public SortedBag<Card> initialClaimCards() {
+            return record(Entry.INITIAL_CLAIM_CARDS, BinarySerdes.bagOfCard, player.initialClaimCards());
+        }
+
+        @Override
+        public SortedBag<Card> chooseAdditionalCards(List<SortedBag<Card>> options) {
+            return record(Entry.ADDITIONAL_CARDS, BinarySerdes.bagOfCard, player.chooseAdditionalCards(options));
+        }
+
+        @Override
+        public void flush() {
+            player.flush();
+        }
+
+        @Override
+        public void addSpectator(Spectator spectator) {
+            player.addSpectator(spectator);
+        }
+
+        @Override
+        public TurnKind displayEndScreen(String endMessage) {
+            return player.displayEndScreen(endMessage);
+        }
+
+        @Override
+        public void endGame() {
+            player.endGame();
+        }
+    }
+}
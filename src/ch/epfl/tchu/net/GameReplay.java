@@ -0,0 +1,269 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Partie reconstituée à partir d'un journal écrit par <code>GameJournal</code>
+ *
+ * les décisions et tirages enregistrés sont rejoués par le moteur de jeu sans interface, ce qui reconstitue exactement
+ * l'état de la partie au début de chacun de ses tours ; une partie dont le journal s'interrompt, par exemple suite
+ * à la déconnexion d'un joueur, est reconstituée jusqu'à sa dernière décision enregistrée
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class GameReplay {
+
+    private final Map<PlayerId, String> playerNames;
+    private final List<GameState> turnStates;
+    private final GameResult result;
+
+    private GameReplay(Map<PlayerId, String> playerNames, List<GameState> turnStates, GameResult result) {
+        this.playerNames = playerNames;
+        this.turnStates = Collections.unmodifiableList(turnStates);
+        this.result = result;
+    }
+
+    /**
+     * reconstitue toutes les parties enregistrées dans le journal donné, dans leur ordre de jeu
+     * @param file fichier du journal
+     * @return les parties enregistrées dans le journal
+     * @throws IOException en cas d'erreur de lecture, ou si le journal est corrompu ou ne correspond pas aux règles du jeu
+     */
+    public static List<GameReplay> read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if(buffer.getInt() != GameJournal.MAGIC || buffer.get() != GameJournal.VERSION) {
+                throw new StreamCorruptedException();
+            }
+            List<String> names = BinarySerdes.listOfString.read(buffer);
+            Map<PlayerId, String> playerNames = new EnumMap<>(PlayerId.class);
+            for(PlayerId id : PlayerId.ALL) {
+                playerNames.put(id, names.get(id.ordinal()));
+            }
+            SortedBag<Ticket> tickets = BinarySerdes.bagOfTicket.read(buffer);
+
+            EntryReader reader = new EntryReader(buffer);
+            List<GameReplay> replays = new ArrayList<>();
+            while(reader.hasNext()) {
+                replays.add(replay(reader, playerNames, tickets));
+            }
+            return replays;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new StreamCorruptedException();
+        }
+    }
+
+    private static GameReplay replay(EntryReader reader, Map<PlayerId, String> playerNames, SortedBag<Ticket> tickets) {
+        Map<PlayerId, Player> players = new EnumMap<>(PlayerId.class);
+        for(PlayerId id : PlayerId.ALL) {
+            players.put(id, new ReplayPlayer(id, reader));
+        }
+        List<GameState> turnStates = new ArrayList<>();
+        try {
+            GameResult result = GameEngine.play(players, playerNames, tickets, reader.random(), turnStates::add);
+            turnStates.add(result.finalState());
+            return new GameReplay(playerNames, turnStates, result);
+        } catch (EndOfJournalException e) {
+            reader.skipToEnd();
+            return new GameReplay(playerNames, turnStates, null);
+        }
+    }
+
+    /**
+     * retourne les noms des joueurs
+     * @return les noms des joueurs
+     */
+    public Map<PlayerId, String> playerNames() {
+        return playerNames;
+    }
+
+    /**
+     * retourne la liste non modifiable des états de la partie au début de chacun de ses tours, suivis de son état final
+     * si elle s'est terminée
+     * @return les états successifs de la partie
+     */
+    public List<GameState> turnStates() {
+        return turnStates;
+    }
+
+    /**
+     * retourne l'état de la partie au début du tour d'index donné
+     * @param turn index du tour, à partir de 0
+     * @return l'état de la partie au début du tour d'index donné
+     * @throws IndexOutOfBoundsException si la partie ne compte pas autant de tours
+     */
+    public GameState stateAt(int turn) {
+        return turnStates.get(turn);
+    }
+
+    /**
+     * retourne vrai ssi la partie s'est terminée normalement
+     * @return vrai ssi la partie s'est terminée normalement
+     */
+    public boolean isComplete() {
+        return result != null;
+    }
+
+    /**
+     * retourne le résultat de la partie
+     * @return le résultat de la partie
+     * @throws IllegalStateException si le journal de la partie s'interrompt avant sa fin
+     */
+    public GameResult result() {
+        if(result == null) {
+            throw new IllegalStateException();
+        }
+        return result;
+    }
+
+    // Signale que le journal s'interrompt avant la fin de la partie en cours.
+    private static final class EndOfJournalException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private EndOfJournalException() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Lit les entrées du journal dans l'ordre, en vérifiant que chacune est celle attendue par le jeu.
+    private static final class EntryReader {
+        private final MappedByteBuffer buffer;
+
+        private EntryReader(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private boolean hasNext() {
+            return buffer.hasRemaining() && buffer.get(buffer.position()) != 0;
+        }
+
+        private void skipToEnd() {
+            buffer.position(buffer.limit());
+        }
+
+        private <E> E read(GameJournal.Entry entry, PlayerId playerId, BinarySerde<E> serde) {
+            if(!hasNext()) {
+                throw new EndOfJournalException();
+            }
+            if(buffer.get() != entry.header(playerId)) {
+                throw new UncheckedIOException(new StreamCorruptedException());
+            }
+            return serde.read(buffer);
+        }
+
+        private Random random() {
+            return new Random() {
+                @Override
+                public int nextInt(int bound) {
+                    int value = read(GameJournal.Entry.RANDOM, null, BinarySerdes.integerSerde);
+                    if(value < 0 || value >= bound) {
+                        throw new UncheckedIOException(new StreamCorruptedException());
+                    }
+                    return value;
+                }
+
+                @Override
+                protected int next(int bits) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    // Joueur rejouant les décisions enregistrées dans le journal.
+    private static final class ReplayPlayer implements Player {
+        private final PlayerId id;
+        private final EntryReader reader;
+
+        private ReplayPlayer(PlayerId id, EntryReader reader) {
+            this.id = id;
+            this.reader = reader;
+        }
+
+        @Override
+        public void initPlayers(PlayerId ownId, Map<PlayerId, String> playerNames) {
+        }
+
+        @Override
+        public void receiveInfo(String info) {
+        }
+
+        @Override
+        public void updateState(PublicGameState newState, PlayerState ownState) {
+        }
+
+        @Override
+        public void setInitialTicketChoice(SortedBag<Ticket> tickets) {
+        }
+
+        @Override
+        public SortedBag<Ticket> chooseInitialTickets() {
+            return reader.read(GameJournal.Entry.INITIAL_TICKETS, id, BinarySerdes.bagOfTicket);
+        }
+
+        @Override
+        public TurnKind nextTurn() {
+            return reader.read(GameJournal.Entry.TURN_KIND, id, BinarySerdes.turnKindSerde);
+        }
+
+        @Override
+        public SortedBag<Ticket> chooseTickets(SortedBag<Ticket> options) {
+            return reader.read(GameJournal.Entry.TICKETS, id, BinarySerdes.bagOfTicket);
+        }
+
+        @Override
+        public int drawSlot() {
+            return reader.read(GameJournal.Entry.SLOT, id, BinarySerdes.integerSerde);
+        }
+
+        @Override
+        public Route claimedRoute() {
+            return reader.read(GameJournal.Entry.ROUTE, id, BinarySerdes.routeSerde);
+        }
+
+        @Override
+        public SortedBag<Card> initialClaimCards() {
+            return reader.read(GameJournal.Entry.INITIAL_CLAIM_CARDS, id, BinarySerdes.bagOfCard);
+        }
+
+        @Override
+        public SortedBag<Card> chooseAdditionalCards(List<SortedBag<Card>> options) {
+            return reader.read(GameJournal.Entry.ADDITIONAL_CARDS, id, BinarySerdes.bagOfCard);
+        }
+
+        @Override
+        public void addSpectator(Spectator spectator) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TurnKind displayEndScreen(String endMessage) {
+            return TurnKind.QUIT;
+        }
+
+        @Override
+        public void endGame() {
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.Preconditions;
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.file.Path;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serveur hébergeant un nombre quelconque de parties simultanées : les clients qui se connectent sont associés deux à deux,
+ * dans leur ordre d'arrivée, et chaque paire joue une partie
+ *
+ * un unique fil, celui du sélecteur, accepte les connexions, négocie les versions du protocole et effectue toutes les lectures
+ * et écritures sur les prises ; chaque partie est jouée par <code>Game</code>, comme sur le serveur d'une seule partie, dans un fil
+ * à petite pile, qui n'est jamais bloqué par une entrée/sortie mais seulement dans l'attente de la réponse d'un joueur ; le nombre de ces fils est borné,
+ * et tous sont interrompus à la fermeture du serveur
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class GameServer implements Closeable {
+
+    /**
+     * Taille, en octets, de la pile des fils exécutant les parties
+     */
+    public static final long GAME_THREAD_STACK_SIZE = 256 * 1024;
+
+    /**
+     * Port d'écoute par défaut, celui du serveur d'une seule partie
+     */
+    public static final int DEFAULT_PORT = 5108;
+
+    /**
+     * Nombre maximum par défaut de parties jouées simultanément
+     */
+    public static final int DEFAULT_MAX_GAMES = 4096;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Map<PlayerId, String> playerNames;
+    private final Path journalDirectory;
+    private final ExecutorService games;
+
+    private final Queue<ServerConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final Queue<ServerConnection> negotiating = new ArrayDeque<>();
+    private ServerConnection waitingPlayer;
+
+    private final AtomicInteger activeGamesCount = new AtomicInteger();
+    private volatile boolean running = true;
+
+    /**
+     * construit un serveur écoutant sur le port donné, dont les parties opposent des joueurs portant les noms donnés
+     * et qui joue au plus DEFAULT_MAX_GAMES parties simultanément
+     * @param port port d'écoute, ou 0 pour un port libre quelconque
+     * @param playerNames noms des joueurs de chaque partie
+     * @throws IOException si le port ne peut pas être ouvert
+     */
+    public GameServer(int port, Map<PlayerId, String> playerNames) throws IOException {
+        this(port, playerNames, DEFAULT_MAX_GAMES);
+    }
+
+    /**
+     * construit un serveur écoutant sur le port donné, dont les parties opposent des joueurs portant les noms donnés ;
+     * les paires de clients formées au-delà du nombre maximum de parties simultanées attendent qu'une partie se termine
+     * @param port port d'écoute, ou 0 pour un port libre quelconque
+     * @param playerNames noms des joueurs de chaque partie
+     * @param maxGames nombre maximum de parties jouées simultanément, qui borne le nombre de fils et donc la mémoire utilisée
+     * @throws IOException si le port ne peut pas être ouvert
+     * @throws IllegalArgumentException si le nombre maximum de parties n'est pas strictement positif
+     */
+    public GameServer(int port, Map<PlayerId, String> playerNames, int maxGames) throws IOException {
+        this(port, playerNames, maxGames, null);
+    }
+
+    /**
+     * construit un serveur écoutant sur le port donné, dont les parties opposent des joueurs portant les noms donnés
+     * et sont chacune enregistrées dans un journal du répertoire donné
+     * @param port port d'écoute, ou 0 pour un port libre quelconque
+     * @param playerNames noms des joueurs de chaque partie
+     * @param maxGames nombre maximum de parties jouées simultanément, qui borne le nombre de fils et donc la mémoire utilisée
+     * @param journalDirectory répertoire des journaux des parties, ou null pour ne pas les enregistrer
+     * @throws IOException si le port ne peut pas être ouvert
+     * @throws IllegalArgumentException si le nombre maximum de parties n'est pas strictement positif
+     */
+    public GameServer(int port, Map<PlayerId, String> playerNames, int maxGames, Path journalDirectory) throws IOException {
+        Preconditions.checkArgument(maxGames > 0);
+        this.playerNames = Map.copyOf(playerNames);
+        this.journalDirectory = journalDirectory;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        AtomicInteger threadsCount = new AtomicInteger();
+        games = Executors.newFixedThreadPool(maxGames, runnable ->
+                new Thread(null, runnable, "tchu-game-" + threadsCount.incrementAndGet(), GAME_THREAD_STACK_SIZE));
+    }
+
+    /**
+     * lance le serveur sur le port donné en argument, ou sur le port par défaut de tCHu, en enregistrant chaque partie
+     * dans le répertoire par défaut des journaux
+     * @param args le port d'écoute (facultatif)
+     * @throws IOException en cas d'erreur du sélecteur
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        new GameServer(port, Map.of(PlayerId.PLAYER_1, "Ada", PlayerId.PLAYER_2, "Charles"), DEFAULT_MAX_GAMES,
+                GameJournal.DEFAULT_DIRECTORY).run();
+    }
+
+    /**
+     * retourne le port sur lequel le serveur écoute
+     * @return le port sur lequel le serveur écoute
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * retourne le nombre de parties en cours
+     * @return le nombre de parties en cours
+     */
+    public int activeGamesCount() {
+        return activeGamesCount.get();
+    }
+
+    /**
+     * exécute la boucle du sélecteur jusqu'à la fermeture du serveur, puis libère toutes ses ressources
+     * @throws IOException en cas d'erreur du sélecteur ou de la prise d'écoute
+     */
+    public void run() throws IOException {
+        try {
+            loop();
+        } finally {
+            games.shutdownNow();
+            for(SelectionKey key : new ArrayList<>(selector.keys())) {
+                if(key.attachment() instanceof ServerConnection) {
+                    ((ServerConnection) key.attachment()).close();
+                }
+            }
+            serverChannel.close();
+            selector.close();
+        }
+    }
+
+    private void loop() throws IOException {
+        while(running) {
+            ServerConnection first = negotiating.peek();
+            long timeout = first == null ? 0 : Math.max(1, first.negotiationDeadline() - System.currentTimeMillis());
+            selector.select(timeout);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if(!key.isValid()) {
+                    continue;
+                }
+                if(key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                ServerConnection connection = (ServerConnection) key.attachment();
+                try {
+                    if(key.isReadable() && !connection.read()) {
+                        disconnected(connection);
+                        continue;
+                    }
+                    if(key.isValid() && key.isWritable()) {
+                        write(connection);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    disconnected(connection);
+                }
+            }
+
+            ServerConnection connection;
+            while((connection = pendingWrites.poll()) != null) {
+                try {
+                    write(connection);
+                } catch (IOException e) {
+                    disconnected(connection);
+                }
+            }
+            expireNegotiations();
+        }
+    }
+
+    /**
+     * arrête le serveur : la boucle du sélecteur se termine, puis ferme la prise d'écoute et toutes les connexions
+     * et interrompt les parties en cours
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * demande au fil du sélecteur d'écrire les données en attente de la connexion donnée
+     * @param connection connexion ayant des données à envoyer
+     */
+    void requestWrite(ServerConnection connection) {
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * associe la connexion donnée, dont la négociation vient d'aboutir, au client en attente s'il y en a un,
+     * et sinon la met en attente ; appelée uniquement par le fil du sélecteur
+     * @param connection connexion dont la négociation vient d'aboutir
+     * @param protocol version du protocole négociée
+     */
+    void negotiated(ServerConnection connection, Protocol protocol) {
+        connection.negotiated(protocol);
+        pendingWrites.add(connection);
+        if(waitingPlayer == null) {
+            waitingPlayer = connection;
+            return;
+        }
+        ServerConnection opponent = waitingPlayer;
+        waitingPlayer = null;
+        opponent.startPlaying();
+        connection.startPlaying();
+        games.execute(() -> play(opponent, connection));
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if(channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ServerConnection connection = new ServerConnection(channel, this, System.currentTimeMillis() + Connection.NEGOTIATION_TIMEOUT);
+        channel.register(selector, SelectionKey.OP_READ, connection);
+        negotiating.add(connection);
+    }
+
+    // Les clients n'ayant rien proposé avant la fin du délai de négociation parlent le protocole textuel d'origine.
+    private void expireNegotiations() {
+        long now = System.currentTimeMillis();
+        while(!negotiating.isEmpty() && (negotiating.peek().state() != ServerConnection.State.NEGOTIATING
+                || negotiating.peek().negotiationDeadline() <= now)) {
+            ServerConnection connection = negotiating.poll();
+            if(connection.state() != ServerConnection.State.NEGOTIATING) {
+                continue;
+            }
+            // La proposition du client a pu arriver depuis la dernière sélection : elle est lue avant de conclure à son absence.
+            try {
+                if(!connection.read()) {
+                    disconnected(connection);
+                    continue;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                disconnected(connection);
+                continue;
+            }
+            if(connection.state() == ServerConnection.State.NEGOTIATING) {
+                negotiated(connection, Protocol.TEXT);
+            }
+        }
+    }
+
+    private void write(ServerConnection connection) throws IOException {
+        SelectionKey key = connection.channel().keyFor(selector);
+        if(key == null || !key.isValid()) {
+            return;
+        }
+        boolean written = connection.writePending();
+        if(written && connection.isClosing()) {
+            connection.close();
+            return;
+        }
+        key.interestOps(written ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void disconnected(ServerConnection connection) {
+        if(waitingPlayer == connection) {
+            waitingPlayer = null;
+        }
+        connection.close();
+    }
+
+    // Fait jouer les deux clients donnés, qui reçoivent toutes les informations de la partie et peuvent en rejouer d'autres
+    // depuis leur écran de fin, puis ferme leurs connexions.
+    private void play(ServerConnection connection1, ServerConnection connection2) {
+        activeGamesCount.incrementAndGet();
+        Map<PlayerId, Player> players = Map.of(PlayerId.PLAYER_1, new RemotePlayerProxy(connection1),
+                PlayerId.PLAYER_2, new RemotePlayerProxy(connection2));
+        SortedBag<Ticket> tickets = SortedBag.of(ChMap.tickets());
+        Random rng = new Random();
+        GameJournal journal = null;
+        if(journalDirectory != null) {
+            try {
+                journal = GameJournal.createIn(journalDirectory, playerNames, tickets);
+                players = journal.players(players);
+                rng = journal.random(rng);
+            } catch (IOException e) {
+                // La partie est jouée sans être enregistrée.
+            }
+        }
+        try {
+            Game.play(players, playerNames, tickets, rng, null, gameState -> {}, () -> {}, () -> {});
+        } catch (RuntimeException e) {
+            // L'un des clients s'est déconnecté ou a envoyé une réponse invalide, que les mandataires ne peuvent pas toutes
+            // détecter : la partie est abandonnée sans interrompre les autres.
+        } finally {
+            if(journal != null) {
+                journal.close();
+            }
+            activeGamesCount.decrementAndGet();
+            connection1.closeAfterFlush();
+            connection2.closeAfterFlush();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ch.epfl.tchu.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message à envoyer sur une connexion : son type (absent pour une réponse) et ses arguments, accompagnés de leur codec,
+ * qui ne sont sérialisés qu'à l'envoi, dans la version du protocole de la connexion
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class Message {
+
+    private final MessageId messageId;
+    private final List<Argument<?>> arguments = new ArrayList<>();
+
+    private Message(MessageId messageId) {
+        this.messageId = messageId;
+    }
+
+    /**
+     * retourne un nouveau message du type donné, sans arguments
+     * @param messageId type du message
+     * @return un nouveau message du type donné, sans arguments
+     */
+    public static Message of(MessageId messageId) {
+        return new Message(messageId);
+    }
+
+    /**
+     * retourne une nouvelle réponse, c.-à-d. un message sans type, sans arguments
+     * @return une nouvelle réponse sans arguments
+     */
+    public static Message reply() {
+        return new Message(null);
+    }
+
+    /**
+     * ajoute au message l'argument donné
+     * @param codec codec de l'argument
+     * @param value valeur de l'argument
+     * @param <E> type de l'argument
+     * @return le message
+     */
+    public <E> Message with(Codec<E> codec, E value) {
+        arguments.add(new Argument<>(codec, value));
+        return this;
+    }
+
+    /**
+     * retourne la ligne représentant le message dans le protocole textuel, sans retour à la ligne
+     * @return la ligne représentant le message dans le protocole textuel
+     */
+    String toText() {
+        StringBuilder builder = new StringBuilder();
+        writeText(builder);
+        return builder.toString();
+    }
+
+    /**
+     * écrit la ligne représentant le message dans le protocole textuel, sans retour à la ligne, à la suite du StringBuilder donné
+     * @param builder StringBuilder dans lequel écrire
+     */
+    void writeText(StringBuilder builder) {
+        if(messageId != null) {
+            builder.append(messageId.name()).append(' ');
+        }
+        for(int i = 0; i < arguments.size(); ++i) {
+            if(i != 0) builder.append(' ');
+            arguments.get(i).writeText(builder);
+        }
+    }
+
+    /**
+     * écrit le contenu de la trame représentant le message dans le protocole binaire
+     * @param buffer tampon dans lequel écrire
+     * @throws java.nio.BufferOverflowException si le tampon n'est pas assez grand
+     */
+    void writeBinary(ByteBuffer buffer) {
+        if(messageId != null) {
+            BinarySerde.writeVarInt(messageId.ordinal(), buffer);
+        }
+        arguments.forEach(argument -> argument.write(buffer));
+    }
+
+    private static final class Argument<E> {
+        private final Codec<E> codec;
+        private final E value;
+
+        private Argument(Codec<E> codec, E value) {
+            this.codec = codec;
+            this.value = value;
+        }
+
+        private void writeText(StringBuilder builder) {
+            codec.text().serialize(value, builder);
+        }
+
+        private void write(ByteBuffer buffer) {
+            codec.binary().write(value, buffer);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ch.epfl.tchu.net;
+
+import java.io.IOException;
+
+/**
+ * Canal par lequel un mandataire échange des messages avec son client : une connexion bloquante sur une prise,
+ * ou une connexion gérée par le sélecteur du serveur multi-parties
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+interface MessageChannel {
+
+    /**
+     * retourne la version du protocole utilisée par le canal
+     * @return la version du protocole utilisée par le canal
+     */
+    Protocol protocol();
+
+    /**
+     * sérialise et écrit, sans l'envoyer, le message donné
+     * @param message message à envoyer
+     */
+    void send(Message message);
+
+    /**
+     * envoie tous les messages écrits depuis le dernier envoi
+     */
+    void flush();
+
+    /**
+     * envoie les messages en attente puis attend et retourne la prochaine réponse reçue
+     * @return la prochaine réponse reçue, ou null si la connexion a été fermée par l'autre partie
+     * @throws IOException en cas d'erreur de lecture
+     */
+    ReceivedMessage receiveReply() throws IOException;
+}
@@ -1,5 +1,7 @@
 package ch.epfl.tchu.net;
 
+import java.util.List;
+
 /**
  * Énumération des types de messages que le serveur peut envoyer aux clients
  *  @author Thibault Czarniak (327577)
@@ -21,6 +23,15 @@ public enum MessageId {
     // -- BONUS --
     INIT_SPECTATOR,
     DISPLAY_END,
-    END
+    END,
     // -- BONUS --
+    /** négociation de la version du protocole, envoyé par le client puis par le serveur à l'établissement de la connexion */
+    HELLO,
+    /** changement d'état communiqué par différence avec le dernier état envoyé */
+    UPDATE_STATE_DELTA;
+
+    /**
+     * liste immuable de tous les membres de l'énumération
+     */
+    public static final List<MessageId> ALL = List.of(MessageId.values());
 }
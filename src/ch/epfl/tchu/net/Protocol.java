@@ -0,0 +1,69 @@
+package ch.epfl.tchu.net;
+
+import java.util.List;
+
+/**
+ * Énumération des versions du protocole de communication entre serveur et clients, négociée à l'établissement de chaque connexion
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public enum Protocol {
+
+    /** Protocole textuel d'origine : une ligne par message, arguments sérialisés par Serdes et séparés par des espaces */
+    TEXT(1),
+    /** Protocole binaire : une trame par message, précédée de sa longueur, arguments sérialisés par BinarySerdes */
+    BINARY(2),
+    /** Protocole binaire dans lequel les changements d'état sont communiqués par différence avec le dernier état envoyé */
+    DELTA(3);
+
+    /**
+     * liste immuable de tous les membres de l'énumération
+     */
+    public static final List<Protocol> ALL = List.of(Protocol.values());
+
+    /**
+     * version la plus récente du protocole, proposée par les clients
+     */
+    public static final Protocol LATEST = DELTA;
+
+    private final int version;
+
+    Protocol(int version) {
+        this.version = version;
+    }
+
+    /**
+     * retourne le numéro de version du protocole
+     * @return le numéro de version du protocole
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * retourne vrai ssi les changements d'état peuvent être communiqués par différence dans cette version du protocole
+     * @return vrai ssi les changements d'état peuvent être communiqués par différence
+     */
+    public boolean supportsStateDeltas() {
+        return version >= DELTA.version;
+    }
+
+    /**
+     * retourne la version la plus récente du protocole dont le numéro ne dépasse pas celui donné
+     * @param version numéro de version proposé par l'autre partie
+     * @return la version la plus récente du protocole dont le numéro ne dépasse pas celui donné
+     * @throws IllegalArgumentException si aucune version n'a un numéro inférieur ou égal à celui donné
+     */
+    public static Protocol upTo(int version) {
+        Protocol protocol = null;
+        for(Protocol p : ALL) {
+            if(p.version <= version) {
+                protocol = p;
+            }
+        }
+        if(protocol == null) {
+            throw new IllegalArgumentException();
+        }
+        return protocol;
+    }
+}
@@ -0,0 +1,75 @@
+package ch.epfl.tchu.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Message reçu sur une connexion, dont les arguments sont désérialisés un à un, dans l'ordre, au moyen de leur codec
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class ReceivedMessage {
+
+    private final MessageId messageId;
+    private final String line;
+    private final ByteBuffer frame;
+    private int position;
+
+    private ReceivedMessage(MessageId messageId, String line, ByteBuffer frame, int position) {
+        this.messageId = messageId;
+        this.line = line;
+        this.frame = frame;
+        this.position = position;
+    }
+
+    /**
+     * retourne le message représenté par la ligne donnée du protocole textuel
+     * @param line ligne reçue, sans retour à la ligne
+     * @param withId vrai ssi la ligne commence par le type du message, faux s'il s'agit d'une réponse
+     * @return le message représenté par la ligne donnée
+     * @throws IllegalArgumentException si le type du message est inconnu
+     */
+    static ReceivedMessage ofText(String line, boolean withId) {
+        if(!withId) {
+            return new ReceivedMessage(null, line, null, 0);
+        }
+        int end = line.indexOf(' ');
+        end = end == -1 ? line.length() : end;
+        return new ReceivedMessage(MessageId.valueOf(line.substring(0, end)), line, null, end + 1);
+    }
+
+    /**
+     * retourne le message représenté par le contenu donné d'une trame du protocole binaire
+     * @param frame contenu de la trame reçue
+     * @param withId vrai ssi la trame commence par le type du message, faux s'il s'agit d'une réponse
+     * @return le message représenté par le contenu donné
+     */
+    static ReceivedMessage ofBinary(ByteBuffer frame, boolean withId) {
+        MessageId messageId = withId ? MessageId.ALL.get(BinarySerde.readVarInt(frame)) : null;
+        return new ReceivedMessage(messageId, null, frame, 0);
+    }
+
+    /**
+     * retourne le type du message
+     * @return le type du message, ou null s'il s'agit d'une réponse
+     */
+    public MessageId id() {
+        return messageId;
+    }
+
+    /**
+     * désérialise et retourne l'argument suivant du message
+     * @param codec codec de l'argument
+     * @param <E> type de l'argument
+     * @return l'argument suivant du message
+     */
+    public <E> E next(Codec<E> codec) {
+        if(frame != null) {
+            return codec.binary().read(frame);
+        }
+        int start = Math.min(position, line.length());
+        int end = line.indexOf(' ', start);
+        end = end == -1 ? line.length() : end;
+        position = end + 1;
+        return codec.text().deserialize(line, start, end);
+    }
+}
@@ -8,16 +8,16 @@ import ch.epfl.tchu.gui.Helper;
 import ch.epfl.tchu.gui.Main;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
-import java.io.*;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static javafx.application.Platform.runLater;
 
 /**
@@ -27,9 +27,20 @@ import static javafx.application.Platform.runLater;
  */
 public final class RemotePlayerClient {
 
+    /**
+     * Durée maximale, en millisecondes, des tentatives de reconnexion au serveur après une perte de la connexion en cours de partie
+     */
+    public static final int RECONNECT_TIMEOUT = 60_000;
+
+    /**
+     * Délai, en millisecondes, entre deux tentatives de reconnexion au serveur
+     */
+    public static final int RECONNECT_INTERVAL = 1000;
+
     private final Player player;
     private final String hostName;
     private final int port;
+    private boolean gameInProgress;
 
     /**
      * Construit un client de joueur distant
@@ -45,112 +56,139 @@ public final class RemotePlayerClient {
     }
 
     /**
-     * Effectue une boucle durant laquelle :
+     * Négocie la version du protocole avec le mandataire, puis effectue une boucle durant laquelle :
      *   - on attend un message en provenance du mandataire
-     *   - on découpe ce message en utilisant le caractère d'espacement comme séparateur
-     *   - on détermine le type du message en fonction de la première chaîne résultant du découpage
+     *   - on détermine le type du message, qui figure en tête de celui-ci
      *   - en fonction de ce type de message :
      *        - on désérialise les arguments
      *        - on appelle la méthode correspondante du joueur
      *        - si cette méthode retourne un résultat, on le sérialise pour le renvoyer au mandataire en réponse
+     *
+     * si la connexion est perdue en cours de partie, la partie est terminée pour le joueur et le client tente de se reconnecter
+     * au même serveur durant RECONNECT_TIMEOUT millisecondes, afin que celui-ci puisse reprendre la partie à son dernier
+     * point de contrôle
      */
     public void run() {
-        String message;
-        try (Socket s = new Socket(hostName,port)){
+        try {
+            play(new Socket(hostName, port));
+            //----------BONUS----------
+            while(gameInProgress) {
+                gameInProgress = false;
+                player.endGame();
+                play(reconnect());
+            }
+            //-------------------------
+        } catch (IOException e) {
+            //----------BONUS----------
+            Platform.runLater(Main::createHomeWindow);
+            Helper.showGameNotFoundWindow();
+            //-------------------------
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            BufferedReader r = new BufferedReader(
-                    new InputStreamReader(s.getInputStream(), UTF_8)
-            );
+    // Joue avec le serveur connecté à la prise donnée jusqu'à ce qu'il ferme la connexion ; une perte de la connexion en cours
+    // de partie n'est pas une erreur, gameInProgress restant alors vrai.
+    private void play(Socket socket) throws IOException {
+        ReceivedMessage message;
+        try (Socket s = socket){
 
-            while((message = r.readLine()) != null){
-                String[] splitMessage = message.split(Pattern.quote(" "));
-                MessageId messageId = MessageId.valueOf(splitMessage[0]);
-                switch(messageId){
+            Connection connection = Connection.connect(s);
+            StateTracker stateTracker = new StateTracker();
+
+            while((message = connection.receiveMessage()) != null){
+                switch(message.id()){
                     case INIT_PLAYERS:
-                        PlayerId ownId = Serdes.playerIdSerde.deserialize(splitMessage[1]);
-                        List<String> names = Serdes.listOfString.deserialize(splitMessage[2]);
+                        PlayerId ownId = message.next(Codecs.playerIdCodec);
+                        List<String> names = message.next(Codecs.listOfString);
                         Map<PlayerId, String> playerNames = new EnumMap<>(PlayerId.class);
                         for (PlayerId playerId: PlayerId.ALL) {
                             playerNames.put(playerId, names.get(playerId.ordinal()));
                         }
 
                         player.initPlayers(ownId, playerNames);
+                        gameInProgress = true;
                         break;
                     case RECEIVE_INFO:
-                        String info = Serdes.stringSerde.deserialize(splitMessage[1]);
+                        String info = message.next(Codecs.stringCodec);
                         player.receiveInfo(info);
                         break;
                     case UPDATE_STATE:
-                        PublicGameState PGS = Serdes.publicGameStateSerde.deserialize(splitMessage[1]);
-                        PlayerState PS = Serdes.playerStateSerde.deserialize(splitMessage[2]);
-                        player.updateState(PGS, PS);
+                    case UPDATE_STATE_DELTA:
+                        stateTracker.receive(message);
+                        player.updateState(stateTracker.gameState(), stateTracker.playerState());
                         break;
                     case SET_INITIAL_TICKETS:
-                        SortedBag<Ticket> tickets = Serdes.bagOfTicket.deserialize(splitMessage[1]);
+                        SortedBag<Ticket> tickets = message.next(Codecs.bagOfTicket);
                         player.setInitialTicketChoice(tickets);
                         break;
                     case CHOOSE_INITIAL_TICKETS:
-                        String chosenInitialTickets = Serdes.bagOfTicket.serialize(player.chooseInitialTickets());
-                        sendMessage(chosenInitialTickets, s);
+                        sendReply(Codecs.bagOfTicket, player.chooseInitialTickets(), connection);
                         break;
                     case NEXT_TURN:
-                        String turnKind = Serdes.turnKindSerde.serialize(player.nextTurn());
-                        sendMessage(turnKind, s);
+                        sendReply(Codecs.turnKindCodec, player.nextTurn(), connection);
                         break;
                     case CHOOSE_TICKETS:
-                        SortedBag<Ticket> options = Serdes.bagOfTicket.deserialize(splitMessage[1]);
-                        String chosenTickets = Serdes.bagOfTicket.serialize(player.chooseTickets(options));
-                        sendMessage(chosenTickets, s);
+                        SortedBag<Ticket> options = message.next(Codecs.bagOfTicket);
+                        sendReply(Codecs.bagOfTicket, player.chooseTickets(options), connection);
                         break;
                     case DRAW_SLOT:
-                        String slot = Serdes.integerSerde.serialize(player.drawSlot());
-                        sendMessage(slot, s);
+                        sendReply(Codecs.integerCodec, player.drawSlot(), connection);
                         break;
                     case ROUTE:
-                        String route = Serdes.routeSerde.serialize(player.claimedRoute());
-                        sendMessage(route, s);
+                        sendReply(Codecs.routeCodec, player.claimedRoute(), connection);
                         break;
                     case CARDS:
-                        String cards = Serdes.bagOfCard.serialize(player.initialClaimCards());
-                        sendMessage(cards, s);
+                        sendReply(Codecs.bagOfCard, player.initialClaimCards(), connection);
                         break;
                     case CHOOSE_ADDITIONAL_CARDS:
-                        List<SortedBag<Card>> opts = Serdes.listOfBagOfCard.deserialize(splitMessage[1]);
-                        String chosenAdditionalCards = Serdes.bagOfCard.serialize(player.chooseAdditionalCards(opts));
-                        sendMessage(chosenAdditionalCards, s);
+                        List<SortedBag<Card>> opts = message.next(Codecs.listOfBagOfCard);
+                        sendReply(Codecs.bagOfCard, player.chooseAdditionalCards(opts), connection);
                         break;
                     case DISPLAY_END:
-                        String endMessage = Serdes.stringSerde.deserialize(splitMessage[1]);
+                        String endMessage = message.next(Codecs.stringCodec);
                         Player.TurnKind choice = player.displayEndScreen(endMessage);
-                        String sChoice = Serdes.turnKindSerde.serialize(choice);
-                        sendMessage(sChoice, s);
+                        sendReply(Codecs.turnKindCodec, choice, connection);
                         break;
                     case END:
+                        gameInProgress = false;
                         player.endGame();
                         break;
                 }
 
             }
-
-
-        } catch (IOException e) {
-            //----------BONUS----------
-            Platform.runLater(Main::createHomeWindow);
-            Helper.showGameNotFoundWindow();
-            //-------------------------
-            throw new UncheckedIOException(e);
+        } catch (IOException | UncheckedIOException e) {
+            if(!gameInProgress) {
+                throw e;
+            }
         }
     }
 
-    private static void sendMessage(String message, Socket socket){
-        try{
-            BufferedWriter w = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8));
-            w.write(message);
-            w.write('\n');
-            w.flush();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+    //----------BONUS----------
+    // Tente de se reconnecter au serveur toutes les RECONNECT_INTERVAL millisecondes, jusqu'à RECONNECT_TIMEOUT millisecondes.
+    private Socket reconnect() throws IOException {
+        long deadline = System.currentTimeMillis() + RECONNECT_TIMEOUT;
+        while(true) {
+            try {
+                return new Socket(hostName, port);
+            } catch (IOException e) {
+                if(System.currentTimeMillis() + RECONNECT_INTERVAL > deadline) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
         }
     }
+    //-------------------------
+
+    private static <E> void sendReply(Codec<E> codec, E value, Connection connection){
+        connection.send(Message.reply().with(codec, value));
+        connection.flush();
+    }
 
 }
@@ -1,15 +1,17 @@
 package ch.epfl.tchu.net;
 
+import ch.epfl.tchu.Preconditions;
 import ch.epfl.tchu.SortedBag;
 import ch.epfl.tchu.game.*;
 
-import java.io.*;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Classe représentant le mandataire du joueur à distance
@@ -18,44 +20,60 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  */
 
 public final class RemotePlayerProxy implements Player {
-    private final Socket socket;
+    private final MessageChannel connection;
+    private final StateTracker stateTracker = new StateTracker();
+    // Billets distribués au joueur en début de partie, parmi lesquels il doit choisir ceux qu'il garde.
+    private SortedBag<Ticket> initialTickets;
 
     /**
      * Construit un mandataire de joueur distant
-     * @param socket la "prise" que le mandataire utilise pour communiquer à travers le réseau avec le client par échange de messages textuels
+     * @param socket la "prise" que le mandataire utilise pour communiquer à travers le réseau avec le client,
+     *               dans la version du protocole négociée avec lui
+     * @throws UncheckedIOException en cas d'erreur lors de la négociation
      */
     public RemotePlayerProxy(Socket socket){
-        this.socket = socket;
-    }
-
-    private void sendMessage(MessageId messageId, String... messageStrings){
-        try{
-            BufferedWriter w = new BufferedWriter(
-                    new OutputStreamWriter(socket.getOutputStream(), UTF_8));
-            w.write(messageId.name() + " ");
-            String args = String.join(" ", messageStrings);
-            w.write(args);
-            w.write('\n');
-            w.flush();
-        } catch (IOException e){
-            throw new UncheckedIOException(e);
-        }
+        this(accept(socket));
+    }
 
+    /**
+     * Construit un mandataire de joueur distant communiquant au moyen de la connexion donnée
+     * @param connection la connexion que le mandataire utilise pour communiquer à travers le réseau avec le client
+     */
+    public RemotePlayerProxy(Connection connection){
+        this((MessageChannel) connection);
     }
 
-    private String receiveMessage() {
-        String serialized;
-        try{
+    /**
+     * Construit un mandataire de joueur distant communiquant au moyen du canal donné
+     * @param connection le canal que le mandataire utilise pour communiquer avec le client
+     */
+    RemotePlayerProxy(MessageChannel connection){
+        this.connection = connection;
+    }
 
-            BufferedReader r = new BufferedReader(
-                    new InputStreamReader(socket.getInputStream(), UTF_8)
-            );
+    private static Connection accept(Socket socket){
+        try {
+            return Connection.accept(socket);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            serialized = r.readLine();
+    // Les messages n'attendant pas de réponse sont seulement écrits : ils sont envoyés par flush, ou avant la prochaine requête.
+    private void sendMessage(Message message){
+        connection.send(message);
+    }
+
+    private <E> E receiveReply(Codec<E> codec) {
+        try {
+            ReceivedMessage reply = connection.receiveReply();
+            if(reply == null) {
+                throw new EOFException();
+            }
+            return reply.next(codec);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        return serialized;
     }
 
     /**
@@ -65,10 +83,10 @@ public final class RemotePlayerProxy implements Player {
      */
     @Override
     public void initPlayers(PlayerId ownId, Map<PlayerId, String> playerNames) {
-        String playerIdString = Serdes.playerIdSerde.serialize(ownId);
         Map<PlayerId, String> sortedPlayerNames = new EnumMap<>(playerNames);
-        String playerNamesSerialized = Serdes.listOfString.serialize(new ArrayList<>(sortedPlayerNames.values()));
-        sendMessage(MessageId.INIT_PLAYERS, playerIdString, playerNamesSerialized);
+        sendMessage(Message.of(MessageId.INIT_PLAYERS)
+                .with(Codecs.playerIdCodec, ownId)
+                .with(Codecs.listOfString, new ArrayList<>(sortedPlayerNames.values())));
     }
 
     /**
@@ -77,8 +95,7 @@ public final class RemotePlayerProxy implements Player {
      */
     @Override
     public void receiveInfo(String info) {
-        String s = Serdes.stringSerde.serialize(info);
-        sendMessage(MessageId.RECEIVE_INFO, s);
+        sendMessage(Message.of(MessageId.RECEIVE_INFO).with(Codecs.stringCodec, info));
     }
 
     /**
@@ -88,9 +105,7 @@ public final class RemotePlayerProxy implements Player {
      */
     @Override
     public void updateState(PublicGameState newState, PlayerState ownState) {
-        String serializedPGS = Serdes.publicGameStateSerde.serialize(newState);
-        String serializedPS = Serdes.playerStateSerde.serialize(ownState);
-        sendMessage(MessageId.UPDATE_STATE, serializedPGS, serializedPS);
+        sendMessage(stateTracker.updateMessage(connection.protocol(), newState, ownState));
     }
 
     /**
@@ -99,18 +114,21 @@ public final class RemotePlayerProxy implements Player {
      */
     @Override
     public void setInitialTicketChoice(SortedBag<Ticket> tickets) {
-        String serializedTickets = Serdes.bagOfTicket.serialize(tickets);
-        sendMessage(MessageId.SET_INITIAL_TICKETS, serializedTickets);
+        initialTickets = tickets;
+        sendMessage(Message.of(MessageId.SET_INITIAL_TICKETS).with(Codecs.bagOfTicket, tickets));
     }
 
     /**
      * sérialise et envoie au serveur l'ordre de demander au joueur quels billets le joueur a choisi pour commencer la partie
      * @return Les billets initialement distribués au joueur
+     * @throws IllegalArgumentException si le client choisit des billets qui ne lui ont pas été distribués
      */
     @Override
     public SortedBag<Ticket> chooseInitialTickets() {
-        sendMessage(MessageId.CHOOSE_INITIAL_TICKETS);
-        return Serdes.bagOfTicket.deserialize(receiveMessage());
+        sendMessage(Message.of(MessageId.CHOOSE_INITIAL_TICKETS));
+        SortedBag<Ticket> chosenTickets = receiveReply(Codecs.bagOfTicket);
+        Preconditions.checkArgument(initialTickets != null && initialTickets.contains(chosenTickets));
+        return chosenTickets;
     }
 
     /**
@@ -119,30 +137,35 @@ public final class RemotePlayerProxy implements Player {
      */
     @Override
     public TurnKind nextTurn() {
-        sendMessage(MessageId.NEXT_TURN);
-        return Serdes.turnKindSerde.deserialize(receiveMessage());
+        sendMessage(Message.of(MessageId.NEXT_TURN));
+        return receiveReply(Codecs.turnKindCodec);
     }
 
     /**
      * sérialise et envoie au serveur l'ordre de demander au joueur quels billets supplémentaires le joueur a choisi de tirer
      * @param options Liste des billets que le joueur peut choisir
      * @return la liste des billets que le joueur a choisi
+     * @throws IllegalArgumentException si le client choisit des billets ne faisant pas partie des options
      */
     @Override
     public SortedBag<Ticket> chooseTickets(SortedBag<Ticket> options) {
-        String sOptions = Serdes.bagOfTicket.serialize(options);
-        sendMessage(MessageId.CHOOSE_TICKETS, sOptions);
-        return Serdes.bagOfTicket.deserialize(receiveMessage());
+        sendMessage(Message.of(MessageId.CHOOSE_TICKETS).with(Codecs.bagOfTicket, options));
+        SortedBag<Ticket> chosenTickets = receiveReply(Codecs.bagOfTicket);
+        Preconditions.checkArgument(options.contains(chosenTickets));
+        return chosenTickets;
     }
 
     /**
      * sérialise et envoie au serveur un ordre pour savoir d'où il désire tirer les cartes
      * @return (0,4) inclus s'il tire les cartes depuis les cartes face visible
+     * @throws IllegalArgumentException si le client répond un emplacement qui n'est ni la pioche ni celui d'une carte face visible
      */
     @Override
     public int drawSlot() {
-        sendMessage(MessageId.DRAW_SLOT);
-        return Serdes.integerSerde.deserialize(receiveMessage());
+        sendMessage(Message.of(MessageId.DRAW_SLOT));
+        int slot = receiveReply(Codecs.integerCodec);
+        Preconditions.checkArgument(slot == Constants.DECK_SLOT || Constants.FACE_UP_CARD_SLOTS.contains(slot));
+        return slot;
     }
 
     /**
@@ -151,8 +174,8 @@ public final class RemotePlayerProxy implements Player {
      */
     @Override
     public Route claimedRoute() {
-        sendMessage(MessageId.ROUTE);
-        return Serdes.routeSerde.deserialize(receiveMessage());
+        sendMessage(Message.of(MessageId.ROUTE));
+        return receiveReply(Codecs.routeCodec);
     }
 
     /**
@@ -161,8 +184,8 @@ public final class RemotePlayerProxy implements Player {
      */
     @Override
     public SortedBag<Card> initialClaimCards() {
-        sendMessage(MessageId.CARDS);
-        return Serdes.bagOfCard.deserialize(receiveMessage());
+        sendMessage(Message.of(MessageId.CARDS));
+        return receiveReply(Codecs.bagOfCard);
     }
 
     /**
@@ -170,12 +193,14 @@ public final class RemotePlayerProxy implements Player {
      * le joueur désire utiliser pour tenter de s'emparer d'un tunnel
      * @param options différentes possibilités de groupe de cartes supplémentaires à poser pour s'emparer de la route
      * @return la possibilité choisie, ou un SortedBag vide si le joueur ne pouvait ou de voulait pas jouer de cartes supplémentaires
+     * @throws IllegalArgumentException si le client choisit des cartes ne correspondant à aucune des possibilités
      */
     @Override
     public SortedBag<Card> chooseAdditionalCards(List<SortedBag<Card>> options) {
-        String sOptions = Serdes.listOfBagOfCard.serialize(options);
-        sendMessage(MessageId.CHOOSE_ADDITIONAL_CARDS, sOptions);
-        return Serdes.bagOfCard.deserialize(receiveMessage());
+        sendMessage(Message.of(MessageId.CHOOSE_ADDITIONAL_CARDS).with(Codecs.listOfBagOfCard, options));
+        SortedBag<Card> chosenCards = receiveReply(Codecs.bagOfCard);
+        Preconditions.checkArgument(chosenCards.isEmpty() || options.contains(chosenCards));
+        return chosenCards;
     }
 
     @Override
@@ -185,13 +210,21 @@ public final class RemotePlayerProxy implements Player {
 
     @Override
     public Player.TurnKind displayEndScreen(String endMessage) {
-        String sEndMessage = Serdes.stringSerde.serialize(endMessage);
-        sendMessage(MessageId.DISPLAY_END, sEndMessage);
-        return Serdes.turnKindSerde.deserialize(receiveMessage());
+        sendMessage(Message.of(MessageId.DISPLAY_END).with(Codecs.stringCodec, endMessage));
+        return receiveReply(Codecs.turnKindCodec);
     }
 
     @Override
     public void endGame() {
-        sendMessage(MessageId.END);
+        sendMessage(Message.of(MessageId.END));
+        connection.flush();
+    }
+
+    /**
+     * envoie au client, en une seule écriture, tous les messages écrits depuis le dernier envoi
+     */
+    @Override
+    public void flush() {
+        connection.flush();
     }
 }
@@ -4,14 +4,19 @@ import ch.epfl.tchu.Preconditions;
 import ch.epfl.tchu.SortedBag;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
-import java.util.regex.Pattern;
 
 /**
  * @author Thibault Czarniak (327577)
  * @author Matthias Wyss (329884)
  * Interface de Serial-deserializer (Serde) pour la communication réseau
+ *
+ * un serde peut écrire sa valeur à la suite d'un StringBuilder et la lire dans une portion de chaîne, ce qui permet aux serdes
+ * composés de (dé)sérialiser leurs éléments sans construire de chaîne intermédiaire pour chacun d'eux
  */
 public interface Serde<E> {
 
@@ -29,6 +34,26 @@ public interface Serde<E> {
      */
     E deserialize(String serializedString);
 
+    /**
+     * écrit la chaîne correspondant à l'objet donné à la suite du StringBuilder donné
+     * @param serializableObject l'objet à sérialiser
+     * @param builder le StringBuilder dans lequel écrire
+     */
+    default void serialize(E serializableObject, StringBuilder builder) {
+        builder.append(serialize(serializableObject));
+    }
+
+    /**
+     * retourne l'objet correspondant à la portion donnée de la chaîne sérialisée
+     * @param serializedString la chaîne contenant l'objet à désérialiser
+     * @param start index du premier caractère de la portion (inclus)
+     * @param end index du dernier caractère de la portion (exclus)
+     * @return l'objet correspondant
+     */
+    default E deserialize(String serializedString, int start, int end) {
+        return deserialize(serializedString.substring(start, end));
+    }
+
     /**
      * méthode générique prenant en arguments une fonction de sérialisation et une fonction de désérialisation, et retournant le serde correspondant
      * @param serializer fonction de sérialisation
@@ -52,27 +77,76 @@ public interface Serde<E> {
     }
 
     /**
-     * méthode générique prenant en argument la liste de toutes les valeurs d'un ensemble de valeurs énuméré et retournant le serde correspondant
-     * @param list liste de toutes les valeurs d'un ensemble de valeurs énuméré
-     * @param <T> type des valeurs de la liste
+     * Fonction de désérialisation d'une portion de chaîne
+     * @param <T> type de l'objet désérialisé
+     */
+    @FunctionalInterface
+    interface Parser<T> {
+
+        /**
+         * retourne l'objet correspondant à la portion donnée de la chaîne
+         * @param serializedString la chaîne contenant l'objet à désérialiser
+         * @param start index du premier caractère de la portion (inclus)
+         * @param end index du dernier caractère de la portion (exclus)
+         * @return l'objet correspondant
+         */
+        T parse(String serializedString, int start, int end);
+    }
+
+    /**
+     * méthode générique prenant en arguments une fonction d'écriture dans un StringBuilder et une fonction de désérialisation
+     * d'une portion de chaîne, et retournant le serde correspondant
+     * @param writer fonction d'écriture de l'objet à la suite d'un StringBuilder
+     * @param parser fonction de désérialisation d'une portion de chaîne
+     * @param <T> paramètre de type de la méthode
      * @return le serde correspondant
      */
-    static <T> Serde<T> oneOf(List<T> list) {
-        Preconditions.checkArgument(!list.isEmpty());
+    static <T> Serde<T> of(BiConsumer<T, StringBuilder> writer, Parser<T> parser) {
         return new Serde<>() {
 
             @Override
             public String serialize(T serializableObject) {
-                return String.valueOf(list.indexOf(serializableObject));
+                StringBuilder builder = new StringBuilder();
+                writer.accept(serializableObject, builder);
+                return builder.toString();
+            }
+
+            @Override
+            public void serialize(T serializableObject, StringBuilder builder) {
+                writer.accept(serializableObject, builder);
             }
 
             @Override
             public T deserialize(String serializedString) {
-                return list.get(Integer.parseInt(serializedString));
+                return parser.parse(serializedString, 0, serializedString.length());
+            }
+
+            @Override
+            public T deserialize(String serializedString, int start, int end) {
+                return parser.parse(serializedString, start, end);
             }
         };
     }
 
+    /**
+     * méthode générique prenant en argument la liste de toutes les valeurs d'un ensemble de valeurs énuméré et retournant le serde correspondant,
+     * qui représente chaque valeur par son index dans la liste, trouvé dans une table d'association précalculée
+     * @param list liste de toutes les valeurs d'un ensemble de valeurs énuméré
+     * @param <T> type des valeurs de la liste
+     * @return le serde correspondant
+     */
+    static <T> Serde<T> oneOf(List<T> list) {
+        Preconditions.checkArgument(!list.isEmpty());
+        List<T> values = List.copyOf(list);
+        // Les valeurs énumérées (cartes, routes, billets, ...) n'existent qu'en un exemplaire, l'identité suffit à les distinguer.
+        Map<T, Integer> indices = new IdentityHashMap<>();
+        for(int i = values.size() - 1; i >= 0; --i) {
+            indices.put(values.get(i), i);
+        }
+        return of((value, builder) -> builder.append(indices.get(value).intValue()),
+                (string, start, end) -> values.get(Integer.parseInt(string, start, end, 10)));
+    }
+
     /**
      * méthode générique prenant en argument un serde et un caractère de séparation et retournant un serde capable de (dé)sérialiser des listes de valeurs (dé)sérialisées par le serde donné
      * @param serde serde servant à serialiser et déserialiser
@@ -81,28 +155,26 @@ public interface Serde<E> {
      * @return un serde capable de (dé)sérialiser des listes de valeurs (dé)sérialisées par le serde donné
      */
     static <T> Serde<List<T>> listOf(Serde<T> serde, char cSep) {
-        return new Serde<>() {
-
-            @Override
-            public String serialize(List<T> serializableObject) {
-                List<String> serializedStrings = new ArrayList<>();
-                serializableObject.forEach(e -> serializedStrings.add(serde.serialize(e)));
-                return String.join(String.valueOf(cSep), serializedStrings);
-            }
-
-            @Override
-            public List<T> deserialize(String serializedString) {
-                if(serializedString.isEmpty()){
-                    return List.of();
-                }
-                List<T> deserializedValues = new ArrayList<>();
-                String[] stringTable = serializedString.split(Pattern.quote(String.valueOf(cSep)), -1);
-                for(String s : stringTable){
-                    deserializedValues.add(serde.deserialize(s));
-                }
-                return deserializedValues;
-            }
-        };
+        return of((list, builder) -> {
+                    for(int i = 0; i < list.size(); ++i) {
+                        if(i != 0) builder.append(cSep);
+                        serde.serialize(list.get(i), builder);
+                    }
+                },
+                (string, start, end) -> {
+                    if(start == end) {
+                        return List.of();
+                    }
+                    List<T> deserializedValues = new ArrayList<>();
+                    for(int elementStart = start; ; ) {
+                        int elementEnd = fieldEnd(string, elementStart, end, cSep);
+                        deserializedValues.add(serde.deserialize(string, elementStart, elementEnd));
+                        if(elementEnd == end) {
+                            return deserializedValues;
+                        }
+                        elementStart = elementEnd + 1;
+                    }
+                });
     }
 
     /**
@@ -113,20 +185,29 @@ public interface Serde<E> {
      * @return un serde capable de (dé)sérialiser des SortedBag de valeurs (dé)sérialisées par le serde donné
      */
     static <T extends Comparable<T>> Serde<SortedBag<T>> bagOf(Serde<T> serde, char cSep) {
-        return new Serde<>() {
-
-            @Override
-            public String serialize(SortedBag<T> serializableObject) {
-                List<T> serializedList = serializableObject.toList();
-                return listOf(serde, cSep).serialize(serializedList);
-            }
-
-            @Override
-            public SortedBag<T> deserialize(String serializedString) {
-                List<T> deserializedString = listOf(serde, cSep).deserialize(serializedString);
-                return SortedBag.of(deserializedString);
-            }
-        };
+        Serde<List<T>> listSerde = listOf(serde, cSep);
+        return of((bag, builder) -> {
+                    boolean first = true;
+                    for(T element : bag) {
+                        if(!first) builder.append(cSep);
+                        serde.serialize(element, builder);
+                        first = false;
+                    }
+                },
+                (string, start, end) -> SortedBag.of(listSerde.deserialize(string, start, end)));
     }
 
+    /**
+     * retourne l'index de la fin du champ commençant à l'index donné, c.-à-d. celui de la première occurrence du caractère
+     * de séparation dans la portion donnée de la chaîne, ou la fin de la portion s'il n'y figure pas
+     * @param string la chaîne contenant le champ
+     * @param start index du premier caractère du champ
+     * @param end index de la fin de la portion (exclus)
+     * @param cSep caractère de séparation
+     * @return l'index de la fin du champ (exclus)
+     */
+    static int fieldEnd(String string, int start, int end, char cSep) {
+        int index = string.indexOf(cSep, start);
+        return index == -1 || index > end ? end : index;
+    }
 }
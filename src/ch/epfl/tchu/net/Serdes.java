@@ -7,12 +7,14 @@ import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * @author Thibault Czarniak (327577)
  * @author Matthias Wyss (329884)
  * Classe contenant la totalité des serdes utilisées par la communication réseau de tCHU
+ *
+ * les serdes composés sont construits une seule fois et écrivent leurs champs directement à la suite d'un même StringBuilder ;
+ * à la désérialisation, chaque champ est lu dans sa portion de la chaîne reçue, sans la découper
  */
 public final class Serdes {
     private Serdes(){
@@ -20,7 +22,8 @@ public final class Serdes {
     }
 
     /** Serde d'entier */
-    public static final Serde<Integer> integerSerde = Serde.of(i -> Integer.toString(i), Integer::parseInt);
+    public static final Serde<Integer> integerSerde = Serde.of((i, builder) -> builder.append(i.intValue()),
+            (string, start, end) -> Integer.parseInt(string, start, end, 10));
 
     /** Serde de chaîne de caractères (String) */
     public static final Serde<String> stringSerde = Serde.of(i -> Base64.getEncoder().encodeToString(i.getBytes(StandardCharsets.UTF_8)),
@@ -50,8 +53,37 @@ public final class Serdes {
     /** Serde de liste de routes  */
     public static final Serde<List<Route>> listOfRoute = Serde.listOf(routeSerde, ',');
 
+    /** Serde de multiensemble de cartes empaqueté, au même format que bagOfCard */
+    public static final Serde<CardBag> cardBagSerde = Serde.of(
+            (i, builder) -> {
+                boolean first = true;
+                for(Card card : Card.ALL) {
+                    for(int n = i.countOf(card); n > 0; --n) {
+                        if(!first) builder.append(',');
+                        builder.append(card.ordinal());
+                        first = false;
+                    }
+                }
+            },
+            (string, start, end) -> {
+                CardBag cards = CardBag.EMPTY;
+                int ordinal = -1;
+                for(int j = start; j < end; ++j) {
+                    char c = string.charAt(j);
+                    if(c == ',') {
+                        cards = cards.with(Card.ALL.get(ordinal));
+                        ordinal = -1;
+                    } else {
+                        ordinal = (ordinal == -1 ? 0 : ordinal * 10) + Character.digit(c, 10);
+                    }
+                }
+                return ordinal == -1 ? cards : cards.with(Card.ALL.get(ordinal));
+            });
+
     /** Serde de SortedBag de cartes */
-    public static final Serde<SortedBag<Card>> bagOfCard = Serde.bagOf(cardSerde, ',');
+    public static final Serde<SortedBag<Card>> bagOfCard = Serde.of(
+            (i, builder) -> cardBagSerde.serialize(CardBag.of(i), builder),
+            (string, start, end) -> cardBagSerde.deserialize(string, start, end).toSortedBag());
 
     /** Serde de SortedBag de tickets */
     public static final Serde<SortedBag<Ticket>> bagOfTicket = Serde.bagOf(ticketSerde, ',');
@@ -61,40 +93,74 @@ public final class Serdes {
 
     /** Serde de PublicCardState */
     public static final Serde<PublicCardState> publicCardStateSerde = Serde.of(
-            i -> String.join(";", listOfCard.serialize(i.faceUpCards()), integerSerde.serialize(i.deckSize()), integerSerde.serialize(i.discardsSize())),
-            i -> {
-                String[] stringToTable= i.split(Pattern.quote(";"), -1);
-                return new PublicCardState(listOfCard.deserialize(stringToTable[0]), integerSerde.deserialize(stringToTable[1]), integerSerde.deserialize(stringToTable[2]));
+            (i, builder) -> {
+                listOfCard.serialize(i.faceUpCards(), builder);
+                builder.append(';').append(i.deckSize()).append(';').append(i.discardsSize());
+            },
+            (string, start, end) -> {
+                int faceUpCardsEnd = Serde.fieldEnd(string, start, end, ';');
+                int deckSizeEnd = Serde.fieldEnd(string, faceUpCardsEnd + 1, end, ';');
+                return new PublicCardState(listOfCard.deserialize(string, start, faceUpCardsEnd), integerSerde.deserialize(string, faceUpCardsEnd + 1, deckSizeEnd),
+                        integerSerde.deserialize(string, deckSizeEnd + 1, Serde.fieldEnd(string, deckSizeEnd + 1, end, ';')));
             });
 
     /** Serde de PublicPlayerState */
     public static final Serde<PublicPlayerState> publicPlayerStateSerde = Serde.of(
-            i -> String.join(";", integerSerde.serialize(i.ticketCount()), integerSerde.serialize(i.cardCount()), listOfRoute.serialize(i.routes())),
-            i -> {
-                String[] stringToTable = i.split(Pattern.quote(";"), -1);
-                return new PublicPlayerState(integerSerde.deserialize(stringToTable[0]), integerSerde.deserialize(stringToTable[1]), listOfRoute.deserialize(stringToTable[2]));
+            (i, builder) -> {
+                builder.append(i.ticketCount()).append(';').append(i.cardCount()).append(';');
+                listOfRoute.serialize(i.routes(), builder);
+            },
+            (string, start, end) -> {
+                int ticketCountEnd = Serde.fieldEnd(string, start, end, ';');
+                int cardCountEnd = Serde.fieldEnd(string, ticketCountEnd + 1, end, ';');
+                return new PublicPlayerState(integerSerde.deserialize(string, start, ticketCountEnd), integerSerde.deserialize(string, ticketCountEnd + 1, cardCountEnd),
+                        listOfRoute.deserialize(string, cardCountEnd + 1, Serde.fieldEnd(string, cardCountEnd + 1, end, ';')));
             });
 
     /** Serde de PlayerState */
     public static final Serde<PlayerState> playerStateSerde = Serde.of(
-            i -> String.join(";", bagOfTicket.serialize(i.tickets()), bagOfCard.serialize(i.cards()), listOfRoute.serialize(i.routes())),
-            i -> {
-                String[] stringToTable = i.split(Pattern.quote(";"), -1);
-                return new PlayerState(bagOfTicket.deserialize(stringToTable[0]), bagOfCard.deserialize(stringToTable[1]), listOfRoute.deserialize(stringToTable[2]));
+            (i, builder) -> {
+                bagOfTicket.serialize(i.tickets(), builder);
+                builder.append(';');
+                bagOfCard.serialize(i.cards(), builder);
+                builder.append(';');
+                listOfRoute.serialize(i.routes(), builder);
+            },
+            (string, start, end) -> {
+                int ticketsEnd = Serde.fieldEnd(string, start, end, ';');
+                int cardsEnd = Serde.fieldEnd(string, ticketsEnd + 1, end, ';');
+                return new PlayerState(bagOfTicket.deserialize(string, start, ticketsEnd), bagOfCard.deserialize(string, ticketsEnd + 1, cardsEnd),
+                        listOfRoute.deserialize(string, cardsEnd + 1, Serde.fieldEnd(string, cardsEnd + 1, end, ';')));
             });
 
     /** Serde de PublicGameState */
-    public static final Serde<PublicGameState> publicGameStateSerde = Serde.of(i -> {
-        String lastPlayerSerialized = i.lastPlayer() == null ? "" : playerIdSerde.serialize(i.lastPlayer());
-
-        return String.join(":", integerSerde.serialize(i.ticketsCount()), publicCardStateSerde.serialize(i.cardState()),
-                        playerIdSerde.serialize(i.currentPlayerId()), publicPlayerStateSerde.serialize(i.playerState(PlayerId.PLAYER_1)), publicPlayerStateSerde.serialize(i.playerState(PlayerId.PLAYER_2)), lastPlayerSerialized);
+    public static final Serde<PublicGameState> publicGameStateSerde = Serde.of(
+            (i, builder) -> {
+                builder.append(i.ticketsCount()).append(':');
+                publicCardStateSerde.serialize(i.cardState(), builder);
+                builder.append(':');
+                playerIdSerde.serialize(i.currentPlayerId(), builder);
+                builder.append(':');
+                publicPlayerStateSerde.serialize(i.playerState(PlayerId.PLAYER_1), builder);
+                builder.append(':');
+                publicPlayerStateSerde.serialize(i.playerState(PlayerId.PLAYER_2), builder);
+                builder.append(':');
+                if(i.lastPlayer() != null) {
+                    playerIdSerde.serialize(i.lastPlayer(), builder);
+                }
             },
-            i -> {
-                String[] stringToTable = i.split(Pattern.quote(":"), -1);
-                PlayerId lastPlayerDeserialized = stringToTable[5].isBlank() ? null : playerIdSerde.deserialize(stringToTable[5]);
-                return new PublicGameState(integerSerde.deserialize(stringToTable[0]), publicCardStateSerde.deserialize(stringToTable[1]), playerIdSerde.deserialize(stringToTable[2]), Map.of(PlayerId.PLAYER_1, publicPlayerStateSerde.deserialize(stringToTable[3]), PlayerId.PLAYER_2, publicPlayerStateSerde.deserialize(stringToTable[4])), lastPlayerDeserialized);
+            (string, start, end) -> {
+                int ticketsCountEnd = Serde.fieldEnd(string, start, end, ':');
+                int cardStateEnd = Serde.fieldEnd(string, ticketsCountEnd + 1, end, ':');
+                int currentPlayerEnd = Serde.fieldEnd(string, cardStateEnd + 1, end, ':');
+                int playerState1End = Serde.fieldEnd(string, currentPlayerEnd + 1, end, ':');
+                int playerState2End = Serde.fieldEnd(string, playerState1End + 1, end, ':');
+                int lastPlayerEnd = Serde.fieldEnd(string, playerState2End + 1, end, ':');
+                PlayerId lastPlayerDeserialized = lastPlayerEnd == playerState2End + 1 ? null : playerIdSerde.deserialize(string, playerState2End + 1, lastPlayerEnd);
+                return new PublicGameState(integerSerde.deserialize(string, start, ticketsCountEnd), publicCardStateSerde.deserialize(string, ticketsCountEnd + 1, cardStateEnd),
+                        playerIdSerde.deserialize(string, cardStateEnd + 1, currentPlayerEnd),
+                        Map.of(PlayerId.PLAYER_1, publicPlayerStateSerde.deserialize(string, currentPlayerEnd + 1, playerState1End),
+                                PlayerId.PLAYER_2, publicPlayerStateSerde.deserialize(string, playerState1End + 1, playerState2End)),
+                        lastPlayerDeserialized);
             });
 }
-
-
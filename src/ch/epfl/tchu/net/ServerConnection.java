@@ -0,0 +1,326 @@
+package ch.epfl.tchu.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Connexion d'un client au serveur multi-parties, dont toutes les entrées/sorties sont effectuées par le fil du sélecteur
+ *
+ * la connexion est un automate : elle négocie d'abord la version du protocole, attend ensuite d'être associée à un adversaire,
+ * puis sert de canal au mandataire du joueur pendant la partie ; le fil de la partie écrit ses messages dans le tampon de sortie
+ * et attend les réponses que le fil du sélecteur dépose dans une file, sans jamais effectuer lui-même d'entrée/sortie
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+final class ServerConnection implements MessageChannel {
+
+    /**
+     * États successifs d'une connexion
+     */
+    enum State {
+        /** en attente de la proposition de version du client */
+        NEGOTIATING,
+        /** en attente d'un adversaire */
+        WAITING,
+        /** en cours de partie */
+        PLAYING,
+        /** fermée */
+        CLOSED
+    }
+
+    private static final int BUFFER_SIZE = 1 << 12;
+    // Taille à partir de laquelle le tampon d'entrée plein ne peut plus contenir le début d'une ligne ou d'une trame valide.
+    private static final int MAX_INPUT_BUFFER_SIZE = Connection.MAX_FRAME_LENGTH + 5;
+
+    // Marque la fin du flot dans la file des réponses, qui ne peut contenir null.
+    private static final ReceivedMessage END_OF_STREAM = ReceivedMessage.ofText("", false);
+
+    private final SocketChannel channel;
+    private final GameServer server;
+    private final long negotiationDeadline;
+    private volatile Protocol protocol = Protocol.TEXT;
+    private volatile State state = State.NEGOTIATING;
+    private volatile boolean closing;
+
+    // Utilisés uniquement par le fil du sélecteur.
+    private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+
+    // Utilisés uniquement par le fil de la partie.
+    private ByteBuffer frameBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder lineBuilder = new StringBuilder();
+
+    // Partagés, protégés par le verrou de la connexion.
+    private ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final BlockingQueue<ReceivedMessage> replies = new LinkedBlockingQueue<>();
+
+    /**
+     * construit la connexion d'un client venant d'être accepté
+     * @param channel canal du client, non bloquant
+     * @param server serveur gérant la connexion
+     * @param negotiationDeadline instant, en millisecondes, à partir duquel un client n'ayant pas proposé de version
+     *                            est considéré comme un client textuel d'origine
+     */
+    ServerConnection(SocketChannel channel, GameServer server, long negotiationDeadline) {
+        this.channel = channel;
+        this.server = server;
+        this.negotiationDeadline = negotiationDeadline;
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    State state() {
+        return state;
+    }
+
+    long negotiationDeadline() {
+        return negotiationDeadline;
+    }
+
+    @Override
+    public Protocol protocol() {
+        return protocol;
+    }
+
+    /**
+     * termine la négociation en adoptant la version donnée du protocole et place la connexion en attente d'un adversaire
+     * @param protocol version du protocole négociée
+     */
+    void negotiated(Protocol protocol) {
+        this.protocol = protocol;
+        state = State.WAITING;
+    }
+
+    /**
+     * indique que la connexion sert désormais de canal à un joueur
+     */
+    void startPlaying() {
+        state = State.PLAYING;
+    }
+
+    @Override
+    public void send(Message message) {
+        if(protocol == Protocol.TEXT) {
+            lineBuilder.setLength(0);
+            message.writeText(lineBuilder);
+            writeLine(lineBuilder.toString());
+            return;
+        }
+        while(true) {
+            try {
+                frameBuffer.clear();
+                message.writeBinary(frameBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                frameBuffer = ByteBuffer.allocate(frameBuffer.capacity() * 2);
+            }
+        }
+        frameBuffer.flip();
+        synchronized(this) {
+            ensureOutputCapacity(5 + frameBuffer.remaining());
+            BinarySerde.writeVarInt(frameBuffer.remaining(), output);
+            output.put(frameBuffer);
+        }
+    }
+
+    /**
+     * écrit, sans l'envoyer, la ligne donnée suivie d'un retour à la ligne
+     * @param line ligne à écrire
+     */
+    void writeLine(String line) {
+        byte[] bytes = line.getBytes(UTF_8);
+        synchronized(this) {
+            ensureOutputCapacity(bytes.length + 1);
+            output.put(bytes).put((byte) '\n');
+        }
+    }
+
+    private void ensureOutputCapacity(int additionalBytes) {
+        if(output.remaining() < additionalBytes) {
+            ByteBuffer newOutput = ByteBuffer.allocate(Math.max(2 * output.capacity(), output.position() + additionalBytes));
+            output.flip();
+            output = newOutput.put(output);
+        }
+    }
+
+    /**
+     * demande au fil du sélecteur d'envoyer tous les messages écrits depuis le dernier envoi
+     */
+    @Override
+    public void flush() {
+        server.requestWrite(this);
+    }
+
+    /**
+     * demande au fil du sélecteur de fermer la connexion une fois tous les messages écrits envoyés
+     */
+    void closeAfterFlush() {
+        closing = true;
+        server.requestWrite(this);
+    }
+
+    @Override
+    public ReceivedMessage receiveReply() throws IOException {
+        flush();
+        try {
+            ReceivedMessage reply = replies.take();
+            if(reply == END_OF_STREAM) {
+                replies.add(END_OF_STREAM);
+                return null;
+            }
+            return reply;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * écrit sur le canal autant de données en attente que possible ; appelée uniquement par le fil du sélecteur
+     * @return vrai ssi toutes les données en attente ont été écrites
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    boolean writePending() throws IOException {
+        synchronized(this) {
+            output.flip();
+            try {
+                channel.write(output);
+                return !output.hasRemaining();
+            } finally {
+                output.compact();
+            }
+        }
+    }
+
+    /**
+     * retourne vrai ssi la connexion doit être fermée une fois les données en attente écrites
+     * @return vrai ssi la connexion doit être fermée une fois les données en attente écrites
+     */
+    boolean isClosing() {
+        return closing;
+    }
+
+    /**
+     * lit sur le canal les données disponibles et traite les lignes ou trames complètes reçues ; appelée uniquement par le fil du sélecteur
+     * @return faux ssi le client a fermé la connexion
+     * @throws IOException en cas d'erreur de lecture, ou si le client annonce une trame ou envoie une ligne plus longue que
+     * Connection.MAX_FRAME_LENGTH
+     * @throws IllegalArgumentException si le client envoie autre chose qu'une proposition de version pendant la négociation
+     */
+    boolean read() throws IOException {
+        if(!input.hasRemaining()) {
+            if(input.capacity() >= MAX_INPUT_BUFFER_SIZE) {
+                throw new StreamCorruptedException();
+            }
+            ByteBuffer newInput = ByteBuffer.allocate(Math.min(2 * input.capacity(), MAX_INPUT_BUFFER_SIZE));
+            input.flip();
+            input = newInput.put(input);
+        }
+        if(channel.read(input) == -1) {
+            return false;
+        }
+        input.flip();
+        try {
+            while(state != State.CLOSED && parseNext()) {
+                // Chaque appel traite une ligne ou une trame complète.
+            }
+        } finally {
+            input.compact();
+        }
+        return true;
+    }
+
+    // Traite la prochaine ligne ou trame complète du tampon d'entrée, et retourne faux s'il n'en contient pas.
+    private boolean parseNext() throws StreamCorruptedException {
+        if(state == State.NEGOTIATING || protocol == Protocol.TEXT) {
+            String line = nextLine();
+            if(line == null) {
+                return false;
+            }
+            if(state == State.NEGOTIATING) {
+                ReceivedMessage hello = ReceivedMessage.ofText(line, true);
+                if(hello.id() != MessageId.HELLO) {
+                    throw new IllegalArgumentException();
+                }
+                Protocol negotiated = Protocol.upTo(hello.next(Codecs.integerCodec));
+                writeLine(Message.of(MessageId.HELLO).with(Codecs.integerCodec, negotiated.version()).toText());
+                server.negotiated(this, negotiated);
+            } else {
+                replies.add(ReceivedMessage.ofText(line, false));
+            }
+            return true;
+        }
+        ByteBuffer frame = nextFrame();
+        if(frame == null) {
+            return false;
+        }
+        replies.add(ReceivedMessage.ofBinary(frame, false));
+        return true;
+    }
+
+    private String nextLine() {
+        for(int i = input.position(); i < input.limit(); ++i) {
+            if(input.get(i) == '\n') {
+                int start = input.position();
+                int end = i > start && input.get(i - 1) == '\r' ? i - 1 : i;
+                byte[] bytes = new byte[end - start];
+                input.get(bytes);
+                input.position(i + 1);
+                return new String(bytes, UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private ByteBuffer nextFrame() throws StreamCorruptedException {
+        int length = 0;
+        int position = input.position();
+        for(int shift = 0; ; shift += 7) {
+            if(shift >= Integer.SIZE) {
+                throw new StreamCorruptedException();
+            }
+            if(position == input.limit()) {
+                return null;
+            }
+            byte b = input.get(position++);
+            length |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                break;
+            }
+        }
+        if(length < 0 || length > Connection.MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException();
+        }
+        if(input.limit() - position < length) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.position(position);
+        input.get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * ferme le canal et signale la fin du flot au fil de la partie qui attendrait une réponse
+     */
+    void close() {
+        state = State.CLOSED;
+        replies.add(END_OF_STREAM);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // La connexion est abandonnée de toute façon.
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.game.PlayerId;
+import ch.epfl.tchu.game.PlayerState;
+import ch.epfl.tchu.game.PublicGameState;
+import ch.epfl.tchu.game.Spectator;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diffuseur des états et informations d'un joueur à ses spectateurs, qui ne bloque jamais l'appelant, typiquement le fil
+ * de l'interface graphique
+ *
+ * chaque état et chaque information n'est sérialisé qu'une fois par diffusion, quel que soit le nombre de spectateurs distants,
+ * qui reçoivent tous les mêmes octets par l'intermédiaire de leur propre file bornée ; un spectateur lent ne retarde ainsi ni
+ * le joueur ni les autres spectateurs, et ne reçoit que le dernier état lorsqu'il a pris du retard
+ *
+ * les spectateurs peuvent être ajoutés à tout moment, depuis n'importe quel fil : un spectateur arrivant en cours de partie
+ * reçoit directement le dernier état diffusé
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class SpectatorBroadcaster implements Closeable {
+
+    private final PlayerId playerId;
+    private final Map<PlayerId, String> playerNames;
+    private final EncodedMessage init;
+    private final List<Spectator> spectators = new ArrayList<>();
+    private StateBroadcast lastState;
+    private boolean closed;
+
+    /**
+     * construit un diffuseur, sans spectateurs, des états et informations du joueur donné
+     * @param playerId identité du joueur observé
+     * @param playerNames noms des joueurs
+     */
+    public SpectatorBroadcaster(PlayerId playerId, Map<PlayerId, String> playerNames) {
+        this.playerId = playerId;
+        this.playerNames = Map.copyOf(playerNames);
+        init = SpectatorProxy.initMessage(playerId, playerNames);
+    }
+
+    /**
+     * ajoute le spectateur donné, qui est initialisé puis reçoit le dernier état diffusé s'il y en a un ; un spectateur qui n'est
+     * pas un mandataire de spectateur distant est notifié directement, dans le fil de l'appelant ; un mandataire ajouté après
+     * la fermeture du diffuseur est fermé
+     * @param spectator spectateur à ajouter
+     */
+    public synchronized void add(Spectator spectator) {
+        if(closed) {
+            if(spectator instanceof SpectatorProxy) {
+                ((SpectatorProxy) spectator).close();
+            }
+            return;
+        }
+        if(spectator instanceof SpectatorProxy) {
+            SpectatorProxy proxy = (SpectatorProxy) spectator;
+            proxy.offerInit(init);
+            if(lastState != null) {
+                proxy.offerState(lastState);
+            }
+        } else {
+            spectator.initSpectator(playerId, playerNames);
+        }
+        spectators.add(spectator);
+    }
+
+    /**
+     * diffuse les états donnés à tous les spectateurs
+     * @param gameState état public de la partie
+     * @param playerState état complet du joueur
+     */
+    public synchronized void setState(PublicGameState gameState, PlayerState playerState) {
+        if(spectators.isEmpty()) {
+            lastState = StateBroadcast.next(null, gameState, playerState);
+            return;
+        }
+        StateBroadcast state = StateBroadcast.next(lastState, gameState, playerState);
+        lastState = state;
+        Iterator<Spectator> iterator = spectators.iterator();
+        while(iterator.hasNext()) {
+            Spectator spectator = iterator.next();
+            if(spectator instanceof SpectatorProxy) {
+                SpectatorProxy proxy = (SpectatorProxy) spectator;
+                if(proxy.isClosed()) {
+                    iterator.remove();
+                } else {
+                    proxy.offerState(state);
+                }
+            } else {
+                spectator.setState(gameState, playerState);
+            }
+        }
+    }
+
+    /**
+     * diffuse l'information donnée à tous les spectateurs
+     * @param info information à diffuser
+     */
+    public synchronized void receiveInfo(String info) {
+        if(spectators.isEmpty()) {
+            return;
+        }
+        EncodedMessage message = SpectatorProxy.infoMessage(info);
+        for(Spectator spectator : spectators) {
+            if(spectator instanceof SpectatorProxy) {
+                ((SpectatorProxy) spectator).offerInfo(message);
+            } else {
+                spectator.receiveInfo(info);
+            }
+        }
+    }
+
+    /**
+     * retourne le nombre de spectateurs
+     * @return le nombre de spectateurs
+     */
+    public synchronized int spectatorsCount() {
+        return spectators.size();
+    }
+
+    /**
+     * ferme les mandataires de tous les spectateurs distants, une fois les messages qui leur sont destinés envoyés
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for(Spectator spectator : spectators) {
+            if(spectator instanceof SpectatorProxy) {
+                ((SpectatorProxy) spectator).closeAfterFlush();
+            }
+        }
+        spectators.clear();
+    }
+}
@@ -1,22 +1,15 @@
 package ch.epfl.tchu.net;
 
 import ch.epfl.tchu.game.PlayerId;
-import ch.epfl.tchu.game.PlayerState;
-import ch.epfl.tchu.game.PublicGameState;
 import ch.epfl.tchu.game.Spectator;
 import ch.epfl.tchu.gui.Helper;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.net.Socket;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
-
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 public final class SpectatorClient {
     private final Spectator spectator;
@@ -30,20 +23,17 @@ public final class SpectatorClient {
     }
 
     public void run() {
-        String message;
+        ReceivedMessage message;
         try (Socket s = new Socket(hostName, port)) {
 
-            BufferedReader r = new BufferedReader(
-                    new InputStreamReader(s.getInputStream(), UTF_8)
-            );
+            Connection connection = Connection.connect(s);
+            StateTracker stateTracker = new StateTracker();
 
-            while ((message = r.readLine()) != null) {
-                String[] splitMessage = message.split(Pattern.quote(" "));
-                MessageId messageId = MessageId.valueOf(splitMessage[0]);
-                switch (messageId) {
+            while ((message = connection.receiveMessage()) != null) {
+                switch (message.id()) {
                     case INIT_SPECTATOR:
-                        PlayerId dPlayerId = Serdes.playerIdSerde.deserialize(splitMessage[1]);
-                        List<String> names = Serdes.listOfString.deserialize(splitMessage[2]);
+                        PlayerId dPlayerId = message.next(Codecs.playerIdCodec);
+                        List<String> names = message.next(Codecs.listOfString);
                         Map<PlayerId, String> sortedPlayerNames = new EnumMap<>(PlayerId.class);
                         for(PlayerId id : PlayerId.ALL){
                             sortedPlayerNames.put(id, names.get(id.ordinal()));
@@ -51,12 +41,12 @@ public final class SpectatorClient {
                         spectator.initSpectator(dPlayerId, sortedPlayerNames);
                         break;
                     case UPDATE_STATE:
-                        PublicGameState dPublicGameState = Serdes.publicGameStateSerde.deserialize(splitMessage[1]);
-                        PlayerState dPlayerState = Serdes.playerStateSerde.deserialize(splitMessage[2]);
-                        spectator.setState(dPublicGameState, dPlayerState);
+                    case UPDATE_STATE_DELTA:
+                        stateTracker.receive(message);
+                        spectator.setState(stateTracker.gameState(), stateTracker.playerState());
                         break;
                     case RECEIVE_INFO:
-                        String dInfo = Serdes.stringSerde.deserialize(splitMessage[1]);
+                        String dInfo = message.next(Codecs.stringCodec);
                         spectator.receiveInfo(dInfo);
                         break;
                     default:
@@ -2,55 +2,247 @@ package ch.epfl.tchu.net;
 
 import ch.epfl.tchu.game.*;
 
-import java.io.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.Socket;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
+/**
+ * Mandataire d'un spectateur distant, qui ne bloque jamais l'appelant : les messages sont déposés dans une file bornée
+ * que vide un fil d'écriture propre au spectateur
+ *
+ * lorsque le spectateur ne suit pas, seul le dernier état reste en attente, les états intermédiaires étant abandonnés,
+ * et les informations les plus anciennes sont abandonnées au-delà de MAX_PENDING_INFOS
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class SpectatorProxy implements Spectator, Closeable {
 
-public final class SpectatorProxy implements Spectator {
-    private final Socket socket;
+    /**
+     * Nombre maximum d'informations en attente d'envoi à un spectateur
+     */
+    public static final int MAX_PENDING_INFOS = 64;
+
+    /**
+     * Taille, en octets, de la pile des fils d'écriture
+     */
+    public static final long WRITER_STACK_SIZE = 128 * 1024;
+
+    private static final AtomicInteger WRITERS_COUNT = new AtomicInteger();
+
+    private final Connection connection;
+
+    // Protégés par le verrou du mandataire ; la file contient des EncodedMessage et au plus un StateBroadcast, pendingState.
+    private EncodedMessage pendingInit;
+    private final Queue<Object> pending = new ArrayDeque<>();
+    private StateBroadcast pendingState;
+    private int pendingInfosCount;
+    private boolean closing;
+    private boolean closed;
+
+    // Utilisés uniquement par le fil d'écriture, ou par le fil appelant setState pour lastOffered.
+    private long lastSentSequenceNumber = -1;
+    private StateBroadcast lastOffered;
+
+    /**
+     * construit le mandataire du spectateur connecté à la prise donnée, négocie la version du protocole
+     * et démarre son fil d'écriture
+     *
+     * la négociation pouvant durer jusqu'à Connection.NEGOTIATION_TIMEOUT, le constructeur ne doit pas être appelé par le fil
+     * acceptant les connexions ; en cas d'échec de la négociation, la prise est fermée avant que l'exception ne soit levée
+     * @param socket prise acceptée par le serveur
+     * @throws UncheckedIOException en cas d'erreur d'entrée/sortie lors de la négociation
+     * @throws IllegalArgumentException si le spectateur envoie autre chose qu'une proposition de version valide
+     */
     public SpectatorProxy(Socket socket) {
-        this.socket = socket;
-    }
-
-    private void sendMessage(MessageId messageId, String... messageStrings){
-        try{
-            BufferedWriter w = new BufferedWriter(
-                    new OutputStreamWriter(socket.getOutputStream(), UTF_8));
-            w.write(messageId.name() + " ");
-            String args = String.join(" ", messageStrings);
-            w.write(args);
-            w.write('\n');
-            w.flush();
-        } catch (IOException e){
+        try {
+            this.connection = Connection.accept(socket);
+        } catch (IOException e) {
+            closeAfterFailure(socket, e);
             throw new UncheckedIOException(e);
+        } catch (IllegalArgumentException e) {
+            closeAfterFailure(socket, e);
+            throw e;
         }
-
+        Thread writer = new Thread(null, this::writeLoop, "tchu-spectator-" + WRITERS_COUNT.incrementAndGet(), WRITER_STACK_SIZE);
+        writer.setDaemon(true);
+        writer.start();
     }
 
-
+    private static void closeAfterFailure(Socket socket, Exception failure) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
 
     @Override
     public void initSpectator(PlayerId playerId, Map<PlayerId, String> playerNames) {
-        Map<PlayerId, String> sortedPlayerNames = new EnumMap<>(playerNames);
-        String sPlayerId = Serdes.playerIdSerde.serialize(playerId);
-        String playerNamesSerialized = Serdes.listOfString.serialize(new ArrayList<>(sortedPlayerNames.values()));
-        sendMessage(MessageId.INIT_SPECTATOR, sPlayerId, playerNamesSerialized);
+        offerInit(initMessage(playerId, playerNames));
     }
 
     @Override
     public void setState(PublicGameState gameState, PlayerState playerState) {
-        String sGameState = Serdes.publicGameStateSerde.serialize(gameState);
-        String sPlayerState = Serdes.playerStateSerde.serialize(playerState);
-        sendMessage(MessageId.UPDATE_STATE, sGameState, sPlayerState);
+        lastOffered = StateBroadcast.next(lastOffered, gameState, playerState);
+        offerState(lastOffered);
     }
 
     @Override
     public void receiveInfo(String info) {
-        String sInfo = Serdes.stringSerde.serialize(info);
-        sendMessage(MessageId.RECEIVE_INFO, sInfo);
+        offerInfo(infoMessage(info));
+    }
+
+    /**
+     * retourne le message d'initialisation, partageable entre spectateurs, correspondant aux arguments donnés
+     * @param playerId identité du joueur observé
+     * @param playerNames noms des joueurs
+     * @return le message d'initialisation correspondant aux arguments donnés
+     */
+    static EncodedMessage initMessage(PlayerId playerId, Map<PlayerId, String> playerNames) {
+        Map<PlayerId, String> sortedPlayerNames = new EnumMap<>(playerNames);
+        return new EncodedMessage(Message.of(MessageId.INIT_SPECTATOR)
+                .with(Codecs.playerIdCodec, playerId)
+                .with(Codecs.listOfString, new ArrayList<>(sortedPlayerNames.values())));
+    }
+
+    /**
+     * retourne le message d'information, partageable entre spectateurs, correspondant à l'information donnée
+     * @param info information à communiquer
+     * @return le message d'information correspondant
+     */
+    static EncodedMessage infoMessage(String info) {
+        return new EncodedMessage(Message.of(MessageId.RECEIVE_INFO).with(Codecs.stringCodec, info));
+    }
+
+    /**
+     * dépose le message d'initialisation donné, envoyé avant tout autre message
+     * @param init message d'initialisation
+     */
+    synchronized void offerInit(EncodedMessage init) {
+        pendingInit = init;
+        notifyAll();
+    }
+
+    /**
+     * dépose l'état donné, qui remplace l'état en attente d'envoi s'il y en a un
+     * @param state état à envoyer
+     */
+    synchronized void offerState(StateBroadcast state) {
+        if(closed || closing) {
+            return;
+        }
+        if(pendingState != null) {
+            pending.remove(pendingState);
+        }
+        pendingState = state;
+        pending.add(state);
+        notifyAll();
+    }
+
+    /**
+     * dépose l'information donnée, en abandonnant la plus ancienne information en attente si elles sont trop nombreuses
+     * @param info message d'information
+     */
+    synchronized void offerInfo(EncodedMessage info) {
+        if(closed || closing) {
+            return;
+        }
+        if(pendingInfosCount == MAX_PENDING_INFOS) {
+            for(Object message : pending) {
+                if(message != pendingState) {
+                    pending.remove(message);
+                    break;
+                }
+            }
+        } else {
+            ++pendingInfosCount;
+        }
+        pending.add(info);
+        notifyAll();
+    }
+
+    /**
+     * retourne vrai ssi le mandataire a été fermé, par un appel à close ou suite à une erreur d'écriture
+     * @return vrai ssi le mandataire a été fermé
+     */
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * demande la fermeture du mandataire une fois les messages en attente envoyés ; les messages déposés ensuite sont ignorés
+     */
+    synchronized void closeAfterFlush() {
+        closing = true;
+        notifyAll();
+    }
+
+    /**
+     * ferme le mandataire : les messages en attente sont abandonnés, le fil d'écriture se termine et la prise est fermée
+     */
+    @Override
+    public void close() {
+        synchronized(this) {
+            closed = true;
+            pending.clear();
+            pendingState = null;
+            notifyAll();
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Le spectateur est abandonné de toute façon.
+        }
+    }
+
+    // Écrit tous les messages en attente à chaque réveil, puis les envoie en une seule fois.
+    private void writeLoop() {
+        try {
+            while(true) {
+                EncodedMessage init;
+                Object[] messages;
+                synchronized(this) {
+                    while(!closed && !closing && pendingInit == null && pending.isEmpty()) {
+                        wait();
+                    }
+                    if(closed) {
+                        return;
+                    }
+                    if(pendingInit == null && pending.isEmpty()) {
+                        break;
+                    }
+                    init = pendingInit;
+                    pendingInit = null;
+                    messages = pending.toArray();
+                    pending.clear();
+                    pendingState = null;
+                    pendingInfosCount = 0;
+                }
+                if(init != null) {
+                    connection.sendEncoded(init.bytes(connection.protocol()));
+                }
+                for(Object message : messages) {
+                    if(message instanceof StateBroadcast) {
+                        StateBroadcast state = (StateBroadcast) message;
+                        connection.sendEncoded(state.bytes(connection.protocol(), lastSentSequenceNumber));
+                        lastSentSequenceNumber = state.sequenceNumber();
+                    } else {
+                        connection.sendEncoded(((EncodedMessage) message).bytes(connection.protocol()));
+                    }
+                }
+                connection.flush();
+            }
+        } catch (InterruptedException | UncheckedIOException e) {
+            // Le spectateur s'est déconnecté : il est abandonné.
+        }
+        close();
     }
 }
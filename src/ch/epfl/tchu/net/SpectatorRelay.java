@@ -0,0 +1,193 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.game.PlayerId;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Relais sans interface graphique entre la machine d'un joueur et un grand nombre de spectateurs
+ *
+ * le relais s'abonne une seule fois, comme un spectateur ordinaire, aux états et informations du joueur, puis les diffuse
+ * à tous les spectateurs qui se connectent à lui ; ceux-ci ne sollicitent ainsi plus la connexion du joueur, et un relais
+ * peut lui-même être observé par d'autres relais
+ *
+ * un spectateur arrivant en cours de partie reçoit directement le dernier état, et un spectateur lent ne reçoit que
+ * le dernier état lorsqu'il a pris du retard, sans jamais ralentir la lecture des messages du joueur
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+public final class SpectatorRelay implements Closeable {
+
+    /**
+     * Port d'écoute par défaut des spectateurs du relais
+     */
+    public static final int DEFAULT_PORT = 5109;
+
+    /**
+     * Nombre de fils négociant en parallèle la version du protocole avec les spectateurs qui se connectent
+     */
+    public static final int HANDSHAKE_THREADS = 8;
+
+    /**
+     * Nombre maximum de connexions de spectateurs en attente d'être acceptées
+     */
+    public static final int ACCEPT_BACKLOG = 1024;
+
+    private final Socket upstreamSocket;
+    private final Connection upstream;
+    private final ServerSocket serverSocket;
+    private final SpectatorBroadcaster broadcaster;
+    private final StateTracker stateTracker = new StateTracker();
+    private final ExecutorService handshakes = Executors.newFixedThreadPool(HANDSHAKE_THREADS);
+
+    /**
+     * construit un relais abonné au port d'observation donné, et attend le message d'initialisation du joueur observé
+     * avant d'ouvrir son propre port d'écoute
+     * @param hostName nom de l'hôte du joueur observé
+     * @param port port d'observation du joueur observé
+     * @param relayPort port d'écoute des spectateurs du relais, ou 0 pour un port libre quelconque
+     * @throws IOException en cas d'erreur d'entrée/sortie, ou si le joueur ferme la connexion avant d'envoyer
+     *                     le message d'initialisation
+     * @throws IllegalArgumentException si le premier message reçu du joueur n'est pas un message d'initialisation
+     */
+    public SpectatorRelay(String hostName, int port, int relayPort) throws IOException {
+        upstreamSocket = new Socket(hostName, port);
+        try {
+            upstream = Connection.connect(upstreamSocket);
+            ReceivedMessage message = upstream.receiveMessage();
+            if(message == null) {
+                throw new EOFException();
+            }
+            if(message.id() != MessageId.INIT_SPECTATOR) {
+                throw new IllegalArgumentException();
+            }
+            PlayerId playerId = message.next(Codecs.playerIdCodec);
+            List<String> names = message.next(Codecs.listOfString);
+            Map<PlayerId, String> playerNames = new EnumMap<>(PlayerId.class);
+            for(PlayerId id : PlayerId.ALL) {
+                playerNames.put(id, names.get(id.ordinal()));
+            }
+            broadcaster = new SpectatorBroadcaster(playerId, playerNames);
+            serverSocket = new ServerSocket(relayPort, ACCEPT_BACKLOG);
+        } catch (IOException | RuntimeException e) {
+            upstreamSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * lance un relais ; les arguments sont le nom de l'hôte et le port d'observation du joueur observé, puis le port d'écoute
+     * du relais (facultatif)
+     * @param args nom de l'hôte, port d'observation et port d'écoute du relais
+     * @throws IOException en cas d'erreur d'entrée/sortie
+     */
+    public static void main(String[] args) throws IOException {
+        int relayPort = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+        new SpectatorRelay(args[0], Integer.parseInt(args[1]), relayPort).run();
+    }
+
+    /**
+     * retourne le port sur lequel le relais écoute les spectateurs
+     * @return le port sur lequel le relais écoute les spectateurs
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * retourne le nombre de spectateurs du relais
+     * @return le nombre de spectateurs du relais
+     */
+    public int spectatorsCount() {
+        return broadcaster.spectatorsCount();
+    }
+
+    /**
+     * accepte les spectateurs et leur diffuse les messages du joueur observé jusqu'à ce que celui-ci ferme la connexion
+     * ou que le relais soit fermé, puis ferme le relais
+     * @throws IOException en cas d'erreur de lecture des messages du joueur observé
+     */
+    public void run() throws IOException {
+        Thread acceptor = new Thread(this::acceptSpectators, "tchu-relay-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        try {
+            relay();
+        } catch (IOException e) {
+            if(!upstreamSocket.isClosed()) {
+                throw e;
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void relay() throws IOException {
+        ReceivedMessage message;
+        while((message = upstream.receiveMessage()) != null) {
+            switch(message.id()) {
+                case UPDATE_STATE:
+                case UPDATE_STATE_DELTA:
+                    stateTracker.receive(message);
+                    broadcaster.setState(stateTracker.gameState(), stateTracker.playerState());
+                    break;
+                case RECEIVE_INFO:
+                    broadcaster.receiveInfo(message.next(Codecs.stringCodec));
+                    break;
+                default:
+                    // Un nouveau message d'initialisation ne change ni le joueur observé ni les noms des joueurs.
+                    break;
+            }
+        }
+    }
+
+    // La négociation pouvant durer jusqu'à Connection.NEGOTIATION_TIMEOUT pour un client d'origine, elle n'est pas menée
+    // par le fil acceptant les connexions.
+    private void acceptSpectators() {
+        try {
+            while(true) {
+                Socket socket = serverSocket.accept();
+                handshakes.execute(() -> {
+                    try {
+                        broadcaster.add(new SpectatorProxy(socket));
+                    } catch (UncheckedIOException | IllegalArgumentException e) {
+                        // La négociation a échoué : le mandataire a fermé la prise du spectateur.
+                    }
+                });
+            }
+        } catch (IOException e) {
+            // La prise d'écoute a été fermée : le relais s'arrête.
+        }
+    }
+
+    /**
+     * ferme le relais : la connexion au joueur observé et la prise d'écoute sont fermées, et les spectateurs sont déconnectés
+     * une fois les messages qui leur sont destinés envoyés
+     */
+    @Override
+    public void close() {
+        closeQuietly(serverSocket);
+        closeQuietly(upstreamSocket);
+        handshakes.shutdownNow();
+        broadcaster.close();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // La ressource est abandonnée de toute façon.
+        }
+    }
+}
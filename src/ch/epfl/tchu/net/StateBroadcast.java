@@ -0,0 +1,95 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.game.PlayerState;
+import ch.epfl.tchu.game.PublicGameState;
+
+/**
+ * État diffusé aux spectateurs, numéroté dans l'ordre de diffusion, accompagné de sa différence avec l'état diffusé juste avant lui
+ *
+ * l'état complet et la différence ne sont calculés et sérialisés qu'à la première demande, une seule fois par format, par le fil
+ * d'écriture du premier spectateur à qui ils sont envoyés ; un spectateur ayant reçu l'état précédent reçoit la différence,
+ * tandis qu'un spectateur en retard, dont les états intermédiaires ont été abandonnés, reçoit l'état complet
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+final class StateBroadcast {
+
+    private final long sequenceNumber;
+    private final int deltasSinceSnapshot;
+    private final PublicGameState gameState;
+    private final PlayerState playerState;
+    private final EncodedMessage snapshot;
+
+    // Base de la différence, oubliée une fois celle-ci calculée pour ne pas retenir les états précédents.
+    private PublicGameState previousGameState;
+    private PlayerState previousPlayerState;
+    private EncodedMessage delta;
+
+    private StateBroadcast(long sequenceNumber, int deltasSinceSnapshot, PublicGameState gameState, PlayerState playerState,
+                           PublicGameState previousGameState, PlayerState previousPlayerState) {
+        this.sequenceNumber = sequenceNumber;
+        this.deltasSinceSnapshot = deltasSinceSnapshot;
+        this.gameState = gameState;
+        this.playerState = playerState;
+        this.previousGameState = previousGameState;
+        this.previousPlayerState = previousPlayerState;
+        snapshot = new EncodedMessage(Message.of(MessageId.UPDATE_STATE)
+                .with(Codecs.publicGameStateCodec, gameState)
+                .with(Codecs.playerStateCodec, playerState));
+    }
+
+    /**
+     * retourne l'état diffusé succédant à celui donné
+     * @param previous état diffusé précédemment, ou null s'il s'agit du premier
+     * @param gameState nouvel état public de la partie
+     * @param playerState nouvel état du joueur
+     * @return l'état diffusé succédant à celui donné
+     */
+    static StateBroadcast next(StateBroadcast previous, PublicGameState gameState, PlayerState playerState) {
+        if(previous == null || previous.deltasSinceSnapshot >= StateTracker.SNAPSHOT_INTERVAL) {
+            long sequenceNumber = previous == null ? 0 : previous.sequenceNumber + 1;
+            return new StateBroadcast(sequenceNumber, 0, gameState, playerState, null, null);
+        }
+        return new StateBroadcast(previous.sequenceNumber + 1, previous.deltasSinceSnapshot + 1, gameState, playerState,
+                previous.gameState, previous.playerState);
+    }
+
+    /**
+     * retourne le numéro de l'état dans l'ordre de diffusion
+     * @return le numéro de l'état dans l'ordre de diffusion
+     */
+    long sequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * retourne les octets communiquant l'état à un spectateur, sous forme de différence si la version du protocole le permet
+     * et que le dernier état reçu par le spectateur est celui diffusé juste avant
+     * @param protocol version du protocole de la connexion du spectateur
+     * @param lastSentSequenceNumber numéro du dernier état envoyé au spectateur, ou -1 s'il n'en a reçu aucun
+     * @return les octets communiquant l'état au spectateur ; le tableau retourné est partagé et ne doit pas être modifié
+     */
+    byte[] bytes(Protocol protocol, long lastSentSequenceNumber) {
+        if(protocol.supportsStateDeltas() && lastSentSequenceNumber == sequenceNumber - 1) {
+            EncodedMessage delta = delta();
+            if(delta != null) {
+                return delta.bytes(protocol);
+            }
+        }
+        return snapshot.bytes(protocol);
+    }
+
+    // Retourne null si la différence n'est pas exprimable, auquel cas l'état complet est envoyé.
+    private synchronized EncodedMessage delta() {
+        if(previousGameState != null) {
+            StateDelta stateDelta = StateDelta.between(previousGameState, previousPlayerState, gameState, playerState);
+            if(stateDelta != null) {
+                delta = new EncodedMessage(Message.of(MessageId.UPDATE_STATE_DELTA).with(StateDelta.codec, stateDelta));
+            }
+            previousGameState = null;
+            previousPlayerState = null;
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,218 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.SortedBag;
+import ch.epfl.tchu.game.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Différence entre deux états successifs communiqués à un joueur ou à un spectateur : variation des compteurs, emplacements
+ * des cartes face visible ayant changé, routes nouvellement prises, billets ajoutés et cartes ajoutées ou retirées de la main
+ *
+ * les routes et les billets ne faisant que s'accumuler au cours d'une partie, toute différence qui en retirerait
+ * (nouvelle partie, par exemple) n'est pas exprimable et l'état complet doit alors être envoyé
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+final class StateDelta {
+
+    private final int ticketsCountDelta;
+    private final int changedFaceUpSlots;
+    private final List<Card> changedFaceUpCards;
+    private final int deckSizeDelta;
+    private final int discardsSizeDelta;
+    private final PlayerId currentPlayerId;
+    private final Map<PlayerId, PlayerDelta> playerDeltas;
+    private final PlayerId lastPlayer;
+    private final SortedBag<Ticket> addedTickets;
+    private final CardBag addedCards;
+    private final CardBag removedCards;
+    private final List<Route> addedRoutes;
+
+    private StateDelta(int ticketsCountDelta, int changedFaceUpSlots, List<Card> changedFaceUpCards, int deckSizeDelta, int discardsSizeDelta,
+                       PlayerId currentPlayerId, Map<PlayerId, PlayerDelta> playerDeltas, PlayerId lastPlayer,
+                       SortedBag<Ticket> addedTickets, CardBag addedCards, CardBag removedCards, List<Route> addedRoutes) {
+        this.ticketsCountDelta = ticketsCountDelta;
+        this.changedFaceUpSlots = changedFaceUpSlots;
+        this.changedFaceUpCards = changedFaceUpCards;
+        this.deckSizeDelta = deckSizeDelta;
+        this.discardsSizeDelta = discardsSizeDelta;
+        this.currentPlayerId = currentPlayerId;
+        this.playerDeltas = playerDeltas;
+        this.lastPlayer = lastPlayer;
+        this.addedTickets = addedTickets;
+        this.addedCards = addedCards;
+        this.removedCards = removedCards;
+        this.addedRoutes = addedRoutes;
+    }
+
+    /**
+     * retourne la différence entre les anciens états et les nouveaux états donnés
+     * @param oldGameState ancien état public de la partie
+     * @param oldPlayerState ancien état du joueur
+     * @param newGameState nouvel état public de la partie
+     * @param newPlayerState nouvel état du joueur
+     * @return la différence entre les anciens et les nouveaux états, ou null si elle n'est pas exprimable
+     */
+    static StateDelta between(PublicGameState oldGameState, PlayerState oldPlayerState, PublicGameState newGameState, PlayerState newPlayerState) {
+        List<Route> addedRoutes = addedRoutes(oldPlayerState.routes(), newPlayerState.routes());
+        if(addedRoutes == null || !newPlayerState.tickets().contains(oldPlayerState.tickets())) {
+            return null;
+        }
+        Map<PlayerId, PlayerDelta> playerDeltas = new EnumMap<>(PlayerId.class);
+        for(PlayerId id : PlayerId.ALL) {
+            PublicPlayerState oldState = oldGameState.playerState(id);
+            PublicPlayerState newState = newGameState.playerState(id);
+            List<Route> addedPlayerRoutes = addedRoutes(oldState.routes(), newState.routes());
+            if(addedPlayerRoutes == null) {
+                return null;
+            }
+            playerDeltas.put(id, new PlayerDelta(newState.ticketCount() - oldState.ticketCount(), newState.cardCount() - oldState.cardCount(), addedPlayerRoutes));
+        }
+
+        PublicCardState oldCardState = oldGameState.cardState();
+        PublicCardState newCardState = newGameState.cardState();
+        int changedFaceUpSlots = 0;
+        List<Card> changedFaceUpCards = new ArrayList<>();
+        for(int slot : Constants.FACE_UP_CARD_SLOTS) {
+            if(oldCardState.faceUpCard(slot) != newCardState.faceUpCard(slot)) {
+                changedFaceUpSlots |= 1 << slot;
+                changedFaceUpCards.add(newCardState.faceUpCard(slot));
+            }
+        }
+
+        return new StateDelta(newGameState.ticketsCount() - oldGameState.ticketsCount(), changedFaceUpSlots, changedFaceUpCards,
+                newCardState.deckSize() - oldCardState.deckSize(), newCardState.discardsSize() - oldCardState.discardsSize(),
+                newGameState.currentPlayerId(), playerDeltas, newGameState.lastPlayer(),
+                newPlayerState.tickets().difference(oldPlayerState.tickets()),
+                newPlayerState.cardBag().difference(oldPlayerState.cardBag()), oldPlayerState.cardBag().difference(newPlayerState.cardBag()),
+                addedRoutes);
+    }
+
+    // Retourne les routes ajoutées à la fin de l'ancienne liste pour obtenir la nouvelle, ou null si l'ancienne n'en est pas le début.
+    private static List<Route> addedRoutes(List<Route> oldRoutes, List<Route> newRoutes) {
+        if(newRoutes.size() < oldRoutes.size() || !newRoutes.subList(0, oldRoutes.size()).equals(oldRoutes)) {
+            return null;
+        }
+        return newRoutes.subList(oldRoutes.size(), newRoutes.size());
+    }
+
+    private static List<Route> withAddedRoutes(List<Route> routes, List<Route> addedRoutes) {
+        if(addedRoutes.isEmpty()) {
+            return routes;
+        }
+        List<Route> newRoutes = new ArrayList<>(routes);
+        newRoutes.addAll(addedRoutes);
+        return newRoutes;
+    }
+
+    /**
+     * retourne le nouvel état public de la partie, obtenu en appliquant la différence à l'ancien
+     * @param gameState ancien état public de la partie
+     * @return le nouvel état public de la partie
+     */
+    PublicGameState applyTo(PublicGameState gameState) {
+        PublicCardState cardState = gameState.cardState();
+        List<Card> faceUpCards = new ArrayList<>(cardState.faceUpCards());
+        int changedIndex = 0;
+        for(int slot : Constants.FACE_UP_CARD_SLOTS) {
+            if((changedFaceUpSlots & (1 << slot)) != 0) {
+                faceUpCards.set(slot, changedFaceUpCards.get(changedIndex++));
+            }
+        }
+        PublicCardState newCardState = new PublicCardState(faceUpCards, cardState.deckSize() + deckSizeDelta, cardState.discardsSize() + discardsSizeDelta);
+
+        Map<PlayerId, PublicPlayerState> playerStates = new EnumMap<>(PlayerId.class);
+        for(PlayerId id : PlayerId.ALL) {
+            PublicPlayerState playerState = gameState.playerState(id);
+            PlayerDelta delta = playerDeltas.get(id);
+            playerStates.put(id, new PublicPlayerState(playerState.ticketCount() + delta.ticketCountDelta, playerState.cardCount() + delta.cardCountDelta,
+                    withAddedRoutes(playerState.routes(), delta.addedRoutes)));
+        }
+        return new PublicGameState(gameState.ticketsCount() + ticketsCountDelta, newCardState, currentPlayerId, playerStates, lastPlayer);
+    }
+
+    /**
+     * retourne le nouvel état du joueur, obtenu en appliquant la différence à l'ancien
+     * @param playerState ancien état du joueur
+     * @return le nouvel état du joueur
+     */
+    PlayerState applyTo(PlayerState playerState) {
+        CardBag cards = playerState.cardBag().difference(removedCards).union(addedCards);
+        return new PlayerState(playerState.tickets().union(addedTickets), cards.toSortedBag(), withAddedRoutes(playerState.routes(), addedRoutes));
+    }
+
+    private static final class PlayerDelta {
+        private final int ticketCountDelta;
+        private final int cardCountDelta;
+        private final List<Route> addedRoutes;
+
+        private PlayerDelta(int ticketCountDelta, int cardCountDelta, List<Route> addedRoutes) {
+            this.ticketCountDelta = ticketCountDelta;
+            this.cardCountDelta = cardCountDelta;
+            this.addedRoutes = addedRoutes;
+        }
+    }
+
+    private static final BinarySerde<List<Route>> ROUTES = BinarySerde.listOf(BinarySerdes.routeSerde);
+
+    /** Serde binaire de différence d'états */
+    static final BinarySerde<StateDelta> binarySerde = BinarySerde.of(
+            (i, buffer) -> {
+                BinarySerdes.integerSerde.write(i.ticketsCountDelta, buffer);
+                BinarySerde.writeVarInt(i.changedFaceUpSlots, buffer);
+                i.changedFaceUpCards.forEach(card -> BinarySerdes.cardSerde.write(card, buffer));
+                BinarySerdes.integerSerde.write(i.deckSizeDelta, buffer);
+                BinarySerdes.integerSerde.write(i.discardsSizeDelta, buffer);
+                BinarySerdes.playerIdSerde.write(i.currentPlayerId, buffer);
+                for(PlayerId id : PlayerId.ALL) {
+                    PlayerDelta delta = i.playerDeltas.get(id);
+                    BinarySerdes.integerSerde.write(delta.ticketCountDelta, buffer);
+                    BinarySerdes.integerSerde.write(delta.cardCountDelta, buffer);
+                    ROUTES.write(delta.addedRoutes, buffer);
+                }
+                BinarySerde.writeVarInt(i.lastPlayer == null ? 0 : 1 + i.lastPlayer.ordinal(), buffer);
+                BinarySerdes.bagOfTicket.write(i.addedTickets, buffer);
+                BinarySerdes.cardBagSerde.write(i.addedCards, buffer);
+                BinarySerdes.cardBagSerde.write(i.removedCards, buffer);
+                ROUTES.write(i.addedRoutes, buffer);
+            },
+            buffer -> {
+                int ticketsCountDelta = BinarySerdes.integerSerde.read(buffer);
+                int changedFaceUpSlots = BinarySerde.readVarInt(buffer);
+                List<Card> changedFaceUpCards = new ArrayList<>();
+                for(int i = 0; i < Integer.bitCount(changedFaceUpSlots); ++i) {
+                    changedFaceUpCards.add(BinarySerdes.cardSerde.read(buffer));
+                }
+                int deckSizeDelta = BinarySerdes.integerSerde.read(buffer);
+                int discardsSizeDelta = BinarySerdes.integerSerde.read(buffer);
+                PlayerId currentPlayerId = BinarySerdes.playerIdSerde.read(buffer);
+                Map<PlayerId, PlayerDelta> playerDeltas = new EnumMap<>(PlayerId.class);
+                for(PlayerId id : PlayerId.ALL) {
+                    playerDeltas.put(id, new PlayerDelta(BinarySerdes.integerSerde.read(buffer), BinarySerdes.integerSerde.read(buffer), ROUTES.read(buffer)));
+                }
+                int lastPlayer = BinarySerde.readVarInt(buffer);
+                return new StateDelta(ticketsCountDelta, changedFaceUpSlots, changedFaceUpCards, deckSizeDelta, discardsSizeDelta,
+                        currentPlayerId, playerDeltas, lastPlayer == 0 ? null : PlayerId.ALL.get(lastPlayer - 1),
+                        BinarySerdes.bagOfTicket.read(buffer), BinarySerdes.cardBagSerde.read(buffer), BinarySerdes.cardBagSerde.read(buffer), ROUTES.read(buffer));
+            });
+
+    /** Codec de différence d'états ; sa forme textuelle est la forme binaire encodée en Base64 */
+    static final Codec<StateDelta> codec = new Codec<>(Serde.of(
+            i -> {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+                binarySerde.write(i, buffer);
+                buffer.flip();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return Base64.getEncoder().encodeToString(bytes);
+            },
+            i -> binarySerde.read(ByteBuffer.wrap(Base64.getDecoder().decode(i)))),
+            binarySerde);
+}
@@ -0,0 +1,87 @@
+package ch.epfl.tchu.net;
+
+import ch.epfl.tchu.game.PlayerState;
+import ch.epfl.tchu.game.PublicGameState;
+
+/**
+ * Dernier état communiqué sur une connexion, servant de base aux différences d'états envoyées par le serveur
+ * et appliquées par le client
+ *
+ * la connexion garantissant la réception des messages dans l'ordre, le dernier état envoyé est celui dont dispose le client
+ * lorsqu'il reçoit la différence suivante ; un état complet est tout de même envoyé régulièrement pour resynchroniser le client
+ *
+ * @author Thibault Czarniak (327577)
+ * @author Matthias Wyss (329884)
+ */
+final class StateTracker {
+
+    /**
+     * Nombre maximum de différences envoyées entre deux états complets
+     */
+    static final int SNAPSHOT_INTERVAL = 32;
+
+    private PublicGameState gameState;
+    private PlayerState playerState;
+    private int deltasSinceSnapshot;
+
+    /**
+     * retourne le message communiquant les états donnés au client, qui ne contient que leur différence avec les derniers états
+     * communiqués si la version du protocole le permet, et les enregistre comme base des prochaines différences
+     * @param protocol version du protocole de la connexion
+     * @param newGameState nouvel état public de la partie
+     * @param newPlayerState nouvel état du joueur
+     * @return le message communiquant les états donnés au client
+     */
+    Message updateMessage(Protocol protocol, PublicGameState newGameState, PlayerState newPlayerState) {
+        StateDelta delta = null;
+        if(protocol.supportsStateDeltas() && gameState != null && deltasSinceSnapshot < SNAPSHOT_INTERVAL) {
+            delta = StateDelta.between(gameState, playerState, newGameState, newPlayerState);
+        }
+        gameState = newGameState;
+        playerState = newPlayerState;
+
+        if(delta == null) {
+            deltasSinceSnapshot = 0;
+            return Message.of(MessageId.UPDATE_STATE)
+                    .with(Codecs.publicGameStateCodec, newGameState)
+                    .with(Codecs.playerStateCodec, newPlayerState);
+        }
+        ++deltasSinceSnapshot;
+        return Message.of(MessageId.UPDATE_STATE_DELTA).with(StateDelta.codec, delta);
+    }
+
+    /**
+     * lit les états communiqués par le message donné, complets ou sous forme de différence avec les derniers états reçus
+     * @param message message de type UPDATE_STATE ou UPDATE_STATE_DELTA
+     * @throws IllegalStateException si le message est une différence alors qu'aucun état complet n'a encore été reçu
+     */
+    void receive(ReceivedMessage message) {
+        if(message.id() == MessageId.UPDATE_STATE) {
+            gameState = message.next(Codecs.publicGameStateCodec);
+            playerState = message.next(Codecs.playerStateCodec);
+        } else {
+            if(gameState == null) {
+                throw new IllegalStateException();
+            }
+            StateDelta delta = message.next(StateDelta.codec);
+            gameState = delta.applyTo(gameState);
+            playerState = delta.applyTo(playerState);
+        }
+    }
+
+    /**
+     * retourne le dernier état public de la partie communiqué
+     * @return le dernier état public de la partie communiqué
+     */
+    PublicGameState gameState() {
+        return gameState;
+    }
+
+    /**
+     * retourne le dernier état du joueur communiqué
+     * @return le dernier état du joueur communiqué
+     */
+    PlayerState playerState() {
+        return playerState;
+    }
+}